@@ -0,0 +1,189 @@
+package logic;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import logic.transform.SemanticEquivalence;
+import logic.transform.TransformSteps;
+
+/**
+ * This class represents the constants "⊤" and "⊥", an Expression that is always true or always false.
+ * There are only ever two instances, Constant.TRUE and Constant.FALSE.
+ * @author Jallibad
+ *
+ */
+public final class Constant extends Expression
+{
+	private static final long serialVersionUID = -3178064211860458219L;
+
+	/**
+	 * The constant "⊤", which is true under every assignment
+	 */
+	public static final Constant TRUE = new Constant(true, "⊤");
+
+	/**
+	 * The constant "⊥", which is false under every assignment
+	 */
+	public static final Constant FALSE = new Constant(false, "⊥");
+
+	public final boolean value;
+
+	/**
+	 * A Unicode representation of the symbol to be displayed when pretty-printing the constant
+	 */
+	public final String displayText;
+
+	private Constant(boolean value, String displayText)
+	{
+		this.value = value;
+		this.displayText = displayText;
+	}
+
+	/**
+	 * Gets the constant with the given value
+	 * @param value the value of the constant
+	 * @return TRUE or FALSE
+	 */
+	public static Constant of(boolean value)
+	{
+		return value ? TRUE : FALSE;
+	}
+
+	/**
+	 * Gets the constant with the given name or symbol, such as "TRUE" or "⊤"
+	 * @param name the String to look up
+	 * @return the constant if the name matches one
+	 */
+	public static Optional<Constant> fromName(String name)
+	{
+		for (Constant c : new Constant[] {TRUE, FALSE})
+			if (c.toString().equals(name) || c.displayText.equals(name))
+				return Optional.of(c);
+		return Optional.empty();
+	}
+
+	/**
+	 * Keeps deserialized constants from creating new instances
+	 * @return the matching singleton instance
+	 */
+	private Object readResolve()
+	{
+		return of(value);
+	}
+
+	@Override
+	public Set<Literal> getVariables()
+	{
+		return Collections.emptySet();
+	}
+
+	@Override
+	public String toString()
+	{
+		return value ? "TRUE" : "FALSE";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof Constant && ((Constant) o).value == value;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Boolean.hashCode(value);
+	}
+
+	@Override
+	public boolean matches(Expression e)
+	{
+		return equals(e); // A Constant only matches itself
+	}
+
+	@Override
+	public Optional<Map<Literal, Expression>> fillMatches(Expression e)
+	{
+		if (equals(e))
+			return Optional.of(new HashMap<>());
+		return Optional.empty();
+	}
+
+	@Override
+	public String prettyPrint()
+	{
+		return displayText;
+	}
+
+	@Override
+	public Operator getOperator()
+	{
+		return null;
+	}
+
+	@Override
+	public int complexity()
+	{
+		return 1;
+	}
+
+	@Override
+	public boolean simplyEquivalent(Expression other)
+	{
+		return equals(other);
+	}
+
+	@Override
+	public Optional<TransformSteps> simplyEquivalentWithSteps(Expression other)
+	{
+		if (simplyEquivalent(other))
+			return Optional.of(new TransformSteps(this));
+		else
+			return Optional.empty();
+	}
+
+	@Override
+	public Optional<TransformSteps> proveEquivalence(Expression other)
+	{
+		if (simplyEquivalent(other))
+			return simplyEquivalentWithSteps(other);
+		else if (isEquivalent(other))
+			return Optional.of(new SemanticEquivalence(other).transformWithSteps(this));
+		else
+			return Optional.empty();
+	}
+
+	@Override
+	public boolean equalWithoutLiterals(Expression pattern)
+	{
+		return equals(pattern);
+	}
+
+	@Override
+	public boolean mapPredicate(Predicate<Expression> p, Operator... op)
+	{
+		return p.test(this);
+	}
+
+	@Override
+	public Expression mapTerms(Function<Expression, Expression> toMap)
+	{
+		return this;
+	}
+
+	@Override
+	public boolean evaluate(Map<Literal, Boolean> settings)
+	{
+		return value;
+	}
+
+	@Override
+	public TruthValue evaluatePartial(Map<Literal, Boolean> settings)
+	{
+		return TruthValue.of(value);
+	}
+}
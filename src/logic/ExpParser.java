@@ -2,6 +2,7 @@ package logic;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -95,6 +96,8 @@ public final class ExpParser
 		String ans = exp.toString();
 		for (Operator op : Operator.values())
 			ans = ans.replaceAll(op.displayText, " "+op.name()+" ");
+		for (Constant c : new Constant[] {Constant.TRUE, Constant.FALSE})
+			ans = ans.replaceAll(c.displayText, " "+c+" ");
 		// Check if the answer contains anything but letters, whitespace, or parentheses.
 		for (int i=0; i<ans.length(); ++i)
 			if (ans.charAt(i) != '(' && ans.charAt(i) != ')' && ans.charAt(i) != ' ' && !Character.isAlphabetic(ans.charAt(i)))
@@ -171,9 +174,14 @@ public final class ExpParser
 		{
 			List<StringBuilder> terms = getSubTerms(exp);
 			
-			// If there's one term in the list it should be a literal
+			// If there's one term in the list it should be a constant or a literal
 			if (terms.size() == 1)
+			{
+				Optional<Constant> constant = Constant.fromName(terms.get(0).toString());
+				if (constant.isPresent())
+					return constant.get();
 				return new Literal(terms.get(0).toString());
+			}
 			
 			moveOperatorToPrefix(terms);
 			
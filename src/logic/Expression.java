@@ -9,6 +9,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
+import logic.sat.Satisfiability;
 import logic.transform.TransformSteps;
 
 /**
@@ -116,4 +117,59 @@ public abstract class Expression implements Serializable
 	public abstract Expression mapTerms(java.util.function.Function<Expression, Expression> toMap);
 	
 	public abstract boolean evaluate(Map<Literal, Boolean> settings);
+	
+	/**
+	 * Evaluates the expression under a partial assignment using Kleene's three-valued logic.
+	 * Variables missing from the settings are unknown, and the result is only UNKNOWN if
+	 * some setting of those variables could change it.
+	 * @param settings the values of the assigned variables
+	 * @return TRUE or FALSE if the value is forced by the settings, UNKNOWN otherwise
+	 */
+	public abstract TruthValue evaluatePartial(Map<Literal, Boolean> settings);
+	
+	/**
+	 * Checks whether some assignment of the variables makes the expression true
+	 * @return true if the expression is satisfiable
+	 */
+	public boolean isSatisfiable()
+	{
+		return Satisfiability.isSatisfiable(this);
+	}
+	
+	/**
+	 * Checks whether every assignment of the variables makes the expression true
+	 * @return true if the expression is a tautology
+	 */
+	public boolean isTautology()
+	{
+		return Satisfiability.isTautology(this);
+	}
+	
+	/**
+	 * Searches for an assignment of the variables that makes the expression true
+	 * @return the assignment, or empty if the expression is unsatisfiable
+	 */
+	public Optional<Map<Literal, Boolean>> findModel()
+	{
+		return Satisfiability.findModel(this);
+	}
+	
+	/**
+	 * Searches for an assignment of the variables that makes the expression false
+	 * @return the assignment, or empty if the expression is a tautology
+	 */
+	public Optional<Map<Literal, Boolean>> findCounterexample()
+	{
+		return Satisfiability.findCounterexample(this);
+	}
+	
+	/**
+	 * Checks whether two Expressions are logically equivalent, without reconstructing the steps of a proof
+	 * @param other the Expression to compare against
+	 * @return true if both Expressions have the same value under every assignment
+	 */
+	public boolean isEquivalent(Expression other)
+	{
+		return Satisfiability.areEquivalent(this, other);
+	}
 }
\ No newline at end of file
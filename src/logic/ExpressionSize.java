@@ -0,0 +1,105 @@
+package logic;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The size of an expression counted two ways: as a tree, where a subexpression used in several places is counted
+ * every time, and as a DAG, where each distinct Expression object is counted once.  Transforms like
+ * NormalForm.CONJUNCTIVE share the subexpressions they duplicate, so their results can stand for trees far too big
+ * to ever build.  Both are found in one walk over the DAG, so measuring such a result is cheap.
+ * @author Jallibad
+ *
+ */
+public final class ExpressionSize
+{
+	private final long treeSize;
+	private final long dagSize;
+
+	private ExpressionSize(long treeSize, long dagSize)
+	{
+		this.treeSize = treeSize;
+		this.dagSize = dagSize;
+	}
+
+	/**
+	 * Measures an expression
+	 * @param e the expression to measure
+	 * @return its size as a tree and as a DAG
+	 */
+	public static ExpressionSize of(Expression e)
+	{
+		// The tree size of every Expression object visited, filled in after all of its terms
+		Map<Expression, Long> sizes = new IdentityHashMap<>();
+		Deque<Expression> stack = new ArrayDeque<>();
+		stack.push(e);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.peek();
+			if (sizes.containsKey(t))
+			{
+				stack.pop();
+				continue;
+			}
+			if (!(t instanceof Function))
+			{
+				sizes.put(t, 1L);
+				stack.pop();
+				continue;
+			}
+			Function f = (Function) t;
+			boolean ready = true;
+			long size = 1;
+			for (int i=0; i<f.operator.numArguments; ++i)
+			{
+				Long termSize = sizes.get(f.getTerm(i));
+				if (termSize == null)
+				{
+					stack.push(f.getTerm(i));
+					ready = false;
+				}
+				else
+					size = saturatedAdd(size, termSize);
+			}
+			if (ready)
+			{
+				sizes.put(f, size);
+				stack.pop();
+			}
+		}
+		return new ExpressionSize(sizes.get(e), sizes.size());
+	}
+
+	private static long saturatedAdd(long a, long b)
+	{
+		long sum = a+b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+	/**
+	 * The number of nodes of the expression as a tree, the same as complexity() but without overflowing an int
+	 * @return the number of Functions, Literals, and Constants, counting each use of a shared one, or
+	 * Long.MAX_VALUE if there are more than that
+	 */
+	public long treeSize()
+	{
+		return treeSize;
+	}
+
+	/**
+	 * The number of distinct Expression objects making up the expression
+	 * @return the number of Functions, Literals, and Constants, counting each object once
+	 */
+	public long dagSize()
+	{
+		return dagSize;
+	}
+
+	@Override
+	public String toString()
+	{
+		return treeSize+" nodes as a tree, "+dagSize+" as a DAG";
+	}
+}
@@ -0,0 +1,230 @@
+package logic;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Set;
+
+import logic.transform.NormalForm;
+
+/**
+ * Every normal form an expression is in, found in a single bottom-up pass along with some statistics about its
+ * clauses and terms.  A Function remembers its classification, so classifying an expression only visits the
+ * Functions that haven't been classified before, and checking another form of the same expression is free.
+ * @author Jallibad
+ *
+ */
+public final class FormClassification
+{
+	// What an expression is, as a bitmask, the normal forms followed by the shapes they're built from
+	private static final int CONJUNCTIVE = 1;
+	private static final int DISJUNCTIVE = 1 << 1;
+	private static final int NEGATION = 1 << 2;
+	/**
+	 * A Literal, a Constant, or the negation of either
+	 */
+	private static final int LITERAL = 1 << 3;
+	/**
+	 * A disjunction of literals
+	 */
+	private static final int CLAUSE = 1 << 4;
+	/**
+	 * A conjunction of literals
+	 */
+	private static final int TERM = 1 << 5;
+
+	private static final FormClassification LEAF = new FormClassification(CONJUNCTIVE | DISJUNCTIVE | NEGATION | LITERAL | CLAUSE | TERM, 1, 1, 1, 1, 1);
+	private static final FormClassification NONE = new FormClassification(0, 0, 0, 0, 0, 0);
+
+	private final int mask;
+	private final long numLiterals;
+	private final long numClauses;
+	private final long numTerms;
+	private final long maxClauseSize;
+	private final long maxTermSize;
+
+	private FormClassification(int mask, long numLiterals, long numClauses, long numTerms, long maxClauseSize, long maxTermSize)
+	{
+		this.mask = mask;
+		this.numLiterals = numLiterals;
+		this.numClauses = numClauses;
+		this.numTerms = numTerms;
+		this.maxClauseSize = maxClauseSize;
+		this.maxTermSize = maxTermSize;
+	}
+
+	/**
+	 * Classifies an expression
+	 * @param e the expression to classify
+	 * @return every normal form the expression is in
+	 */
+	public static FormClassification of(Expression e)
+	{
+		if (!(e instanceof Function))
+			return e instanceof Literal || e instanceof Constant ? LEAF : NONE;
+		Function root = (Function) e;
+		if (root.form != null)
+			return root.form;
+
+		// Classify every Function that isn't yet after all of its terms
+		Deque<Function> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty())
+		{
+			Function f = stack.peek();
+			if (f.form != null)
+			{
+				stack.pop();
+				continue;
+			}
+			boolean ready = true;
+			for (int i=0; i<f.operator.numArguments; ++i)
+			{
+				Expression t = f.getTerm(i);
+				if (t instanceof Function && ((Function) t).form == null)
+				{
+					stack.push((Function) t);
+					ready = false;
+				}
+			}
+			if (ready)
+			{
+				f.form = combine(f);
+				stack.pop();
+			}
+		}
+		return root.form;
+	}
+
+	/**
+	 * Classifies a Function from the classifications of its terms
+	 */
+	private static FormClassification combine(Function f)
+	{
+		switch (f.operator)
+		{
+			case NEG:
+				// NormalForm.NEGATION leaves ¬⊤ and ¬⊥ in place, so they're literals like a negated Literal
+				return f.getTerm(0) instanceof Literal || f.getTerm(0) instanceof Constant ? LEAF : NONE;
+			case AND:
+			{
+				FormClassification a = of(f.getTerm(0)), b = of(f.getTerm(1));
+				int both = a.mask & b.mask;
+				int mask = both & (CONJUNCTIVE | NEGATION | TERM);
+				if ((both & TERM) != 0)
+					mask |= DISJUNCTIVE;
+				return new FormClassification(mask, a.numLiterals+b.numLiterals,
+					a.numClauses+b.numClauses, (mask & TERM) != 0 ? 1 : 0,
+					Math.max(a.maxClauseSize, b.maxClauseSize), (mask & TERM) != 0 ? a.numLiterals+b.numLiterals : 0);
+			}
+			case OR:
+			{
+				FormClassification a = of(f.getTerm(0)), b = of(f.getTerm(1));
+				int both = a.mask & b.mask;
+				int mask = both & (DISJUNCTIVE | NEGATION | CLAUSE);
+				if ((both & CLAUSE) != 0)
+					mask |= CONJUNCTIVE;
+				return new FormClassification(mask, a.numLiterals+b.numLiterals,
+					(mask & CLAUSE) != 0 ? 1 : 0, a.numTerms+b.numTerms,
+					(mask & CLAUSE) != 0 ? a.numLiterals+b.numLiterals : 0, Math.max(a.maxTermSize, b.maxTermSize));
+			}
+			default:
+				return NONE;
+		}
+	}
+
+	/**
+	 * Checks whether the expression is in a normal form
+	 * @param form the normal form
+	 * @return true if the expression is in it
+	 */
+	public boolean is(NormalForm form)
+	{
+		switch (form)
+		{
+			case CONJUNCTIVE:
+			case EQUISATISFIABLE_CONJUNCTIVE:
+				// Any expression in conjunctive normal form is trivially equisatisfiable with itself
+				return (mask & CONJUNCTIVE) != 0;
+			case DISJUNCTIVE:
+				return (mask & DISJUNCTIVE) != 0;
+			case NEGATION:
+				return (mask & NEGATION) != 0;
+			default:
+				throw new UnsupportedOperationException("A normal form has been checked without an implementation");
+		}
+	}
+
+	/**
+	 * Every normal form the expression is in
+	 * @return a Set of the normal forms
+	 */
+	public Set<NormalForm> forms()
+	{
+		Set<NormalForm> ans = EnumSet.noneOf(NormalForm.class);
+		for (NormalForm form : NormalForm.values())
+			if (is(form))
+				ans.add(form);
+		return ans;
+	}
+
+	/**
+	 * Checks whether the expression is a Literal, a Constant, or the negation of either
+	 * @return true if the expression is a literal
+	 */
+	public boolean isLiteral()
+	{
+		return (mask & LITERAL) != 0;
+	}
+
+	/**
+	 * The number of literals, counting each occurrence, and counting a subexpression used twice twice
+	 * @return the number of literals, or 0 if the expression isn't in negation normal form
+	 */
+	public long numLiterals()
+	{
+		return (mask & NEGATION) != 0 ? numLiterals : 0;
+	}
+
+	/**
+	 * The number of clauses of the conjunctive normal form
+	 * @return the number of clauses, or 0 if the expression isn't in conjunctive normal form
+	 */
+	public long numClauses()
+	{
+		return (mask & CONJUNCTIVE) != 0 ? numClauses : 0;
+	}
+
+	/**
+	 * The number of terms of the disjunctive normal form
+	 * @return the number of terms, or 0 if the expression isn't in disjunctive normal form
+	 */
+	public long numTerms()
+	{
+		return (mask & DISJUNCTIVE) != 0 ? numTerms : 0;
+	}
+
+	/**
+	 * The number of literals in the largest clause of the conjunctive normal form
+	 * @return the size of the largest clause, or 0 if the expression isn't in conjunctive normal form
+	 */
+	public long maxClauseSize()
+	{
+		return (mask & CONJUNCTIVE) != 0 ? maxClauseSize : 0;
+	}
+
+	/**
+	 * The number of literals in the largest term of the disjunctive normal form
+	 * @return the size of the largest term, or 0 if the expression isn't in disjunctive normal form
+	 */
+	public long maxTermSize()
+	{
+		return (mask & DISJUNCTIVE) != 0 ? maxTermSize : 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return forms()+", "+numLiterals()+" literals, "+numClauses()+" clauses, "+numTerms()+" terms";
+	}
+}
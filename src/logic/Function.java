@@ -16,7 +16,8 @@ import logic.malformedexpression.InvalidArgumentsException;
 import logic.malformedexpression.MalformedExpressionError;
 import logic.malformedexpression.MalformedExpressionException;
 import logic.transform.MiscTransform;
-import logic.transform.NormalForm;
+import logic.transform.SemanticEquivalence;
+import logic.transform.Simplify;
 import logic.transform.TransformSteps;
 
 /**
@@ -39,6 +40,18 @@ public class Function extends Expression
 	 */
 	private List<Expression> terms;
 	
+	/**
+	 * Every normal form this is in, filled in by FormClassification the first time it's asked for.  Functions
+	 * are never changed after they're constructed, so it never goes stale.
+	 */
+	transient FormClassification form;
+	
+	/**
+	 * The hash code, or 0 until it's first asked for.  Remembering it makes hashing an expression that shares
+	 * subexpressions linear in the number of distinct ones, rather than in the size of the tree it stands for.
+	 */
+	private transient int hash;
+	
 	/**
 	 * The basic constructor for the Function class.  Checks that the number
 	 * terms matches up with the expected number of arguments.
@@ -160,10 +173,12 @@ public class Function extends Expression
 	@Override
 	public boolean equals(Object o)
 	{
+		if (this == o)
+			return true;
 		if (!(o instanceof Function))
 			return false;
 		Function other = (Function) o;
-		if (operator != other.operator)
+		if (operator != other.operator || (hash != 0 && other.hash != 0 && hash != other.hash))
 			return false;
 		for (int i=0; i<terms.size(); ++i)
 			if (!terms.get(i).equals(other.getTerm(i)))
@@ -174,7 +189,9 @@ public class Function extends Expression
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(operator, terms);
+		if (hash == 0)
+			hash = Objects.hash(operator, terms);
+		return hash;
 	}
 
 	@Override
@@ -228,7 +245,7 @@ public class Function extends Expression
 				continue;
 			}
 			Expression currTerm = terms.get(i<operator.symbolPosition ? i : i-1); // Account for inserting the operator
-			if (currTerm instanceof Literal || currTerm.getOperator() == Operator.NEG)
+			if (!(currTerm instanceof Function) || currTerm.getOperator() == Operator.NEG)
 				ans.append(" "+currTerm.prettyPrint());
 			else
 				ans.append(" ("+currTerm.prettyPrint()+")");
@@ -284,20 +301,22 @@ public class Function extends Expression
 			return Optional.empty();
 	}
 
+	/**
+	 * Proves the Function is equivalent to another expression.  The proof is the chain of inference rules Simplify
+	 * finds between the two when it can, and otherwise a single SemanticEquivalence step, since the rules can't
+	 * always reach one from the other within Simplify's limits even though no counterexample exists.
+	 * @param other the expression to prove equivalent
+	 * @return the proof, or an empty Optional if the expressions aren't equivalent
+	 */
 	@Override
 	public Optional<TransformSteps> proveEquivalence(Expression other)
 	{
-		TransformSteps ans = NormalForm.CONJUNCTIVE.transformWithSteps(this);
-		TransformSteps secondHalf = NormalForm.CONJUNCTIVE.transformWithSteps(other);
-		return ans
-				.result()
-				.simplyEquivalentWithSteps(secondHalf.result())
-				.map
-				(
-					e -> ans
-						.combine(e)
-						.combine(secondHalf.reverse())
-				);
+		if (!isEquivalent(other))
+			return Optional.empty();
+		Optional<TransformSteps> ans = Simplify.ACT.prove(this, other);
+		if (ans.isPresent())
+			return ans;
+		return Optional.of(new SemanticEquivalence(other).transformWithSteps(this));
 	}
 	
 	@Override
@@ -326,16 +345,18 @@ public class Function extends Expression
 	@Override
 	public boolean evaluate(Map<Literal, Boolean> settings)
 	{
-		boolean[][] truthTable = operator.truthTable;
-		List<Boolean> evalTerms = terms.stream().map(t -> t.evaluate(settings)).collect(Collectors.toList());
-		for (int i=0; i<truthTable.length; ++i)
-		{
-			boolean isValid = true;
-			for (int x=0; x<truthTable[i].length-1; ++x)
-				isValid &= evalTerms.get(x) == truthTable[i][x];
-			if (isValid)
-				return truthTable[i][truthTable[i].length-1];
-		}
-		return false;
+		boolean[] evalTerms = new boolean[terms.size()];
+		for (int i=0; i<evalTerms.length; ++i)
+			evalTerms[i] = terms.get(i).evaluate(settings);
+		return operator.apply(evalTerms);
+	}
+	
+	@Override
+	public TruthValue evaluatePartial(Map<Literal, Boolean> settings)
+	{
+		TruthValue[] evalTerms = new TruthValue[terms.size()];
+		for (int i=0; i<evalTerms.length; ++i)
+			evalTerms[i] = terms.get(i).evaluatePartial(settings);
+		return operator.applyPartial(evalTerms);
 	}
 }
\ No newline at end of file
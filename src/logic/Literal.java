@@ -10,6 +10,7 @@ import java.util.stream.Stream;
 
 import logic.malformedexpression.InvalidArgumentsException;
 import logic.malformedexpression.MalformedExpressionError;
+import logic.transform.SemanticEquivalence;
 import logic.transform.TransformSteps;
 
 /**
@@ -31,6 +32,8 @@ public class Literal extends Expression
 	{
 		if (Stream.of(Operator.values()).anyMatch(o -> o.displayText.equals(variableName) || o.name().equals(variableName)))
 			throw new InvalidArgumentsException(variableName + " is an operator"); // TODO add error details
+		if (Constant.fromName(variableName).isPresent())
+			throw new InvalidArgumentsException(variableName + " is a constant");
 		this.variableName = variableName;
 	}
 	
@@ -124,6 +127,8 @@ public class Literal extends Expression
 	{
 		if (simplyEquivalent(other))
 			return Optional.of(new TransformSteps(this));
+		else if (isEquivalent(other))
+			return Optional.of(new SemanticEquivalence(other).transformWithSteps(this));
 		else
 			return Optional.empty();
 	}
@@ -143,7 +148,17 @@ public class Literal extends Expression
 	@Override
 	public boolean evaluate(Map<Literal, Boolean> settings)
 	{
-		return settings.get(this);
+		Boolean ans = settings.get(this);
+		if (ans == null)
+			throw new IllegalArgumentException("No value was given for the variable "+variableName);
+		return ans;
+	}
+	
+	@Override
+	public TruthValue evaluatePartial(Map<Literal, Boolean> settings)
+	{
+		Boolean ans = settings.get(this);
+		return ans == null ? TruthValue.UNKNOWN : TruthValue.of(ans);
 	}
 
 	@Override
@@ -52,6 +52,49 @@ public enum Operator
 		return traits.contains(t);
 	}
 	
+	/**
+	 * Looks up the result of the operator in its truth table
+	 * @param args the value of each argument, in order
+	 * @return the result of applying the operator to the arguments
+	 */
+	public boolean apply(boolean... args)
+	{
+		for (boolean[] row : truthTable)
+		{
+			boolean isValid = true;
+			for (int x=0; x<args.length; ++x)
+				isValid &= args[x] == row[x];
+			if (isValid)
+				return row[row.length-1];
+		}
+		return false;
+	}
+	
+	/**
+	 * Applies the operator using Kleene's three-valued logic.  The result is known if every
+	 * row of the truth table that agrees with the known arguments has the same result.
+	 * @param args the value of each argument, in order
+	 * @return the result of applying the operator to the arguments
+	 */
+	public TruthValue applyPartial(TruthValue... args)
+	{
+		TruthValue ans = null;
+		for (boolean[] row : truthTable)
+		{
+			boolean isValid = true;
+			for (int x=0; x<args.length; ++x)
+				isValid &= !args[x].isKnown() || args[x].toBoolean() == row[x];
+			if (!isValid)
+				continue;
+			TruthValue result = TruthValue.of(row[row.length-1]);
+			if (ans == null)
+				ans = result;
+			else if (ans != result)
+				return TruthValue.UNKNOWN;
+		}
+		return ans;
+	}
+	
 	public TruthAssignment getTruthTable()
 	{
 		return new TruthAssignment(truthTable);
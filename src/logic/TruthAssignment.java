@@ -61,6 +61,25 @@ public class TruthAssignment
 			}
 	}
 	
+	/**
+	 * Builds a truth table from packed results, in the layout used by CompiledExpression::evaluateBlock.
+	 * Bit r%64 of results[r/64] is the value of row r, and column i is true in row r when bit i of r is clear.
+	 * @param columns the variables of the truth table
+	 * @param results the packed value of each row
+	 */
+	public TruthAssignment(List<Literal> columns, long[] results)
+	{
+		this.columns = new ArrayList<>(columns);
+		for (long row=0; row<1L<<columns.size(); ++row)
+		{
+			List<Boolean> currSettings = new ArrayList<>();
+			for (int i=0; i<columns.size(); ++i)
+				currSettings.add((row >>> i & 1) == 0);
+			currSettings.add((results[(int) (row >>> 6)] >>> (row & 63) & 1) != 0);
+			table.add(currSettings);
+		}
+	}
+
 	public String toString()
 	{
 		StringBuilder ans = new StringBuilder();
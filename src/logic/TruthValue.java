@@ -0,0 +1,46 @@
+package logic;
+
+/**
+ * Enum representing the result of evaluating an Expression under a partial assignment.
+ * Follows Kleene's strong three-valued logic, an Expression is UNKNOWN only when
+ * the unassigned variables could still change its value.
+ * @author Jallibad
+ *
+ */
+public enum TruthValue
+{
+	TRUE,
+	FALSE,
+	UNKNOWN;
+
+	/**
+	 * Converts a boolean to the equivalent known TruthValue
+	 * @param b the boolean to convert
+	 * @return TRUE or FALSE
+	 */
+	public static TruthValue of(boolean b)
+	{
+		return b ? TRUE : FALSE;
+	}
+
+	/**
+	 * Checks if the value is either TRUE or FALSE
+	 * @return false if the value is UNKNOWN, true otherwise
+	 */
+	public boolean isKnown()
+	{
+		return this != UNKNOWN;
+	}
+
+	/**
+	 * Converts a known value back to a boolean
+	 * @return true for TRUE, false for FALSE
+	 * @throws IllegalStateException if the value is UNKNOWN
+	 */
+	public boolean toBoolean()
+	{
+		if (this == UNKNOWN)
+			throw new IllegalStateException("An unknown truth value can't be converted to a boolean");
+		return this == TRUE;
+	}
+}
@@ -0,0 +1,168 @@
+package logic.bdd;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import logic.Literal;
+
+/**
+ * An immutable handle to a BDD owned by a BddManager.  Two handles of the same manager are equal exactly
+ * when they represent equivalent formulas.
+ * @author Jallibad
+ *
+ */
+public final class Bdd
+{
+	final BddManager manager;
+	final int edge;
+
+	Bdd(BddManager manager, int edge)
+	{
+		this.manager = manager;
+		this.edge = edge;
+	}
+
+	/**
+	 * Getter method for the manager that owns this BDD
+	 * @return the manager
+	 */
+	public BddManager getManager()
+	{
+		return manager;
+	}
+
+	/**
+	 * @param other a BDD of the same manager
+	 * @return the BDD of the conjunction
+	 */
+	public Bdd and(Bdd other)
+	{
+		return new Bdd(manager, manager.ite(edge, manager.owned(other), BddManager.FALSE));
+	}
+
+	/**
+	 * @param other a BDD of the same manager
+	 * @return the BDD of the disjunction
+	 */
+	public Bdd or(Bdd other)
+	{
+		return new Bdd(manager, manager.ite(edge, BddManager.TRUE, manager.owned(other)));
+	}
+
+	/**
+	 * Negation only flips the complement bit of the edge, so it takes constant time
+	 * @return the BDD of the negation
+	 */
+	public Bdd not()
+	{
+		return new Bdd(manager, edge^1);
+	}
+
+	/**
+	 * If-then-else, the BDD of (this∧then)∨(¬this∧otherwise)
+	 * @param then the value where this is true
+	 * @param otherwise the value where this is false
+	 * @return the combined BDD
+	 */
+	public Bdd ite(Bdd then, Bdd otherwise)
+	{
+		return new Bdd(manager, manager.ite(edge, manager.owned(then), manager.owned(otherwise)));
+	}
+
+	/**
+	 * Sets a variable to a fixed value
+	 * @param l the variable to set
+	 * @param value the value to give it
+	 * @return the BDD no longer depending on the variable
+	 */
+	public Bdd restrict(Literal l, boolean value)
+	{
+		int level = manager.getOrder().indexOf(l);
+		if (level < 0)
+			return this;
+		return new Bdd(manager, manager.restrict(edge, level, value, new HashMap<>()));
+	}
+
+	/**
+	 * Checks equivalence with another BDD of the same manager, which is a single comparison
+	 * @param other the BDD to compare against
+	 * @return true if both represent equivalent formulas
+	 */
+	public boolean equivalentTo(Bdd other)
+	{
+		return edge == manager.owned(other);
+	}
+
+	/**
+	 * @return true if this is the constant TRUE
+	 */
+	public boolean isTautology()
+	{
+		return edge == BddManager.TRUE;
+	}
+
+	/**
+	 * @return true if this isn't the constant FALSE
+	 */
+	public boolean isSatisfiable()
+	{
+		return edge != BddManager.FALSE;
+	}
+
+	/**
+	 * Counts the satisfying assignments over every variable of the manager
+	 * @return the number of models
+	 */
+	public BigInteger countModels()
+	{
+		return manager.countModels(edge, 0, new HashMap<>());
+	}
+
+	/**
+	 * Finds a satisfying assignment by following any path to TRUE.  Variables not on the path are set to false.
+	 * @return a value for every variable of the manager, or empty if this is unsatisfiable
+	 */
+	public Optional<Map<Literal, Boolean>> findModel()
+	{
+		if (!isSatisfiable())
+			return Optional.empty();
+		Map<Literal, Boolean> ans = new HashMap<>();
+		manager.getOrder().forEach(l -> ans.put(l, false));
+		for (int e = edge; e != BddManager.TRUE; )
+		{
+			boolean value = manager.child(e, true) != BddManager.FALSE;
+			ans.put(manager.variableAt(manager.levelOf(e)), value);
+			e = manager.child(e, value);
+		}
+		return Optional.of(ans);
+	}
+
+	/**
+	 * The number of nodes in this BDD, not counting the terminal
+	 * @return the number of nodes
+	 */
+	public int size()
+	{
+		return manager.size(edge);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof Bdd && ((Bdd) o).manager == manager && ((Bdd) o).edge == edge;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return edge;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Bdd("+(edge >> 1)+((edge & 1) == 0 ? "" : "'")+", "+size()+" nodes)";
+	}
+}
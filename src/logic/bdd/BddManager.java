@@ -0,0 +1,504 @@
+package logic.bdd;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * Builds and owns reduced ordered binary decision diagrams.  Every node is hash-consed through a unique table,
+ * so two BDDs of the same manager represent equivalent formulas exactly when they are the same edge, and
+ * checking equivalence is a single int comparison.
+ *
+ * Nodes are stored in parallel int arrays rather than as objects.  An edge is a node index shifted left by one,
+ * with the lowest bit marking the edge as complemented, so negation is free and a formula and its negation
+ * share every node.  To keep edges canonical the high child of a node is never complemented.  There is a single
+ * terminal node, index 0, with TRUE the plain edge to it and FALSE the complemented one.
+ *
+ * Results of ITE, the one operation every other operation is built from, are kept in a lossy cache.
+ * Nodes are never freed, so a manager should be dropped once its BDDs are no longer needed.  Building a BDD
+ * throws CancellationException if the thread is interrupted, since some formulas have no small BDD.
+ * @author Jallibad
+ *
+ */
+public class BddManager
+{
+	static final int TRUE = 0;
+	static final int FALSE = 1;
+
+	private static final int CACHE_SIZE = 1 << 16;
+
+	/**
+	 * The interrupt flag is checked each time this many nodes have been created
+	 */
+	private static final int INTERRUPT_CHECK_MASK = (1 << 12)-1;
+
+	/**
+	 * The variable at each level, the root being level 0
+	 */
+	private final List<Literal> order = new ArrayList<>();
+	private final Map<Literal, Integer> levels = new HashMap<>();
+
+	/**
+	 * For each node, the level of its variable and its children.  The terminal node has level Integer.MAX_VALUE.
+	 */
+	private int[] nodeLevels = new int[1024];
+	private int[] lows = new int[1024];
+	private int[] highs = new int[1024];
+	private int numNodes = 1;
+
+	/**
+	 * An open addressing hash table of node indices, with 0 marking an empty bucket
+	 */
+	private int[] unique = new int[2048];
+
+	private final int[] cacheF = new int[CACHE_SIZE];
+	private final int[] cacheG = new int[CACHE_SIZE];
+	private final int[] cacheH = new int[CACHE_SIZE];
+	private final int[] cacheResult = new int[CACHE_SIZE];
+
+	/**
+	 * Creates a manager that orders variables by when they are first used
+	 */
+	public BddManager()
+	{
+		nodeLevels[0] = Integer.MAX_VALUE;
+		Arrays.fill(cacheF, -1);
+	}
+
+	/**
+	 * Creates a manager with a fixed order for the given variables.  Any other variable is placed after them.
+	 * @param order the variables, from the root down
+	 */
+	public BddManager(List<Literal> order)
+	{
+		this();
+		order.forEach(this::level);
+	}
+
+	/**
+	 * Creates a manager for the given expressions, ordering variables by a depth first traversal
+	 * so that variables occurring close together end up at nearby levels
+	 * @param expressions the expressions that are going to be compiled
+	 * @return the manager
+	 */
+	public static BddManager forExpressions(Collection<? extends Expression> expressions)
+	{
+		Set<Literal> order = new LinkedHashSet<>();
+		for (Expression e : expressions)
+			collectVariables(e, order);
+		return new BddManager(new ArrayList<>(order));
+	}
+
+	private static void collectVariables(Expression e, Set<Literal> order)
+	{
+		if (e instanceof Literal)
+			order.add((Literal) e);
+		else if (e instanceof Function)
+			((Function) e).getTerms().forEach(t -> collectVariables(t, order));
+	}
+
+	/**
+	 * Getter method for the variable order
+	 * @return an unmodifiable List of the variables, from the root down
+	 */
+	public List<Literal> getOrder()
+	{
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * The number of nodes created so far, including ones no longer used by any BDD
+	 * @return the number of nodes
+	 */
+	public int numNodes()
+	{
+		return numNodes;
+	}
+
+	/**
+	 * The constant BDD with the given value
+	 * @param value the value
+	 * @return the BDD of ⊤ or ⊥
+	 */
+	public Bdd constant(boolean value)
+	{
+		return new Bdd(this, value ? TRUE : FALSE);
+	}
+
+	/**
+	 * The BDD of a single variable
+	 * @param l the variable
+	 * @return the BDD that is true exactly when the variable is
+	 */
+	public Bdd variable(Literal l)
+	{
+		return new Bdd(this, variableEdge(l));
+	}
+
+	/**
+	 * Compiles an expression into a BDD
+	 * @param e the expression to compile
+	 * @return the BDD, which is the same edge as the BDD of any equivalent expression
+	 */
+	public Bdd toBdd(Expression e)
+	{
+		return new Bdd(this, compile(e, new HashMap<>()));
+	}
+
+	private int compile(Expression e, Map<Expression, Integer> memo)
+	{
+		if (e instanceof Literal)
+			return variableEdge((Literal) e);
+		if (e instanceof Constant)
+			return ((Constant) e).value ? TRUE : FALSE;
+		Integer ans = memo.get(e);
+		if (ans != null)
+			return ans;
+		Function f = (Function) e;
+		int[] terms = new int[f.operator.numArguments];
+		for (int i=0; i<terms.length; ++i)
+			terms[i] = compile(f.getTerm(i), memo);
+		int result;
+		switch (f.operator)
+		{
+			case NEG:
+				result = terms[0]^1;
+				break;
+			case AND:
+				result = ite(terms[0], terms[1], FALSE);
+				break;
+			case OR:
+				result = ite(terms[0], TRUE, terms[1]);
+				break;
+			default:
+				result = fromTruthTable(f.operator, terms);
+		}
+		memo.put(e, result);
+		return result;
+	}
+
+	/**
+	 * The disjunction of every row of the truth table with a true result
+	 */
+	private int fromTruthTable(Operator op, int[] terms)
+	{
+		int ans = FALSE;
+		for (boolean[] row : op.truthTable)
+		{
+			if (!row[terms.length])
+				continue;
+			int rowEdge = TRUE;
+			for (int i=0; i<terms.length; ++i)
+				rowEdge = ite(rowEdge, row[i] ? terms[i] : terms[i]^1, FALSE);
+			ans = ite(ans, TRUE, rowEdge);
+		}
+		return ans;
+	}
+
+	private int level(Literal l)
+	{
+		return levels.computeIfAbsent(l, k ->
+		{
+			order.add(k);
+			return order.size()-1;
+		});
+	}
+
+	int variableEdge(Literal l)
+	{
+		return node(level(l), FALSE, TRUE);
+	}
+
+	Literal variableAt(int level)
+	{
+		return order.get(level);
+	}
+
+	int numVariables()
+	{
+		return order.size();
+	}
+
+	int levelOf(int edge)
+	{
+		return nodeLevels[edge >> 1];
+	}
+
+	/**
+	 * The child of an edge for the given value of its top variable, with the complement pushed down
+	 */
+	int child(int edge, boolean value)
+	{
+		int node = edge >> 1;
+		return (value ? highs[node] : lows[node]) ^ (edge & 1);
+	}
+
+	/**
+	 * The cofactor of an edge for a value of the variable at the given level, which must be at or above its top
+	 */
+	private int cofactor(int edge, int level, boolean value)
+	{
+		return levelOf(edge) == level ? child(edge, value) : edge;
+	}
+
+	/**
+	 * Finds or creates the node with the given variable and children
+	 * @return the edge to the node
+	 */
+	int node(int level, int low, int high)
+	{
+		if (low == high)
+			return low;
+		if ((high & 1) != 0)
+			return node(level, low^1, high^1)^1;
+		int mask = unique.length-1;
+		for (int i=hash(level, low, high) & mask; ; i = (i+1) & mask)
+		{
+			int n = unique[i];
+			if (n == 0)
+			{
+				if ((numNodes & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted())
+					throw new CancellationException("Interrupted after creating "+numNodes+" nodes");
+				n = numNodes++;
+				if (n == nodeLevels.length)
+				{
+					nodeLevels = Arrays.copyOf(nodeLevels, 2*n);
+					lows = Arrays.copyOf(lows, 2*n);
+					highs = Arrays.copyOf(highs, 2*n);
+				}
+				nodeLevels[n] = level;
+				lows[n] = low;
+				highs[n] = high;
+				unique[i] = n;
+				if (2*numNodes > unique.length)
+					rehash();
+				return n << 1;
+			}
+			if (nodeLevels[n] == level && lows[n] == low && highs[n] == high)
+				return n << 1;
+		}
+	}
+
+	private static int hash(int level, int low, int high)
+	{
+		int h = level*0x9E3779B1 + low*0x85EBCA77 + high*0xC2B2AE3D;
+		return h ^ (h >>> 16);
+	}
+
+	private void rehash()
+	{
+		unique = new int[2*unique.length];
+		int mask = unique.length-1;
+		for (int n=1; n<numNodes; ++n)
+		{
+			int i = hash(nodeLevels[n], lows[n], highs[n]) & mask;
+			while (unique[i] != 0)
+				i = (i+1) & mask;
+			unique[i] = n;
+		}
+	}
+
+	/**
+	 * If-then-else, the BDD of (f∧g)∨(¬f∧h)
+	 */
+	int ite(int f, int g, int h)
+	{
+		// Terminal cases
+		if (f == TRUE)
+			return g;
+		if (f == FALSE)
+			return h;
+		if (g == f)
+			g = TRUE;
+		else if (g == (f^1))
+			g = FALSE;
+		if (h == f)
+			h = FALSE;
+		else if (h == (f^1))
+			h = TRUE;
+		if (g == h)
+			return g;
+		if (g == TRUE && h == FALSE)
+			return f;
+		if (g == FALSE && h == TRUE)
+			return f^1;
+
+		// Normalize so that f and g are never complemented, improving the cache hit rate
+		if ((f & 1) != 0)
+		{
+			f ^= 1;
+			int swap = g;
+			g = h;
+			h = swap;
+		}
+		int complement = g & 1;
+		g ^= complement;
+		h ^= complement;
+
+		int slot = hash(f, g, h) & (CACHE_SIZE-1);
+		if (cacheF[slot] == f && cacheG[slot] == g && cacheH[slot] == h)
+			return cacheResult[slot]^complement;
+
+		int level = Math.min(levelOf(f), Math.min(levelOf(g), levelOf(h)));
+		int high = ite(cofactor(f, level, true), cofactor(g, level, true), cofactor(h, level, true));
+		int low = ite(cofactor(f, level, false), cofactor(g, level, false), cofactor(h, level, false));
+		int ans = node(level, low, high);
+
+		cacheF[slot] = f;
+		cacheG[slot] = g;
+		cacheH[slot] = h;
+		cacheResult[slot] = ans;
+		return ans^complement;
+	}
+
+	/**
+	 * Sets a variable to a value everywhere in a BDD
+	 */
+	int restrict(int edge, int level, boolean value, Map<Integer, Integer> memo)
+	{
+		if (levelOf(edge) > level)
+			return edge;
+		if (levelOf(edge) == level)
+			return child(edge, value);
+		int node = edge & ~1;
+		Integer ans = memo.get(node);
+		if (ans == null)
+		{
+			ans = node(levelOf(node), restrict(child(node, false), level, value, memo), restrict(child(node, true), level, value, memo));
+			memo.put(node, ans);
+		}
+		return ans^(edge & 1);
+	}
+
+	/**
+	 * Counts the assignments to the variables at or below a level that make an edge true
+	 */
+	BigInteger countModels(int edge, int level, Map<Integer, BigInteger> memo)
+	{
+		int below = numVariables()-level;
+		if ((edge >> 1) == 0)
+			return edge == TRUE ? BigInteger.ONE.shiftLeft(below) : BigInteger.ZERO;
+		int node = edge >> 1;
+		BigInteger ans = memo.get(node);
+		if (ans == null)
+		{
+			int nodeLevel = nodeLevels[node];
+			ans = countModels(lows[node], nodeLevel+1, memo).add(countModels(highs[node], nodeLevel+1, memo));
+			memo.put(node, ans);
+		}
+		ans = ans.shiftLeft(nodeLevels[node]-level);
+		return (edge & 1) == 0 ? ans : BigInteger.ONE.shiftLeft(below).subtract(ans);
+	}
+
+	/**
+	 * Counts the distinct nodes reachable from the given edges, not counting the terminal
+	 */
+	int size(int... edges)
+	{
+		Set<Integer> seen = new HashSet<>();
+		List<Integer> stack = new ArrayList<>();
+		for (int e : edges)
+			stack.add(e >> 1);
+		while (!stack.isEmpty())
+		{
+			int n = stack.remove(stack.size()-1);
+			if (n == 0 || !seen.add(n))
+				continue;
+			stack.add(lows[n] >> 1);
+			stack.add(highs[n] >> 1);
+		}
+		return seen.size();
+	}
+
+	/**
+	 * Rebuilds BDDs of another manager in this one, under this manager's variable order
+	 */
+	private int transfer(BddManager from, int edge, Map<Integer, Integer> memo)
+	{
+		int node = edge >> 1;
+		if (node == 0)
+			return edge;
+		Integer ans = memo.get(node);
+		if (ans == null)
+		{
+			int v = variableEdge(from.variableAt(from.nodeLevels[node]));
+			ans = ite(v, transfer(from, from.highs[node], memo), transfer(from, from.lows[node], memo));
+			memo.put(node, ans);
+		}
+		return ans^(edge & 1);
+	}
+
+	/**
+	 * Rebuilds BDDs of this manager in a new manager with the given variable order
+	 * @param roots BDDs of this manager
+	 * @param newOrder the variable order of the new manager
+	 * @return the same BDDs, in the same order, belonging to the new manager
+	 */
+	public List<Bdd> reorder(List<Bdd> roots, List<Literal> newOrder)
+	{
+		BddManager ans = new BddManager(newOrder);
+		Map<Integer, Integer> memo = new HashMap<>();
+		List<Bdd> rebuilt = new ArrayList<>();
+		for (Bdd b : roots)
+			rebuilt.add(new Bdd(ans, ans.transfer(this, owned(b), memo)));
+		return rebuilt;
+	}
+
+	/**
+	 * Searches for a smaller variable order by sifting.  Each variable in turn is tried at every level with
+	 * the others kept in their relative order, and is left wherever the BDDs were smallest.  Every candidate
+	 * order is measured by rebuilding the BDDs in a scratch manager.
+	 * @param roots BDDs of this manager, whose combined size is minimized
+	 * @return the same BDDs, in the same order, belonging to a new manager with the best order found
+	 */
+	public List<Bdd> sift(List<Bdd> roots)
+	{
+		List<Literal> best = new ArrayList<>(order);
+		int bestSize = size(roots.stream().mapToInt(this::owned).toArray());
+		for (Literal v : new ArrayList<>(order))
+		{
+			List<Literal> rest = new ArrayList<>(best);
+			rest.remove(v);
+			for (int i=0; i<=rest.size(); ++i)
+			{
+				List<Literal> candidate = new ArrayList<>(rest);
+				candidate.add(i, v);
+				if (candidate.equals(best))
+					continue;
+				List<Bdd> rebuilt = reorder(roots, candidate);
+				int size = rebuilt.isEmpty() ? 0 : rebuilt.get(0).manager.size(rebuilt.stream().mapToInt(b -> b.edge).toArray());
+				if (size < bestSize)
+				{
+					best = candidate;
+					bestSize = size;
+				}
+			}
+		}
+		return reorder(roots, best);
+	}
+
+	/**
+	 * Gets the edge of a BDD, checking that it belongs to this manager
+	 */
+	int owned(Bdd b)
+	{
+		if (b.manager != this)
+			throw new IllegalArgumentException("The BDD belongs to a different manager");
+		return b.edge;
+	}
+}
@@ -0,0 +1,68 @@
+package logic.decision;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import logic.Literal;
+
+/**
+ * The answer to a Query, along with its witness if there is one and the engine that found it
+ * @author Jallibad
+ *
+ */
+public final class Decision
+{
+	private final Query query;
+	private final Engine engine;
+	private final Map<Literal, Boolean> witness;
+
+	Decision(Query query, Engine engine, Optional<Map<Literal, Boolean>> witness)
+	{
+		this.query = query;
+		this.engine = engine;
+		this.witness = witness.map(Collections::unmodifiableMap).orElse(null);
+	}
+
+	/**
+	 * Getter method for the query answered
+	 * @return the query
+	 */
+	public Query getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * Getter method for the engine that answered first
+	 * @return the engine
+	 */
+	public Engine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Whether the answer is yes, meaning satisfiable, valid or equivalent depending on the query
+	 * @return the answer
+	 */
+	public boolean holds()
+	{
+		return query.holds(witness != null);
+	}
+
+	/**
+	 * The witness found, a model for satisfiability, a counterexample for validity or a difference for equivalence
+	 * @return an unmodifiable assignment of every variable of the query, or empty if there's no witness
+	 */
+	public Optional<Map<Literal, Boolean>> getWitness()
+	{
+		return Optional.ofNullable(witness);
+	}
+
+	@Override
+	public String toString()
+	{
+		return query+" "+(holds() ? "yes" : "no")+(witness == null ? "" : ", witness "+witness)+" ("+engine+")";
+	}
+}
@@ -0,0 +1,195 @@
+package logic.decision;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import logic.Expression;
+
+/**
+ * Answers satisfiability, validity and equivalence queries by racing several engines against each other.  No
+ * engine wins everywhere: enumerating the truth table is unbeatable for a few variables, normal forms are quick
+ * for small shallow expressions, BDDs pay off on some structured problems, and SAT handles large ones.  The
+ * engines worth trying are picked from cheap Features of the query, run concurrently, and the first to answer
+ * wins while the rest are cancelled, so the slowest engine never decides how long a query takes.
+ * Queries small enough that the truth table settles them at once skip the race and are answered on the
+ * calling thread.
+ * @author Jallibad
+ *
+ */
+public class DecisionService implements Closeable
+{
+	/**
+	 * Up to this many variables the truth table is enumerated on its own without racing anything
+	 */
+	private static final int SMALL_VARIABLES = 10;
+
+	/**
+	 * Above this many variables the truth table has too many rows to be worth racing
+	 */
+	private static final int MAX_TABLE_VARIABLES = 24;
+
+	/**
+	 * Above this size normal forms can blow up too much to be worth racing
+	 */
+	private static final int MAX_NORMAL_FORM_SIZE = 48;
+
+	/**
+	 * Above this many variables BDDs are too likely to blow up to be worth racing
+	 */
+	private static final int MAX_BDD_VARIABLES = 64;
+
+	private final ExecutorService threads;
+	private final boolean ownsThreads;
+
+	/**
+	 * Creates a service running engines on its own daemon threads, which are shut down by close
+	 */
+	public DecisionService()
+	{
+		this.threads = Executors.newCachedThreadPool(r ->
+		{
+			Thread t = new Thread(r, "decision engine");
+			t.setDaemon(true);
+			return t;
+		});
+		this.ownsThreads = true;
+	}
+
+	/**
+	 * Creates a service running engines on the given executor, which close leaves running
+	 * @param threads the executor to run engines on
+	 */
+	public DecisionService(ExecutorService threads)
+	{
+		this.threads = threads;
+		this.ownsThreads = false;
+	}
+
+	/**
+	 * Checks whether some assignment makes an expression true
+	 * @param e the expression to check
+	 * @return true if the expression is satisfiable
+	 */
+	public boolean isSatisfiable(Expression e)
+	{
+		return decide(Query.satisfiability(e)).holds();
+	}
+
+	/**
+	 * Checks whether every assignment makes an expression true
+	 * @param e the expression to check
+	 * @return true if the expression is a tautology
+	 */
+	public boolean isTautology(Expression e)
+	{
+		return decide(Query.validity(e)).holds();
+	}
+
+	/**
+	 * Checks whether two expressions have the same value under every assignment
+	 * @param a the first expression
+	 * @param b the second expression
+	 * @return true if the expressions are equivalent
+	 */
+	public boolean areEquivalent(Expression a, Expression b)
+	{
+		return decide(Query.equivalence(a, b)).holds();
+	}
+
+	/**
+	 * Answers a query with the engines picked by select
+	 * @param query the query to answer
+	 * @return the first answer found
+	 */
+	public Decision decide(Query query)
+	{
+		return decide(query, select(Features.of(query)));
+	}
+
+	/**
+	 * Picks the engines worth racing on a query with the given features, in the order they're started
+	 * @param features the features of the query
+	 * @return the engines, always including SAT unless the truth table alone is enough
+	 */
+	public static List<Engine> select(Features features)
+	{
+		List<Engine> ans = new ArrayList<>();
+		if (features.numVariables() <= MAX_TABLE_VARIABLES)
+			ans.add(Engine.TRUTH_TABLE);
+		if (features.numVariables() <= SMALL_VARIABLES)
+			return ans;
+		if (features.size() <= MAX_NORMAL_FORM_SIZE)
+			ans.add(Engine.NORMAL_FORM);
+		if (features.numVariables() <= MAX_BDD_VARIABLES)
+			ans.add(Engine.BDD);
+		ans.add(Engine.SAT);
+		return ans;
+	}
+
+	/**
+	 * Races the given engines on a query, cancelling the rest as soon as one answers.  An engine that fails
+	 * is ignored as long as another one answers.
+	 * @param query the query to answer
+	 * @param engines the engines to race, a single engine is run on the calling thread
+	 * @return the first answer found
+	 * @throws IllegalStateException if every engine fails
+	 * @throws CancellationException if the calling thread is interrupted while waiting
+	 */
+	public Decision decide(Query query, Collection<Engine> engines)
+	{
+		if (engines.isEmpty())
+			throw new IllegalArgumentException("At least one engine is needed");
+		if (engines.size() == 1)
+		{
+			Engine engine = engines.iterator().next();
+			return new Decision(query, engine, engine.search(query));
+		}
+
+		CompletionService<Decision> race = new ExecutorCompletionService<>(threads);
+		List<Future<Decision>> running = new ArrayList<>();
+		for (Engine engine : engines)
+			running.add(race.submit(() -> new Decision(query, engine, engine.search(query))));
+		try
+		{
+			Throwable failure = null;
+			for (int i=0; i<running.size(); ++i)
+				try
+				{
+					return race.take().get();
+				}
+				catch (ExecutionException e)
+				{
+					failure = e.getCause();
+				}
+			throw new IllegalStateException("Every engine failed on "+query, failure);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for an engine");
+		}
+		finally
+		{
+			running.forEach(f -> f.cancel(true));
+		}
+	}
+
+	/**
+	 * Shuts down the threads if the service created them
+	 */
+	@Override
+	public void close()
+	{
+		if (ownsThreads)
+			threads.shutdownNow();
+	}
+}
@@ -0,0 +1,158 @@
+package logic.decision;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Literal;
+import logic.bdd.Bdd;
+import logic.bdd.BddManager;
+import logic.sat.ClauseSet;
+import logic.sat.Satisfiability;
+import logic.transform.NormalForm;
+import logic.transform.Restrict;
+import logic.truthtable.CompiledExpression;
+
+/**
+ * The decision procedures DecisionService can run.  Each one searches for the witness of a Query and gives up
+ * with a CancellationException once its thread is interrupted.
+ * @author Jallibad
+ *
+ */
+public enum Engine
+{
+	/**
+	 * Enumerates the rows of the truth table 64 at a time with CompiledExpression, the fastest engine for a
+	 * handful of variables no matter how the expression is built
+	 */
+	TRUTH_TABLE,
+	/**
+	 * Puts the expression into disjunctive normal form to find a model, or conjunctive normal form to find a
+	 * counterexample, and looks for a term or clause without a complementary pair.  The normal form can be
+	 * exponentially larger than the expression and isn't built with cancellation in mind, so it's only
+	 * worth racing on small expressions.
+	 */
+	NORMAL_FORM,
+	/**
+	 * Builds a BDD, after which the answer is immediate
+	 */
+	BDD,
+	/**
+	 * Preprocesses and solves a Tseitin encoding with Satisfiability, which scales to structured instances
+	 * with many variables
+	 */
+	SAT;
+
+	/**
+	 * The number of blocks of 64 rows TRUTH_TABLE evaluates between checks of the interrupt flag
+	 */
+	private static final int BLOCKS_PER_CHECK = 1024;
+
+	/**
+	 * Searches for the witness of a query
+	 * @param query the query to answer
+	 * @return the witness, or empty if there is none
+	 * @throws CancellationException if the thread is interrupted before the search is finished
+	 */
+	Optional<Map<Literal, Boolean>> search(Query query)
+	{
+		switch (this)
+		{
+			case TRUTH_TABLE:
+				return searchTruthTable(query);
+			case NORMAL_FORM:
+				return searchNormalForm(query);
+			case BDD:
+				return searchBdd(query);
+			case SAT:
+				List<Expression> exps = query.getExpressions();
+				switch (query.getKind())
+				{
+					case SATISFIABILITY:
+						return Satisfiability.findModel(exps.get(0));
+					case VALIDITY:
+						return Satisfiability.findCounterexample(exps.get(0));
+					case EQUIVALENCE:
+						return Satisfiability.findDifference(exps.get(0), exps.get(1));
+					default:
+						throw new UnsupportedOperationException();
+				}
+			default:
+				throw new UnsupportedOperationException("An engine has been run without an implementation");
+		}
+	}
+
+	private static Optional<Map<Literal, Boolean>> searchTruthTable(Query query)
+	{
+		CompiledExpression compiled = new CompiledExpression(query.searched());
+		long[] scratch = compiled.newScratch();
+		long flip = query.searchedValue() ? 0 : -1L;
+		for (long firstRow=0, blocks=0; firstRow<compiled.numRows(); firstRow+=CompiledExpression.BLOCK_SIZE, ++blocks)
+		{
+			if (blocks % BLOCKS_PER_CHECK == 0)
+				checkInterrupt();
+			long hits = (compiled.evaluateBlock(firstRow, scratch) ^ flip) & compiled.validBits(firstRow);
+			if (hits != 0)
+				return Optional.of(compiled.assignment(firstRow+Long.numberOfTrailingZeros(hits)));
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Every term of the DNF kept by ClauseSet has a model, since a term containing a literal and its negation is
+	 * dropped as it's built, and so does the negation of every clause of the CNF
+	 */
+	private static Optional<Map<Literal, Boolean>> searchNormalForm(Query query)
+	{
+		boolean value = query.searchedValue();
+		Map<Literal, Boolean> ans = new HashMap<>();
+		for (Expression e : query.getExpressions())
+			e.getVariables().forEach(l -> ans.put(l, false));
+
+		Expression e = Restrict.FOLD_CONSTANTS.transform(query.searched());
+		if (e instanceof Constant)
+			return ((Constant) e).value == value ? Optional.of(ans) : Optional.empty();
+		checkInterrupt();
+		ClauseSet form = ClauseSet.of(e, value ? NormalForm.DISJUNCTIVE : NormalForm.CONJUNCTIVE);
+		if (form.isEmpty())
+			return Optional.empty();
+		for (int l : form.getClauses().get(0))
+			ans.put(form.getVariable(Math.abs(l)), (l > 0) == value);
+		return Optional.of(ans);
+	}
+
+	private static Optional<Map<Literal, Boolean>> searchBdd(Query query)
+	{
+		List<Expression> exps = query.getExpressions();
+		BddManager manager = BddManager.forExpressions(exps);
+		Bdd a = manager.toBdd(exps.get(0));
+		switch (query.getKind())
+		{
+			case SATISFIABILITY:
+				return a.findModel();
+			case VALIDITY:
+				return a.not().findModel();
+			case EQUIVALENCE:
+				Bdd b = manager.toBdd(exps.get(1));
+				return a.ite(b.not(), b).findModel();
+			default:
+				throw new UnsupportedOperationException();
+		}
+	}
+
+	private static void checkInterrupt()
+	{
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException();
+	}
+
+	@Override
+	public String toString()
+	{
+		return name().toLowerCase().replace('_', ' ');
+	}
+}
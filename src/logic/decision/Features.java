@@ -0,0 +1,98 @@
+package logic.decision;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+
+/**
+ * Cheap measurements of a query that DecisionService picks its engines by, all found in one pass over the
+ * expressions without recursion
+ * @author Jallibad
+ *
+ */
+public final class Features
+{
+	private final int numVariables;
+	private final int size;
+	private final int depth;
+
+	private Features(int numVariables, int size, int depth)
+	{
+		this.numVariables = numVariables;
+		this.size = size;
+		this.depth = depth;
+	}
+
+	/**
+	 * Measures the expressions of a query
+	 * @param query the query to measure
+	 * @return the features of the query
+	 */
+	public static Features of(Query query)
+	{
+		Set<Literal> variables = new HashSet<>();
+		int size = 0;
+		int depth = 0;
+		Deque<Expression> stack = new ArrayDeque<>();
+		Deque<Integer> depths = new ArrayDeque<>();
+		for (Expression e : query.getExpressions())
+		{
+			stack.push(e);
+			depths.push(1);
+		}
+		while (!stack.isEmpty())
+		{
+			Expression e = stack.pop();
+			int d = depths.pop();
+			size++;
+			depth = Math.max(depth, d);
+			if (e instanceof Literal)
+				variables.add((Literal) e);
+			else if (e instanceof Function)
+				for (Expression t : ((Function) e).getTerms())
+				{
+					stack.push(t);
+					depths.push(d+1);
+				}
+		}
+		return new Features(variables.size(), size, depth);
+	}
+
+	/**
+	 * Getter method for the number of distinct variables
+	 * @return the number of variables
+	 */
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	/**
+	 * Getter method for the number of nodes in the expression trees, counting shared subexpressions every time
+	 * @return the size
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Getter method for the length of the longest path from a root to a leaf
+	 * @return the depth
+	 */
+	public int depth()
+	{
+		return depth;
+	}
+
+	@Override
+	public String toString()
+	{
+		return numVariables+" variables, size "+size+", depth "+depth;
+	}
+}
@@ -0,0 +1,156 @@
+package logic.decision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import logic.Expression;
+import logic.Function;
+import logic.Operator;
+
+/**
+ * A question for DecisionService.  Every kind of query comes down to searching for a witness, an assignment
+ * giving an expression a particular value: a model for satisfiability, a counterexample for validity and a
+ * difference for equivalence.
+ * @author Jallibad
+ *
+ */
+public final class Query
+{
+	/**
+	 * The kinds of question that can be asked
+	 * @author Jallibad
+	 *
+	 */
+	public enum Kind
+	{
+		/**
+		 * Whether some assignment makes the expression true, the witness being a model
+		 */
+		SATISFIABILITY,
+		/**
+		 * Whether every assignment makes the expression true, the witness being a counterexample
+		 */
+		VALIDITY,
+		/**
+		 * Whether two expressions agree under every assignment, the witness being an assignment where they don't
+		 */
+		EQUIVALENCE
+	}
+
+	private final Kind kind;
+	private final List<Expression> expressions;
+
+	private Query(Kind kind, Expression... expressions)
+	{
+		this.kind = kind;
+		this.expressions = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(expressions)));
+	}
+
+	/**
+	 * Asks whether an expression is satisfiable
+	 * @param e the expression
+	 * @return the query
+	 */
+	public static Query satisfiability(Expression e)
+	{
+		return new Query(Kind.SATISFIABILITY, e);
+	}
+
+	/**
+	 * Asks whether an expression is a tautology
+	 * @param e the expression
+	 * @return the query
+	 */
+	public static Query validity(Expression e)
+	{
+		return new Query(Kind.VALIDITY, e);
+	}
+
+	/**
+	 * Asks whether two expressions are equivalent
+	 * @param a the first expression
+	 * @param b the second expression
+	 * @return the query
+	 */
+	public static Query equivalence(Expression a, Expression b)
+	{
+		return new Query(Kind.EQUIVALENCE, a, b);
+	}
+
+	/**
+	 * Getter method for the kind of query
+	 * @return the kind
+	 */
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	/**
+	 * Getter method for the expressions asked about
+	 * @return an unmodifiable List of one expression, or two for equivalence
+	 */
+	public List<Expression> getExpressions()
+	{
+		return expressions;
+	}
+
+	/**
+	 * The single expression a witness gives the value of searchedValue, which for equivalence is the miter
+	 * (a∧¬b)∨(¬a∧b) of the two expressions
+	 * @return the expression searched
+	 */
+	public Expression searched()
+	{
+		if (kind != Kind.EQUIVALENCE)
+			return expressions.get(0);
+		Expression a = expressions.get(0);
+		Expression b = expressions.get(1);
+		return Function.constructUnsafe(Operator.OR, Arrays.asList(
+			Function.constructUnsafe(Operator.AND, Arrays.asList(a, negate(b))),
+			Function.constructUnsafe(Operator.AND, Arrays.asList(negate(a), b))
+		));
+	}
+
+	private static Expression negate(Expression e)
+	{
+		return Function.constructUnsafe(Operator.NEG, Collections.singletonList(e));
+	}
+
+	/**
+	 * The value a witness gives the searched expression
+	 * @return false for validity, true otherwise
+	 */
+	public boolean searchedValue()
+	{
+		return kind != Kind.VALIDITY;
+	}
+
+	/**
+	 * Whether the answer to the query is yes, given the result of the search for a witness
+	 * @param witnessFound whether a witness exists
+	 * @return true for satisfiability if there is a witness, and for validity and equivalence if there isn't
+	 */
+	public boolean holds(boolean witnessFound)
+	{
+		return kind == Kind.SATISFIABILITY ? witnessFound : !witnessFound;
+	}
+
+	@Override
+	public String toString()
+	{
+		switch (kind)
+		{
+			case SATISFIABILITY:
+				return "is "+expressions.get(0)+" satisfiable?";
+			case VALIDITY:
+				return "is "+expressions.get(0)+" a tautology?";
+			case EQUIVALENCE:
+				return "is "+expressions.get(0)+" equivalent to "+expressions.get(1)+"?";
+			default:
+				throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package logic.dnnf;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import logic.Literal;
+
+/**
+ * A formula compiled into smooth decision-DNNF.  Every AND node has children over disjoint variables, every
+ * DECISION node splits on a single variable, and every node mentions exactly the variables of the component
+ * it was compiled from.  Because of those three properties model counting, conditioning and per-variable
+ * counts are each a single pass over the nodes, in time linear in the size of the compiled formula.
+ *
+ * Nodes are stored in arrays in topological order, every child before its parents.  Nodes are shared, so the root
+ * can be any node, not just the last one, and nodes after it aren't part of the formula.
+ * Variables are numbered as in the Tseitin encoding the formula was compiled from.  The encoding's auxiliary
+ * variables are determined by the variables of the original expression, so counting over every variable gives
+ * the same number as counting over the original ones.  The class is Serializable, so a formula can be compiled
+ * once and the result stored and queried many times.
+ * @author Jallibad
+ *
+ */
+public class DecisionDnnf implements Serializable
+{
+	private static final long serialVersionUID = 8126439005871152036L;
+
+	static final byte TRUE = 0;
+	static final byte FALSE = 1;
+	/**
+	 * A single literal, whose variable number is negative if the literal is negated
+	 */
+	static final byte LITERAL = 2;
+	/**
+	 * A variable that can take either value, used to keep the formula smooth
+	 */
+	static final byte FREE = 3;
+	static final byte AND = 4;
+	/**
+	 * A decision on a variable, whose children are the formula when it's true followed by the formula when it's false
+	 */
+	static final byte DECISION = 5;
+
+	private final byte[] kinds;
+	private final int[] variables;
+	private final int[][] children;
+	private final int root;
+	private final int numCnfVariables;
+	private final Map<Literal, Integer> inputs;
+
+	DecisionDnnf(byte[] kinds, int[] variables, int[][] children, int root, int numCnfVariables, Map<Literal, Integer> inputs)
+	{
+		this.kinds = kinds;
+		this.variables = variables;
+		this.children = children;
+		this.root = root;
+		this.numCnfVariables = numCnfVariables;
+		this.inputs = new HashMap<>(inputs);
+	}
+
+	/**
+	 * Getter method for the variables of the compiled expression
+	 * @return an unmodifiable Set of the variables
+	 */
+	public Set<Literal> getVariables()
+	{
+		return Collections.unmodifiableSet(inputs.keySet());
+	}
+
+	/**
+	 * The number of nodes
+	 * @return the number of nodes
+	 */
+	public int size()
+	{
+		return kinds.length;
+	}
+
+	/**
+	 * Counts the models of the compiled expression
+	 * @return the number of assignments of the expression's variables that make it true
+	 */
+	public BigInteger countModels()
+	{
+		return countModels(Collections.emptyMap());
+	}
+
+	/**
+	 * Counts the models of the compiled expression after conditioning on some of its variables
+	 * @param assumptions the values of the conditioned variables
+	 * @return the number of assignments of the remaining variables that make the expression true
+	 */
+	public BigInteger countModels(Map<Literal, Boolean> assumptions)
+	{
+		int[] weights = weights(assumptions);
+		return evaluate(weights)[root];
+	}
+
+	/**
+	 * Checks whether the compiled expression is satisfiable
+	 * @return true if some assignment makes it true
+	 */
+	public boolean isSatisfiable()
+	{
+		return isSatisfiable(Collections.emptyMap());
+	}
+
+	/**
+	 * Checks whether the compiled expression is satisfiable after conditioning on some of its variables
+	 * @param assumptions the values of the conditioned variables
+	 * @return true if some assignment of the remaining variables makes the expression true
+	 */
+	public boolean isSatisfiable(Map<Literal, Boolean> assumptions)
+	{
+		int[] weights = weights(assumptions);
+		boolean[] values = new boolean[kinds.length];
+		for (int n=0; n<kinds.length; ++n)
+			switch (kinds[n])
+			{
+				case TRUE:
+					values[n] = true;
+					break;
+				case FALSE:
+					break;
+				case LITERAL:
+					values[n] = weight(weights, variables[n]) != 0;
+					break;
+				case FREE:
+					values[n] = weight(weights, variables[n]) != 0 || weight(weights, -variables[n]) != 0;
+					break;
+				case AND:
+					values[n] = true;
+					for (int c : children[n])
+						values[n] &= values[c];
+					break;
+				case DECISION:
+					values[n] = weight(weights, variables[n]) != 0 && values[children[n][0]]
+						|| weight(weights, -variables[n]) != 0 && values[children[n][1]];
+					break;
+				default:
+					throw new IllegalStateException();
+			}
+		return values[root];
+	}
+
+	/**
+	 * For each variable, counts the models in which it's true.  Computed for every variable at once by
+	 * differentiating the count with respect to the weight of each literal.
+	 * @param assumptions the values of the conditioned variables
+	 * @return the number of models of the remaining variables in which each variable is true
+	 */
+	public Map<Literal, BigInteger> modelCounts(Map<Literal, Boolean> assumptions)
+	{
+		int[] weights = weights(assumptions);
+		BigInteger[] values = evaluate(weights);
+		BigInteger[] derivatives = new BigInteger[kinds.length];
+		for (int n=0; n<kinds.length; ++n)
+			derivatives[n] = BigInteger.ZERO;
+		derivatives[root] = BigInteger.ONE;
+		BigInteger[] positive = new BigInteger[numCnfVariables+1];
+		for (int v=0; v<=numCnfVariables; ++v)
+			positive[v] = BigInteger.ZERO;
+
+		for (int n=root; n>=0; --n)
+		{
+			BigInteger d = derivatives[n];
+			if (d.signum() == 0)
+				continue;
+			switch (kinds[n])
+			{
+				case LITERAL:
+					if (variables[n] > 0)
+						positive[variables[n]] = positive[variables[n]].add(d.multiply(BigInteger.valueOf(weight(weights, variables[n]))));
+					break;
+				case FREE:
+					positive[variables[n]] = positive[variables[n]].add(d.multiply(BigInteger.valueOf(weight(weights, variables[n]))));
+					break;
+				case AND:
+				{
+					// The product of every other child, from prefix and suffix products
+					int[] c = children[n];
+					BigInteger[] suffix = new BigInteger[c.length+1];
+					suffix[c.length] = BigInteger.ONE;
+					for (int i=c.length-1; i>=0; --i)
+						suffix[i] = suffix[i+1].multiply(values[c[i]]);
+					BigInteger prefix = BigInteger.ONE;
+					for (int i=0; i<c.length; ++i)
+					{
+						derivatives[c[i]] = derivatives[c[i]].add(d.multiply(prefix).multiply(suffix[i+1]));
+						prefix = prefix.multiply(values[c[i]]);
+					}
+					break;
+				}
+				case DECISION:
+				{
+					int v = variables[n];
+					BigInteger high = d.multiply(BigInteger.valueOf(weight(weights, v)));
+					derivatives[children[n][0]] = derivatives[children[n][0]].add(high);
+					derivatives[children[n][1]] = derivatives[children[n][1]].add(d.multiply(BigInteger.valueOf(weight(weights, -v))));
+					positive[v] = positive[v].add(high.multiply(values[children[n][0]]));
+					break;
+				}
+				default:
+					break;
+			}
+		}
+		Map<Literal, BigInteger> ans = new HashMap<>();
+		inputs.forEach((l, v) -> ans.put(l, positive[v]));
+		return ans;
+	}
+
+	/**
+	 * Counts the weighted models of every node, bottom up
+	 */
+	private BigInteger[] evaluate(int[] weights)
+	{
+		BigInteger[] values = new BigInteger[kinds.length];
+		for (int n=0; n<kinds.length; ++n)
+			switch (kinds[n])
+			{
+				case TRUE:
+					values[n] = BigInteger.ONE;
+					break;
+				case FALSE:
+					values[n] = BigInteger.ZERO;
+					break;
+				case LITERAL:
+					values[n] = BigInteger.valueOf(weight(weights, variables[n]));
+					break;
+				case FREE:
+					values[n] = BigInteger.valueOf(weight(weights, variables[n])+weight(weights, -variables[n]));
+					break;
+				case AND:
+					values[n] = BigInteger.ONE;
+					for (int c : children[n])
+						values[n] = values[n].multiply(values[c]);
+					break;
+				case DECISION:
+					values[n] = values[children[n][0]].multiply(BigInteger.valueOf(weight(weights, variables[n])))
+						.add(values[children[n][1]].multiply(BigInteger.valueOf(weight(weights, -variables[n]))));
+					break;
+				default:
+					throw new IllegalStateException();
+			}
+		return values;
+	}
+
+	/**
+	 * The weight of each literal, indexed by variable number plus numCnfVariables so negative literals fit.
+	 * A literal ruled out by conditioning weighs 0 and every other literal weighs 1, so a conditioned
+	 * variable contributes a factor of 1 to the count and an unconditioned one a factor of 2.
+	 */
+	private int[] weights(Map<Literal, Boolean> assumptions)
+	{
+		int[] ans = new int[2*numCnfVariables+1];
+		Arrays.fill(ans, 1);
+		assumptions.forEach((l, value) ->
+		{
+			Integer v = inputs.get(l);
+			if (v == null)
+				throw new IllegalArgumentException(l+" is not a variable of the compiled expression");
+			ans[numCnfVariables+(value ? -v : v)] = 0;
+		});
+		return ans;
+	}
+
+	private int weight(int[] weights, int literal)
+	{
+		return weights[numCnfVariables+literal];
+	}
+}
@@ -0,0 +1,328 @@
+package logic.dnnf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import logic.ExpParser;
+import logic.Expression;
+import logic.Literal;
+import logic.malformedexpression.MalformedExpressionException;
+import logic.sat.Cnf;
+import logic.sat.TseitinEncoder;
+
+/**
+ * Compiles Expressions into smooth decision-DNNF, in the style of a model counter that records its search.
+ * The expression is Tseitin encoded, then the compiler repeatedly unit propagates, splits the remaining
+ * clauses into components that share no variables, and branches on a variable of each component.
+ * Components are cached by their clauses, so a component reached along several branches is compiled once
+ * and shared.
+ * @author Jallibad
+ *
+ */
+public class DnnfCompiler
+{
+	/**
+	 * Checks the compiled counts against the truth table for formulas whose root is shared with an earlier
+	 * node, which happens when the whole formula is unsatisfiable
+	 */
+	public static void main(String[] args) throws MalformedExpressionException
+	{
+		for (String s : new String[]
+		{
+			"(((A∨B)∧(C∨D))∧((A∨(¬B))∧((¬A)∨B)))∧(((¬A)∨(¬B))∧(C∨(¬D)))",
+			"((A∧(¬A))∨(B∧(¬B)))∧(C∨D)",
+			"(A∨B)∧(C∨D)"
+		})
+		{
+			Expression e = ExpParser.parse(s);
+			DecisionDnnf d = compile(e);
+			List<Literal> vars = new ArrayList<>(e.getVariables());
+			long expected = 0;
+			for (long row=0; row < 1L << vars.size(); ++row)
+			{
+				Map<Literal, Boolean> settings = new HashMap<>();
+				for (int i=0; i<vars.size(); ++i)
+					settings.put(vars.get(i), (row >> i & 1) != 0);
+				if (e.evaluate(settings))
+					++expected;
+			}
+			System.out.println(e+": "+d.countModels()+" models, expected "+expected);
+			if (d.countModels().longValue() != expected || d.isSatisfiable() != e.isSatisfiable())
+				throw new IllegalStateException("Wrong answer for "+e);
+		}
+	}
+
+	private final boolean[] isInput;
+	private final Map<Key, Integer> cache = new HashMap<>();
+
+	/**
+	 * The nodes compiled so far, hash-consed so that equal nodes are only stored once
+	 */
+	private final List<Byte> kinds = new ArrayList<>();
+	private final List<Integer> variables = new ArrayList<>();
+	private final List<int[]> children = new ArrayList<>();
+	private final Map<Key, Integer> nodes = new HashMap<>();
+
+	private DnnfCompiler(int numVariables, Iterable<Integer> inputs)
+	{
+		isInput = new boolean[numVariables+1];
+		inputs.forEach(v -> isInput[v] = true);
+	}
+
+	/**
+	 * Compiles an expression
+	 * @param e the expression to compile
+	 * @return the compiled expression
+	 */
+	public static DecisionDnnf compile(Expression e)
+	{
+		TseitinEncoder encoder = new TseitinEncoder(new Cnf());
+		int root = encoder.encode(e);
+		Cnf cnf = encoder.getCnf();
+		cnf.addClause(root);
+
+		DnnfCompiler compiler = new DnnfCompiler(cnf.numVariables(), encoder.getVariables().values());
+		int[] scope = new int[cnf.numVariables()];
+		for (int v=1; v<=scope.length; ++v)
+			scope[v-1] = v;
+		int top = compiler.compile(new ArrayList<>(cnf.getClauses()), scope);
+
+		int n = compiler.kinds.size();
+		byte[] kinds = new byte[n];
+		int[] variables = new int[n];
+		for (int i=0; i<n; ++i)
+		{
+			kinds[i] = compiler.kinds.get(i);
+			variables[i] = compiler.variables.get(i);
+		}
+		return new DecisionDnnf(kinds, variables, compiler.children.toArray(new int[0][]), top, cnf.numVariables(), encoder.getVariables());
+	}
+
+	/**
+	 * Compiles a set of clauses over a scope of variables, every one of which the result mentions
+	 * @return the index of the node
+	 */
+	private int compile(List<int[]> clauses, int[] scope)
+	{
+		List<Integer> implied = new ArrayList<>();
+		clauses = propagate(clauses, implied);
+		if (clauses == null)
+			return node(DecisionDnnf.FALSE, 0);
+
+		List<Integer> parts = new ArrayList<>();
+		TreeSet<Integer> mentioned = new TreeSet<>();
+		for (int[] clause : clauses)
+			for (int l : clause)
+				mentioned.add(Math.abs(l));
+		for (int l : implied)
+		{
+			parts.add(node(DecisionDnnf.LITERAL, l));
+			mentioned.add(Math.abs(l));
+		}
+		for (int v : scope)
+			if (!mentioned.contains(v))
+				parts.add(node(DecisionDnnf.FREE, v));
+		for (List<int[]> component : components(clauses))
+			parts.add(compileComponent(component));
+		return and(parts);
+	}
+
+	private int compileComponent(List<int[]> clauses)
+	{
+		for (int[] clause : clauses)
+			Arrays.sort(clause);
+		clauses.sort(DnnfCompiler::compareClauses);
+		Key key = new Key(clauses);
+		Integer ans = cache.get(key);
+		if (ans != null)
+			return ans;
+
+		int v = pickVariable(clauses);
+		TreeSet<Integer> vars = new TreeSet<>();
+		for (int[] clause : clauses)
+			for (int l : clause)
+				if (Math.abs(l) != v)
+					vars.add(Math.abs(l));
+		int[] scope = vars.stream().mapToInt(Integer::intValue).toArray();
+		int high = compile(condition(clauses, v), scope);
+		int low = compile(condition(clauses, -v), scope);
+		if (kinds.get(high) == DecisionDnnf.FALSE && kinds.get(low) == DecisionDnnf.FALSE)
+			ans = high;
+		else
+			ans = node(DecisionDnnf.DECISION, v, high, low);
+		cache.put(key, ans);
+		return ans;
+	}
+
+	/**
+	 * The variable occurring most often, preferring variables of the original expression since the
+	 * Tseitin variables are forced once those are known
+	 */
+	private int pickVariable(List<int[]> clauses)
+	{
+		Map<Integer, Integer> counts = new HashMap<>();
+		for (int[] clause : clauses)
+			for (int l : clause)
+				counts.merge(Math.abs(l), isInput[Math.abs(l)] ? 1 << 16 : 1, Integer::sum);
+		return Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+	}
+
+	/**
+	 * Removes every clause satisfied by a literal and every occurrence of its negation
+	 */
+	private static List<int[]> condition(List<int[]> clauses, int literal)
+	{
+		List<int[]> ans = new ArrayList<>();
+		for (int[] clause : clauses)
+		{
+			int[] reduced = new int[clause.length];
+			int size = 0;
+			boolean satisfied = false;
+			for (int l : clause)
+				if (l == literal)
+					satisfied = true;
+				else if (l != -literal)
+					reduced[size++] = l;
+			if (!satisfied)
+				ans.add(size == clause.length ? clause : Arrays.copyOf(reduced, size));
+		}
+		return ans;
+	}
+
+	/**
+	 * Conditions on every unit clause until there are none left
+	 * @param implied filled with the literals forced along the way
+	 * @return the remaining clauses, or null if an empty clause was derived
+	 */
+	private static List<int[]> propagate(List<int[]> clauses, List<Integer> implied)
+	{
+		while (true)
+		{
+			int unit = 0;
+			for (int[] clause : clauses)
+			{
+				if (clause.length == 0)
+					return null;
+				if (clause.length == 1)
+					unit = clause[0];
+			}
+			if (unit == 0)
+				return clauses;
+			implied.add(unit);
+			clauses = condition(clauses, unit);
+		}
+	}
+
+	/**
+	 * Splits clauses into groups that share no variables, using union find over the variables
+	 */
+	private static List<List<int[]>> components(List<int[]> clauses)
+	{
+		Map<Integer, Integer> parent = new HashMap<>();
+		for (int[] clause : clauses)
+			for (int l : clause)
+			{
+				parent.putIfAbsent(Math.abs(l), Math.abs(l));
+				union(parent, Math.abs(clause[0]), Math.abs(l));
+			}
+		Map<Integer, List<int[]>> groups = new HashMap<>();
+		for (int[] clause : clauses)
+			groups.computeIfAbsent(find(parent, Math.abs(clause[0])), k -> new ArrayList<>()).add(clause);
+		return new ArrayList<>(groups.values());
+	}
+
+	private static int find(Map<Integer, Integer> parent, int v)
+	{
+		int root = v;
+		while (parent.get(root) != root)
+			root = parent.get(root);
+		while (parent.get(v) != root)
+		{
+			int next = parent.get(v);
+			parent.put(v, root);
+			v = next;
+		}
+		return root;
+	}
+
+	private static void union(Map<Integer, Integer> parent, int a, int b)
+	{
+		parent.put(find(parent, a), find(parent, b));
+	}
+
+	private static int compareClauses(int[] a, int[] b)
+	{
+		for (int i=0; i<Math.min(a.length, b.length); ++i)
+			if (a[i] != b[i])
+				return Integer.compare(a[i], b[i]);
+		return Integer.compare(a.length, b.length);
+	}
+
+	/**
+	 * The conjunction of nodes over disjoint variables, collapsing FALSE and dropping TRUE
+	 */
+	private int and(List<Integer> parts)
+	{
+		List<Integer> kept = new ArrayList<>();
+		for (int p : parts)
+		{
+			if (kinds.get(p) == DecisionDnnf.FALSE)
+				return p;
+			if (kinds.get(p) != DecisionDnnf.TRUE)
+				kept.add(p);
+		}
+		if (kept.isEmpty())
+			return node(DecisionDnnf.TRUE, 0);
+		if (kept.size() == 1)
+			return kept.get(0);
+		Collections.sort(kept);
+		return node(DecisionDnnf.AND, 0, kept.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	private int node(byte kind, int variable, int... nodeChildren)
+	{
+		int[] id = new int[nodeChildren.length+2];
+		id[0] = kind;
+		id[1] = variable;
+		System.arraycopy(nodeChildren, 0, id, 2, nodeChildren.length);
+		return nodes.computeIfAbsent(new Key(Collections.singletonList(id)), k ->
+		{
+			kinds.add(kind);
+			variables.add(variable);
+			children.add(nodeChildren);
+			return kinds.size()-1;
+		});
+	}
+
+	/**
+	 * A list of int arrays compared by content
+	 */
+	private static final class Key
+	{
+		private final int[][] arrays;
+		private final int hash;
+
+		private Key(List<int[]> arrays)
+		{
+			this.arrays = arrays.toArray(new int[0][]);
+			hash = Arrays.deepHashCode(this.arrays);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && Arrays.deepEquals(((Key) o).arrays, arrays);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,614 @@
+package logic.sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A conflict driven clause learning SAT solver.  Unit propagation uses two watched literals per clause,
+ * so assigning a variable only visits the clauses watching its negation.  Each conflict is analyzed back to
+ * its first unique implication point and the resulting clause is learned, which lets the solver backjump
+ * over decisions that had nothing to do with the conflict.  Variables are picked by VSIDS activity, which
+ * favours variables involved in recent conflicts, with the last value of each variable saved for reuse,
+ * and the search restarts on the Luby sequence.
+ *
+ * The solver is incremental.  Clauses can be added between calls to solve, and solve can be given
+ * assumptions that only hold for that call, keeping everything learned so far.  Variables and literals
+ * use the DIMACS numbering of Cnf.  Internally variable v is v-1, and its literals are 2(v-1) for true
+ * and 2(v-1)+1 for false, so negating a literal flips its lowest bit.
+ * @author Jallibad
+ *
+ */
+public class CdclSolver
+{
+	private static final int RESTART_BASE = 100;
+	private static final double ACTIVITY_DECAY = 0.95;
+	private static final byte UNKNOWN = -1;
+
+	private int numVariables;
+
+	/**
+	 * Every clause of length at least two, original and learned.
+	 * The first two literals of each clause are the ones being watched.
+	 */
+	private final List<int[]> clauses = new ArrayList<>();
+
+	/**
+	 * For each literal, the clauses watching it
+	 */
+	private int[][] watches = new int[0][];
+	private int[] numWatches = new int[0];
+
+	/**
+	 * For each variable, its value, decision level, the clause that forced it or -1 for a decision,
+	 * and the value it had last
+	 */
+	private byte[] values = new byte[0];
+	private int[] levels = new int[0];
+	private int[] reasons = new int[0];
+	private boolean[] phases = new boolean[0];
+
+	private int[] trail = new int[0];
+	private int trailSize;
+	private int propagated;
+
+	/**
+	 * The length of the trail when each decision level began
+	 */
+	private int[] levelStarts = new int[1];
+	private int decisionLevel;
+
+	private double[] activity = new double[0];
+	private double activityIncrement = 1;
+	private final VariableHeap heap = new VariableHeap();
+
+	private boolean[] seen = new boolean[0];
+	private boolean unsatisfiable;
+	private boolean[] model;
+	private long conflicts;
+	private long decisions;
+
+	/**
+	 * Creates a solver with no variables or clauses
+	 */
+	public CdclSolver()
+	{
+	}
+
+	/**
+	 * Creates a solver containing every clause of a Cnf
+	 * @param cnf the clauses to add
+	 */
+	public CdclSolver(Cnf cnf)
+	{
+		ensureVariables(cnf.numVariables());
+		for (int[] clause : cnf.getClauses())
+			addClause(clause);
+	}
+
+	/**
+	 * Creates a fresh variable
+	 * @return the number of the new variable
+	 */
+	public int newVariable()
+	{
+		ensureVariables(numVariables+1);
+		return numVariables;
+	}
+
+	/**
+	 * Getter method for the number of variables, which are numbered 1 through numVariables
+	 * @return the number of variables
+	 */
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	private void ensureVariables(int n)
+	{
+		if (n <= numVariables)
+			return;
+		int old = numVariables;
+		numVariables = n;
+		watches = Arrays.copyOf(watches, 2*n);
+		numWatches = Arrays.copyOf(numWatches, 2*n);
+		for (int i=2*old; i<2*n; ++i)
+			watches[i] = new int[4];
+		values = Arrays.copyOf(values, n);
+		Arrays.fill(values, old, n, UNKNOWN);
+		levels = Arrays.copyOf(levels, n);
+		reasons = Arrays.copyOf(reasons, n);
+		phases = Arrays.copyOf(phases, n);
+		trail = Arrays.copyOf(trail, n);
+		levelStarts = Arrays.copyOf(levelStarts, Math.max(levelStarts.length, n+1));
+		activity = Arrays.copyOf(activity, n);
+		seen = Arrays.copyOf(seen, n);
+		for (int v=old; v<n; ++v)
+			heap.insert(v);
+	}
+
+	/**
+	 * Adds a clause, creating any variables it mentions that don't exist yet
+	 * @param literals the literals of the clause, in DIMACS numbering
+	 * @return false if the clauses are now unsatisfiable without any assumptions
+	 */
+	public boolean addClause(int... literals)
+	{
+		if (unsatisfiable)
+			return false;
+		int[] clause = new int[literals.length];
+		int size = 0;
+		for (int l : literals)
+		{
+			if (l == 0)
+				throw new IllegalArgumentException("0 is not a valid literal");
+			ensureVariables(Math.abs(l));
+			int lit = internal(l);
+			if (value(lit) == 1)
+				return true;
+			boolean duplicate = false;
+			for (int i=0; i<size; ++i)
+			{
+				if (clause[i] == (lit^1))
+					return true; // Contains both a literal and its negation
+				duplicate |= clause[i] == lit;
+			}
+			if (!duplicate && value(lit) != 0)
+				clause[size++] = lit;
+		}
+		if (size == 0)
+			return !(unsatisfiable = true);
+		if (size == 1)
+		{
+			enqueue(clause[0], -1);
+			return !(unsatisfiable = propagate() != -1);
+		}
+		attach(Arrays.copyOf(clause, size));
+		return true;
+	}
+
+	/**
+	 * Adds every clause of a Cnf
+	 * @param cnf the clauses to add
+	 * @return false if the clauses are now unsatisfiable without any assumptions
+	 */
+	public boolean addClauses(Cnf cnf)
+	{
+		ensureVariables(cnf.numVariables());
+		for (int[] clause : cnf.getClauses())
+			if (!addClause(clause))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Searches for an assignment satisfying every clause
+	 * @return true if one was found, in which case it can be read with modelValue
+	 */
+	public boolean solve()
+	{
+		return solve(new int[0]);
+	}
+
+	/**
+	 * Searches for an assignment satisfying every clause and every assumption.  The assumptions only
+	 * hold for this call, but clauses learned along the way are kept.  The thread's interrupt flag is checked
+	 * at every restart, so a search that's no longer needed can be abandoned.
+	 * @param assumptions literals that must be true, in DIMACS numbering
+	 * @return true if one was found, in which case it can be read with modelValue
+	 * @throws CancellationException if the thread is interrupted, the solver can still be used afterwards
+	 */
+	public boolean solve(int... assumptions)
+	{
+		model = null;
+		if (unsatisfiable)
+			return false;
+		for (int a : assumptions)
+			ensureVariables(Math.abs(a));
+		int restarts = 0;
+		long conflictLimit = RESTART_BASE*luby(restarts);
+		long restartConflicts = 0;
+		while (true)
+		{
+			int conflict = propagate();
+			if (conflict != -1)
+			{
+				conflicts++;
+				restartConflicts++;
+				if (decisionLevel == 0)
+				{
+					unsatisfiable = true;
+					return false;
+				}
+				learn(conflict);
+				activityIncrement /= ACTIVITY_DECAY;
+				continue;
+			}
+			if (restartConflicts >= conflictLimit)
+			{
+				backtrack(0);
+				if (Thread.currentThread().isInterrupted())
+					throw new CancellationException("Interrupted after "+conflicts+" conflicts");
+				conflictLimit = RESTART_BASE*luby(++restarts);
+				restartConflicts = 0;
+				continue;
+			}
+
+			int next = -1;
+			while (decisionLevel < assumptions.length)
+			{
+				int a = internal(assumptions[decisionLevel]);
+				if (value(a) == 0)
+				{
+					backtrack(0);
+					return false;
+				}
+				if (value(a) == UNKNOWN)
+				{
+					next = a;
+					break;
+				}
+				newDecisionLevel(); // Already true, so this level is left empty
+			}
+			if (next == -1)
+				next = pickBranch();
+			if (next == -1)
+			{
+				model = new boolean[numVariables];
+				for (int v=0; v<numVariables; ++v)
+					model[v] = values[v] == 1;
+				backtrack(0);
+				return true;
+			}
+			decisions++;
+			newDecisionLevel();
+			enqueue(next, -1);
+		}
+	}
+
+	/**
+	 * Looks up the value of a literal in the assignment found by the last successful call to solve
+	 * @param literal the literal, in DIMACS numbering
+	 * @return true if the literal is true
+	 * @throws IllegalStateException if the last call to solve didn't find an assignment
+	 */
+	public boolean modelValue(int literal)
+	{
+		if (model == null)
+			throw new IllegalStateException("There is no satisfying assignment");
+		int v = Math.abs(literal)-1;
+		boolean ans = v < model.length && model[v];
+		return literal > 0 ? ans : !ans;
+	}
+
+	/**
+	 * The number of conflicts analyzed so far, across every call to solve
+	 * @return the number of conflicts
+	 */
+	public long numConflicts()
+	{
+		return conflicts;
+	}
+
+	/**
+	 * The number of variables picked by the branching heuristic so far, across every call to solve
+	 * @return the number of decisions
+	 */
+	public long numDecisions()
+	{
+		return decisions;
+	}
+
+	private static int internal(int literal)
+	{
+		return literal > 0 ? 2*(literal-1) : 2*(-literal-1)+1;
+	}
+
+	/**
+	 * The value of a literal, 1 if true, 0 if false or UNKNOWN
+	 */
+	private int value(int lit)
+	{
+		byte v = values[lit >> 1];
+		return v == UNKNOWN ? UNKNOWN : v ^ (lit & 1);
+	}
+
+	private void enqueue(int lit, int reason)
+	{
+		int v = lit >> 1;
+		values[v] = (byte) ((lit & 1) ^ 1);
+		levels[v] = decisionLevel;
+		reasons[v] = reason;
+		trail[trailSize++] = lit;
+	}
+
+	private void attach(int[] clause)
+	{
+		int index = clauses.size();
+		clauses.add(clause);
+		watch(clause[0], index);
+		watch(clause[1], index);
+	}
+
+	private void watch(int lit, int clause)
+	{
+		if (numWatches[lit] == watches[lit].length)
+			watches[lit] = Arrays.copyOf(watches[lit], 2*watches[lit].length);
+		watches[lit][numWatches[lit]++] = clause;
+	}
+
+	/**
+	 * Assigns every literal forced by unit propagation
+	 * @return the index of a clause with every literal false, or -1 if there is none
+	 */
+	private int propagate()
+	{
+		while (propagated < trailSize)
+		{
+			int falseLit = trail[propagated++]^1;
+			int[] watching = watches[falseLit];
+			int n = numWatches[falseLit];
+			int kept = 0;
+			for (int i=0; i<n; ++i)
+			{
+				int index = watching[i];
+				int[] clause = clauses.get(index);
+				// Keep the false literal in the second position
+				if (clause[0] == falseLit)
+				{
+					clause[0] = clause[1];
+					clause[1] = falseLit;
+				}
+				if (value(clause[0]) == 1)
+				{
+					watching[kept++] = index;
+					continue;
+				}
+				boolean moved = false;
+				for (int k=2; k<clause.length; ++k)
+					if (value(clause[k]) != 0)
+					{
+						clause[1] = clause[k];
+						clause[k] = falseLit;
+						watch(clause[1], index);
+						moved = true;
+						break;
+					}
+				if (moved)
+					continue;
+				watching[kept++] = index;
+				if (value(clause[0]) == 0)
+				{
+					while (++i < n)
+						watching[kept++] = watching[i];
+					numWatches[falseLit] = kept;
+					propagated = trailSize;
+					return index;
+				}
+				enqueue(clause[0], index);
+			}
+			numWatches[falseLit] = kept;
+		}
+		return -1;
+	}
+
+	/**
+	 * Derives a clause from a conflict by resolving away literals of the current decision level until only
+	 * one is left, the first unique implication point.  Backjumps to the highest level where the learned
+	 * clause is unit and asserts it.
+	 */
+	private void learn(int conflict)
+	{
+		int[] learned = new int[numVariables];
+		int size = 1;
+		int pending = 0;
+		int lit = -1;
+		int index = trailSize-1;
+		do
+		{
+			int[] clause = clauses.get(conflict);
+			for (int k=lit == -1 ? 0 : 1; k<clause.length; ++k)
+			{
+				int q = clause[k];
+				int v = q >> 1;
+				if (seen[v] || levels[v] == 0)
+					continue;
+				seen[v] = true;
+				bump(v);
+				if (levels[v] == decisionLevel)
+					pending++;
+				else
+					learned[size++] = q;
+			}
+			while (!seen[trail[index] >> 1])
+				index--;
+			lit = trail[index--];
+			conflict = reasons[lit >> 1];
+			seen[lit >> 1] = false;
+			pending--;
+		}
+		while (pending > 0);
+		learned[0] = lit^1;
+
+		int backjump = 0;
+		for (int i=1; i<size; ++i)
+		{
+			seen[learned[i] >> 1] = false;
+			if (levels[learned[i] >> 1] > levels[learned[1] >> 1])
+			{
+				int swap = learned[1];
+				learned[1] = learned[i];
+				learned[i] = swap;
+			}
+		}
+		if (size > 1)
+			backjump = levels[learned[1] >> 1];
+		backtrack(backjump);
+		if (size == 1)
+			enqueue(learned[0], -1);
+		else
+		{
+			attach(Arrays.copyOf(learned, size));
+			enqueue(learned[0], clauses.size()-1);
+		}
+	}
+
+	private void newDecisionLevel()
+	{
+		if (++decisionLevel == levelStarts.length)
+			levelStarts = Arrays.copyOf(levelStarts, 2*levelStarts.length);
+		levelStarts[decisionLevel] = trailSize;
+	}
+
+	/**
+	 * Unassigns every variable above the given decision level, saving their values for later decisions
+	 */
+	private void backtrack(int level)
+	{
+		if (decisionLevel <= level)
+			return;
+		for (int i=trailSize-1; i>=levelStarts[level+1]; --i)
+		{
+			int v = trail[i] >> 1;
+			phases[v] = values[v] == 1;
+			values[v] = UNKNOWN;
+			if (!heap.contains(v))
+				heap.insert(v);
+		}
+		trailSize = propagated = levelStarts[level+1];
+		decisionLevel = level;
+	}
+
+	/**
+	 * The unassigned variable with the highest activity, with its saved value
+	 * @return the literal to decide, or -1 if every variable is assigned
+	 */
+	private int pickBranch()
+	{
+		while (!heap.isEmpty())
+		{
+			int v = heap.removeMax();
+			if (values[v] == UNKNOWN)
+				return phases[v] ? 2*v : 2*v+1;
+		}
+		return -1;
+	}
+
+	private void bump(int v)
+	{
+		if ((activity[v] += activityIncrement) > 1e100)
+		{
+			for (int i=0; i<numVariables; ++i)
+				activity[i] *= 1e-100;
+			activityIncrement *= 1e-100;
+		}
+		if (heap.contains(v))
+			heap.increased(v);
+	}
+
+	/**
+	 * The Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+	 */
+	private static long luby(int i)
+	{
+		int size = 1;
+		int sequence = 0;
+		while (size < i+1)
+		{
+			sequence++;
+			size = 2*size+1;
+		}
+		while (size-1 != i)
+		{
+			size = (size-1) >> 1;
+			sequence--;
+			i %= size;
+		}
+		return 1L << sequence;
+	}
+
+	/**
+	 * A binary max heap of variables ordered by activity
+	 */
+	private class VariableHeap
+	{
+		private int[] heap = new int[0];
+		private int[] positions = new int[0];
+		private int size;
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		boolean contains(int v)
+		{
+			return v < positions.length && positions[v] >= 0;
+		}
+
+		void insert(int v)
+		{
+			if (v >= positions.length)
+			{
+				int old = positions.length;
+				positions = Arrays.copyOf(positions, Math.max(v+1, 2*old));
+				Arrays.fill(positions, old, positions.length, -1);
+				heap = Arrays.copyOf(heap, positions.length);
+			}
+			heap[size] = v;
+			positions[v] = size++;
+			up(positions[v]);
+		}
+
+		void increased(int v)
+		{
+			up(positions[v]);
+		}
+
+		int removeMax()
+		{
+			int ans = heap[0];
+			positions[ans] = -1;
+			if (--size > 0)
+			{
+				heap[0] = heap[size];
+				positions[heap[0]] = 0;
+				down(0);
+			}
+			return ans;
+		}
+
+		private void up(int i)
+		{
+			int v = heap[i];
+			while (i > 0 && activity[heap[(i-1)/2]] < activity[v])
+			{
+				heap[i] = heap[(i-1)/2];
+				positions[heap[i]] = i;
+				i = (i-1)/2;
+			}
+			heap[i] = v;
+			positions[v] = i;
+		}
+
+		private void down(int i)
+		{
+			int v = heap[i];
+			while (2*i+1 < size)
+			{
+				int child = 2*i+1;
+				if (child+1 < size && activity[heap[child+1]] > activity[heap[child]])
+					child++;
+				if (activity[heap[child]] <= activity[v])
+					break;
+				heap[i] = heap[child];
+				positions[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = v;
+			positions[v] = i;
+		}
+	}
+}
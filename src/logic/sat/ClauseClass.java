@@ -0,0 +1,77 @@
+package logic.sat;
+
+/**
+ * The tractable classes of CNF that have linear time solvers, along with GENERAL for everything else
+ * @author Jallibad
+ *
+ */
+public enum ClauseClass
+{
+	/**
+	 * Every clause has at most two literals
+	 */
+	TWO_SAT,
+	/**
+	 * Every clause has at most one positive literal
+	 */
+	HORN,
+	/**
+	 * Every clause has at most one negative literal
+	 */
+	DUAL_HORN,
+	GENERAL;
+
+	/**
+	 * Finds the class of a Cnf in a single pass over its clauses.  A Cnf in several classes is given the
+	 * first of them in declaration order.
+	 * @param cnf the clauses to classify
+	 * @return the class
+	 */
+	public static ClauseClass classify(Cnf cnf)
+	{
+		boolean twoSat = true;
+		boolean horn = true;
+		boolean dualHorn = true;
+		for (int[] clause : cnf.getClauses())
+		{
+			int positive = 0;
+			for (int l : clause)
+				if (l > 0)
+					positive++;
+			twoSat &= clause.length <= 2;
+			horn &= positive <= 1;
+			dualHorn &= clause.length-positive <= 1;
+			if (!twoSat && !horn && !dualHorn)
+				return GENERAL;
+		}
+		return twoSat ? TWO_SAT : horn ? HORN : dualHorn ? DUAL_HORN : GENERAL;
+	}
+
+	/**
+	 * Solves a Cnf of this class with the matching solver
+	 * @param cnf clauses belonging to this class
+	 * @return a value for every variable, indexed by variable number, or null if the clauses are unsatisfiable
+	 */
+	public boolean[] solve(Cnf cnf)
+	{
+		switch (this)
+		{
+			case TWO_SAT:
+				return TwoSatSolver.solve(cnf);
+			case HORN:
+				return HornSolver.solve(cnf, false);
+			case DUAL_HORN:
+				return HornSolver.solve(cnf, true);
+			case GENERAL:
+				CdclSolver solver = new CdclSolver(cnf);
+				if (!solver.solve())
+					return null;
+				boolean[] ans = new boolean[cnf.numVariables()+1];
+				for (int v=1; v<ans.length; ++v)
+					ans[v] = solver.modelValue(v);
+				return ans;
+			default:
+				throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,636 @@
+package logic.sat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+import logic.transform.NormalForm;
+
+/**
+ * A set of clauses making up a conjunctive normal form, or of terms making up a disjunctive normal form, over
+ * numbered variables like Cnf.  Each clause is an array of literals sorted by variable, and the set is kept free of
+ * redundancy as it's built: duplicate literals are merged, tautological clauses dropped, and a clause containing
+ * another one is dropped too, whichever of the two was added first.
+ *
+ * Everything works the same way for terms, with the roles of ∧ and ∨ swapped: a term with a literal and its
+ * negation is always false, so it's dropped from a disjunction, and a term containing another is absorbed by it.
+ * Clause is used for both below.
+ *
+ * Subsumption checks only look at clauses sharing a literal, found through an occurrence list for every literal,
+ * and most of those are ruled out by comparing signatures, a bitmask of the variables of each clause.
+ * @author Jallibad
+ *
+ */
+public class ClauseSet
+{
+	private final NormalForm form;
+	private final List<Literal> variables;
+	private final Map<Literal, Integer> numbers;
+
+	// Removed clauses are left as null, and dropped from the occurrence lists when they're come across
+	private final List<int[]> clauses = new ArrayList<>();
+	private long[] signatures = new long[16];
+	// Every clause containing each literal, and every clause watching it, indexed by key
+	private final List<List<Integer>> occurrences = new ArrayList<>();
+	private final List<List<Integer>> watches = new ArrayList<>();
+	private final Set<Key> distinct = new HashSet<>();
+	// Every variable any clause has had, including removed ones
+	private final BitSet used = new BitSet();
+	private int size;
+
+	/**
+	 * Creates an empty set of clauses
+	 * @param form CONJUNCTIVE for a set of clauses, DISJUNCTIVE for a set of terms
+	 * @throws IllegalArgumentException for any other form
+	 */
+	public ClauseSet(NormalForm form)
+	{
+		this(form, new ArrayList<>(), new HashMap<>());
+	}
+
+	/**
+	 * Creates an empty set numbering its variables the same way as another one
+	 */
+	private ClauseSet(ClauseSet other)
+	{
+		this(other.form, other.variables, other.numbers);
+	}
+
+	private ClauseSet(NormalForm form, List<Literal> variables, Map<Literal, Integer> numbers)
+	{
+		if (form != NormalForm.CONJUNCTIVE && form != NormalForm.DISJUNCTIVE)
+			throw new IllegalArgumentException("A clause set is either conjunctive or disjunctive, not "+form);
+		this.form = form;
+		this.variables = variables;
+		this.numbers = numbers;
+	}
+
+	/**
+	 * Puts an expression into a normal form.  The expression is put into negation normal form, then each
+	 * subexpression is turned into a set of clauses from the bottom up, distributing by taking the union of every
+	 * pair of clauses from the two sides.  Redundant clauses are dropped as soon as they appear, so they're never
+	 * distributed over.
+	 * @param e the expression, in any form
+	 * @param form CONJUNCTIVE or DISJUNCTIVE
+	 * @return an equivalent set of clauses
+	 */
+	public static ClauseSet of(Expression e, NormalForm form)
+	{
+		ClauseSet ans = new ClauseSet(form);
+		return ans.build(NormalForm.NEGATION.transform(e), new IdentityHashMap<>());
+	}
+
+	/**
+	 * Builds the set of clauses of an expression in negation normal form, sharing the sets of shared subexpressions
+	 */
+	private ClauseSet build(Expression e, Map<Expression, ClauseSet> built)
+	{
+		ClauseSet ans = built.get(e);
+		if (ans != null)
+			return ans;
+		Operator union = form == NormalForm.CONJUNCTIVE ? Operator.AND : Operator.OR;
+		ans = new ClauseSet(this);
+		if (e instanceof Constant || (e.getOperator() == Operator.NEG && ((Function) e).getTerm(0) instanceof Constant))
+		{
+			boolean value = e instanceof Constant ? ((Constant) e).value : !((Constant) ((Function) e).getTerm(0)).value;
+			// ⊥ is the empty clause and ⊤ is no clauses at all, or the other way around for terms
+			if (value == (form == NormalForm.DISJUNCTIVE))
+				ans.add();
+		}
+		else if (e instanceof Literal || e.getOperator() == Operator.NEG)
+			ans.add(literal(e));
+		else if (e.getOperator() == union)
+		{
+			for (Expression t : flatten(e, union))
+			{
+				ClauseSet operand = build(t, built);
+				// A clause can only contain one without a variable in common if it's the empty clause
+				boolean disjoint = !ans.used.intersects(operand.used) && !ans.containsEmptyClause() && !operand.containsEmptyClause();
+				for (int[] clause : operand.getClauses())
+				{
+					if (disjoint)
+						ans.append(clause);
+					else
+						ans.insert(clause);
+				}
+			}
+		}
+		else
+		{
+			ans.add();
+			for (Expression t : flatten(e, e.getOperator()))
+			{
+				if (ans.isEmpty())
+					break;
+				ans = ans.product(build(t, built));
+			}
+		}
+		built.put(e, ans);
+		return ans;
+	}
+
+	/**
+	 * The clauses made by joining every clause of this set with every clause of another.  If the two sets have
+	 * no variables in common, one joined clause can only contain another if both of the clauses it was joined
+	 * from contain the other's, so nothing needs to be checked.
+	 */
+	private ClauseSet product(ClauseSet other)
+	{
+		ClauseSet ans = new ClauseSet(this);
+		boolean disjoint = !used.intersects(other.used);
+		for (int[] a : getClauses())
+			for (int[] b : other.getClauses())
+			{
+				int[] joined = join(a, b);
+				if (disjoint)
+					ans.append(joined);
+				else if (joined != null)
+					ans.insert(joined);
+			}
+		return ans;
+	}
+
+	/**
+	 * Merges two sorted clauses
+	 * @return the merged clause, or null if it would contain a literal and its negation
+	 */
+	private static int[] join(int[] a, int[] b)
+	{
+		int[] ans = new int[a.length+b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length)
+		{
+			int next;
+			if (j == b.length || (i < a.length && key(a[i]) < key(b[j])))
+				next = a[i++];
+			else if (i == a.length || key(b[j]) < key(a[i]))
+				next = b[j++];
+			else
+			{
+				next = a[i++];
+				++j;
+			}
+			if (n > 0 && ans[n-1] == -next)
+				return null;
+			ans[n++] = next;
+		}
+		return Arrays.copyOf(ans, n);
+	}
+
+	private static List<Expression> flatten(Expression e, Operator op)
+	{
+		List<Expression> ans = new ArrayList<>();
+		Deque<Expression> stack = new ArrayDeque<>();
+		stack.push(e);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.pop();
+			if (t.getOperator() == op)
+				for (int i=op.numArguments-1; i>=0; --i)
+					stack.push(((Function) t).getTerm(i));
+			else
+				ans.add(t);
+		}
+		return ans;
+	}
+
+	/**
+	 * The number of a literal, negative if it's negated
+	 */
+	private int literal(Expression e)
+	{
+		if (e instanceof Literal)
+			return variable((Literal) e);
+		return -variable((Literal) ((Function) e).getTerm(0));
+	}
+
+	/**
+	 * Getter method for the form
+	 * @return CONJUNCTIVE for a set of clauses, DISJUNCTIVE for a set of terms
+	 */
+	public NormalForm getForm()
+	{
+		return form;
+	}
+
+	/**
+	 * Gets the number of a variable, numbering it if it hasn't been yet
+	 * @param l the variable
+	 * @return its number, counting from 1
+	 */
+	public int variable(Literal l)
+	{
+		return numbers.computeIfAbsent(l, k ->
+		{
+			variables.add(k);
+			return variables.size();
+		});
+	}
+
+	/**
+	 * Gets the variable with a number
+	 * @param v the number of the variable
+	 * @return the variable
+	 */
+	public Literal getVariable(int v)
+	{
+		return variables.get(v-1);
+	}
+
+	/**
+	 * Getter method for the number of variables, which are numbered 1 through numVariables
+	 * @return the number of variables
+	 */
+	public int numVariables()
+	{
+		return variables.size();
+	}
+
+	/**
+	 * Adds a clause unless it's a tautology or contains a clause already in the set, and removes every clause
+	 * that contains it
+	 * @param literals the literals of the clause, a copy is made to avoid rep exposure
+	 * @return true if the clause was added
+	 */
+	public boolean add(int... literals)
+	{
+		for (int l : literals)
+		{
+			if (l == 0)
+				throw new IllegalArgumentException("0 is not a valid literal");
+			if (Math.abs(l) > variables.size())
+				throw new IllegalArgumentException("Variable "+Math.abs(l)+" hasn't been numbered");
+		}
+		int[] clause = normalize(literals);
+		return clause != null && insert(clause);
+	}
+
+	/**
+	 * Sorts a clause by variable and removes duplicate literals
+	 * @return the sorted clause, or null if it's a tautology
+	 */
+	private static int[] normalize(int[] literals)
+	{
+		long[] keys = new long[literals.length];
+		for (int i=0; i<literals.length; ++i)
+			keys[i] = key(literals[i]);
+		Arrays.sort(keys);
+		int[] ans = new int[literals.length];
+		int n = 0;
+		for (int i=0; i<keys.length; ++i)
+		{
+			int l = literal(keys[i]);
+			if (n > 0 && ans[n-1] == l)
+				continue;
+			if (n > 0 && ans[n-1] == -l)
+				return null;
+			ans[n++] = l;
+		}
+		return Arrays.copyOf(ans, n);
+	}
+
+	/**
+	 * The position of a literal in a sorted clause, with a variable's negation right after it
+	 */
+	private static long key(int literal)
+	{
+		return 2L*Math.abs(literal)+(literal < 0 ? 1 : 0);
+	}
+
+	private static int literal(long key)
+	{
+		int v = (int) (key >>> 1);
+		return (key & 1) == 0 ? v : -v;
+	}
+
+	/**
+	 * Adds a sorted clause without a tautology, with forward and backward subsumption
+	 */
+	private boolean insert(int[] clause)
+	{
+		if (distinct.contains(new Key(clause)) || isSubsumed(clause))
+			return false;
+		removeSubsumedBy(clause);
+		append(clause);
+		return true;
+	}
+
+	/**
+	 * Adds a sorted clause without a tautology that's known not to contain or be contained in any other
+	 */
+	private void append(int[] clause)
+	{
+		int id = clauses.size();
+		clauses.add(clause);
+		if (id == signatures.length)
+			signatures = Arrays.copyOf(signatures, 2*id);
+		signatures[id] = signature(clause);
+		int watched = 0;
+		for (int l : clause)
+		{
+			occurrences(l).add(id);
+			used.set(Math.abs(l));
+			if (watched == 0 || occurrences(l).size() < occurrences(watched).size())
+				watched = l;
+		}
+		if (watched != 0)
+			index(watches, watched).add(id);
+		distinct.add(new Key(clause));
+		++size;
+	}
+
+	private void remove(int id)
+	{
+		distinct.remove(new Key(clauses.get(id)));
+		clauses.set(id, null);
+		--size;
+	}
+
+	private List<Integer> occurrences(int literal)
+	{
+		return index(occurrences, literal);
+	}
+
+	private static List<Integer> index(List<List<Integer>> lists, int literal)
+	{
+		int k = (int) key(literal);
+		while (lists.size() <= k)
+			lists.add(new ArrayList<>());
+		return lists.get(k);
+	}
+
+	/**
+	 * The ids of the clauses still in the set in a list, clearing out removed ones
+	 */
+	private List<Integer> live(List<Integer> ids)
+	{
+		ids.removeIf(id -> clauses.get(id) == null);
+		return ids;
+	}
+
+	private static long signature(int[] clause)
+	{
+		long ans = 0;
+		for (int l : clause)
+			ans |= 1L << (Math.abs(l) & 63);
+		return ans;
+	}
+
+	/**
+	 * Forward subsumption, whether some clause in the set is contained in the clause.  Any such clause is the
+	 * empty clause, or watches one of its literals, and every clause watches just one literal, so each clause is
+	 * looked at at most once.
+	 */
+	private boolean isSubsumed(int[] clause)
+	{
+		if (containsEmptyClause())
+			return true;
+		long sig = signature(clause);
+		for (int l : clause)
+			for (int id : live(index(watches, l)))
+			{
+				int[] other = clauses.get(id);
+				if (other.length <= clause.length && (signatures[id] & ~sig) == 0 && subset(other, clause, 0))
+					return true;
+			}
+		return false;
+	}
+
+	/**
+	 * Backward subsumption, removing every clause in the set that contains the clause.  Every such clause
+	 * contains its least common literal, so only that literal's occurrences are checked.
+	 */
+	private void removeSubsumedBy(int[] clause)
+	{
+		if (clause.length == 0)
+		{
+			for (int id=0; id<clauses.size(); ++id)
+				if (clauses.get(id) != null)
+					remove(id);
+			return;
+		}
+		int rarest = clause[0];
+		for (int l : clause)
+			if (occurrences(l).size() < occurrences(rarest).size())
+				rarest = l;
+		long sig = signature(clause);
+		// Removing a clause only sets it to null, so the list can be looked through as it is
+		for (int id : live(occurrences(rarest)))
+		{
+			int[] other = clauses.get(id);
+			if (other.length >= clause.length && (sig & ~signatures[id]) == 0 && subset(clause, other, 0))
+				remove(id);
+		}
+	}
+
+	/**
+	 * Checks whether every literal of a is in b, both sorted, with the literal flipped negated first
+	 * @param flipped a literal of a to look for the negation of, or 0
+	 */
+	private static boolean subset(int[] a, int[] b, int flipped)
+	{
+		int j = 0;
+		for (int l : a)
+		{
+			long k = key(l == flipped ? -l : l);
+			while (j < b.length && key(b[j]) < k)
+				++j;
+			if (j == b.length || key(b[j]) != k)
+				return false;
+			++j;
+		}
+		return true;
+	}
+
+	/**
+	 * Self-subsuming resolution, repeated until nothing changes.  When a clause C∨l and a clause D∨¬l have C
+	 * contained in D, resolving them gives D, which subsumes D∨¬l, so ¬l is removed from it.  Shortened clauses
+	 * are checked again, since they can subsume or shorten others in turn.
+	 */
+	public void strengthen()
+	{
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int id=0; id<clauses.size(); ++id)
+			if (clauses.get(id) != null)
+				queue.add(id);
+		while (!queue.isEmpty())
+		{
+			int id = queue.poll();
+			int[] c = clauses.get(id);
+			if (c == null)
+				continue;
+			for (int l : c)
+				for (int other : new ArrayList<>(live(occurrences(-l))))
+				{
+					int[] d = clauses.get(other);
+					if (d == null || other == id || d.length < c.length || (signatures[id] & ~signatures[other]) != 0 || !subset(c, d, l))
+						continue;
+					int[] shorter = new int[d.length-1];
+					int n = 0;
+					for (int x : d)
+						if (x != -l)
+							shorter[n++] = x;
+					remove(other);
+					if (insert(shorter))
+						queue.add(clauses.size()-1);
+				}
+		}
+	}
+
+	/**
+	 * Gets the clauses in the set
+	 * @return an unmodifiable List of the clauses, sorted by variable, in the order they were added, which must
+	 * not be modified
+	 */
+	public List<int[]> getClauses()
+	{
+		List<int[]> ans = new ArrayList<>(size);
+		for (int[] clause : clauses)
+			if (clause != null)
+				ans.add(clause);
+		return Collections.unmodifiableList(ans);
+	}
+
+	/**
+	 * The number of clauses
+	 * @return the number of clauses in the set
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Checks whether there are no clauses, which is ⊤ for a conjunction and ⊥ for a disjunction
+	 * @return true if there are no clauses
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Checks whether the set contains the empty clause, which is then its only clause, since it subsumes every
+	 * other one.  That's ⊥ for a conjunction and ⊤ for a disjunction.
+	 * @return true if the set contains the empty clause
+	 */
+	public boolean containsEmptyClause()
+	{
+		return distinct.contains(new Key(new int[0]));
+	}
+
+	/**
+	 * Converts the clauses back into an Expression, sharing everything it can.  Each literal is built once, and
+	 * each clause is a chain ((l1∨l2)∨l3)∨... in sorted order, so clauses starting with the same literals share
+	 * that part of the chain.  The clauses are joined as a balanced tree.
+	 * @return the expression in the form of the set, or a Constant if the set is empty or has the empty clause
+	 */
+	public Expression toExpression()
+	{
+		Operator inner = form == NormalForm.CONJUNCTIVE ? Operator.OR : Operator.AND;
+		Operator outer = form == NormalForm.CONJUNCTIVE ? Operator.AND : Operator.OR;
+		boolean conjunctive = form == NormalForm.CONJUNCTIVE;
+		if (isEmpty())
+			return Constant.of(conjunctive);
+		if (containsEmptyClause())
+			return Constant.of(!conjunctive);
+		Map<Integer, Expression> literals = new HashMap<>();
+		// The chain each chain is extended to by each literal
+		Map<Expression, Map<Integer, Expression>> chains = new IdentityHashMap<>();
+		List<Expression> joined = new ArrayList<>(size);
+		for (int[] clause : getClauses())
+		{
+			Expression chain = literal(clause[0], literals);
+			for (int i=1; i<clause.length; ++i)
+			{
+				Map<Integer, Expression> extended = chains.computeIfAbsent(chain, k -> new HashMap<>());
+				Expression next = extended.get(clause[i]);
+				if (next == null)
+				{
+					next = Function.constructUnsafe(inner, Arrays.asList(chain, literal(clause[i], literals)));
+					extended.put(clause[i], next);
+				}
+				chain = next;
+			}
+			joined.add(chain);
+		}
+		return balanced(outer, joined, 0, joined.size());
+	}
+
+	/**
+	 * The Expression for a literal, the same object every time it's asked for with the same Map
+	 */
+	private Expression literal(int l, Map<Integer, Expression> literals)
+	{
+		return literals.computeIfAbsent(l, k -> k > 0 ? getVariable(k) : Function.constructUnsafe(Operator.NEG, Collections.singletonList(getVariable(-k))));
+	}
+
+	private static Expression balanced(Operator op, List<Expression> terms, int from, int to)
+	{
+		if (to-from == 1)
+			return terms.get(from);
+		int mid = (from+to) >>> 1;
+		return Function.constructUnsafe(op, Arrays.asList(balanced(op, terms, from, mid), balanced(op, terms, mid, to)));
+	}
+
+	/**
+	 * Copies a conjunctive set of clauses into a Cnf for the solvers, with the same numbering of variables
+	 * @return the clauses as a Cnf
+	 * @throws IllegalStateException if the set is disjunctive
+	 */
+	public Cnf toCnf()
+	{
+		if (form != NormalForm.CONJUNCTIVE)
+			throw new IllegalStateException("Only a conjunctive set of clauses is a Cnf");
+		Cnf ans = new Cnf();
+		while (ans.numVariables() < variables.size())
+			ans.newVariable();
+		getClauses().forEach(ans::addClause);
+		return ans;
+	}
+
+	@Override
+	public String toString()
+	{
+		return toExpression().toString();
+	}
+
+	/**
+	 * A clause compared by its contents, for finding duplicates
+	 */
+	private static final class Key
+	{
+		private final int[] clause;
+
+		private Key(int[] clause)
+		{
+			this.clause = clause;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && Arrays.equals(clause, ((Key) o).clause);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(clause);
+		}
+	}
+}
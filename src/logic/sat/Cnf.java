@@ -0,0 +1,73 @@
+package logic.sat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A formula in conjunctive normal form over numbered variables, in the style of the DIMACS format.
+ * Variables are numbered from 1, and a clause is an array of non-zero ints where v means variable v
+ * is true and -v means it is false.
+ * @author Jallibad
+ *
+ */
+public class Cnf
+{
+	private int numVariables;
+	private final List<int[]> clauses = new ArrayList<>();
+
+	/**
+	 * Creates a fresh variable
+	 * @return the number of the new variable
+	 */
+	public int newVariable()
+	{
+		return ++numVariables;
+	}
+
+	/**
+	 * Getter method for the number of variables, which are numbered 1 through numVariables
+	 * @return the number of variables
+	 */
+	public int numVariables()
+	{
+		return numVariables;
+	}
+
+	/**
+	 * Adds a clause, creating any variables it mentions that don't exist yet
+	 * @param literals the literals of the clause, a copy is made to avoid rep exposure
+	 */
+	public void addClause(int... literals)
+	{
+		for (int l : literals)
+		{
+			if (l == 0)
+				throw new IllegalArgumentException("0 is not a valid literal");
+			numVariables = Math.max(numVariables, Math.abs(l));
+		}
+		clauses.add(literals.clone());
+	}
+
+	/**
+	 * Getter method for the clauses
+	 * @return an unmodifiable List of the clauses, which must not be modified
+	 */
+	public List<int[]> getClauses()
+	{
+		return Collections.unmodifiableList(clauses);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder ans = new StringBuilder("p cnf "+numVariables+" "+clauses.size()+"\n");
+		for (int[] clause : clauses)
+		{
+			for (int l : clause)
+				ans.append(l).append(' ');
+			ans.append("0\n");
+		}
+		return ans.toString();
+	}
+}
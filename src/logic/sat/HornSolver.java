@@ -0,0 +1,94 @@
+package logic.sat;
+
+import java.util.Arrays;
+
+/**
+ * Solves Horn and dual-Horn CNF in linear time by unit resolution.  Every variable starts false, and a clause
+ * whose negative literals have all been made false forces its positive literal true.  Each clause keeps a
+ * count of the negative literals still unresolved, so every occurrence is only visited once.  The result is the
+ * minimal model, or a contradiction if a clause with no positive literal has every negative literal falsified.
+ * Dual-Horn clauses are solved by flipping the sign of every literal and then flipping the model back.
+ * @author Jallibad
+ *
+ */
+final class HornSolver
+{
+	private HornSolver()
+	{
+	}
+
+	/**
+	 * Solves clauses with at most one positive literal each, or at most one negative literal if dual
+	 * @param cnf the clauses
+	 * @param dual whether the clauses are dual-Horn
+	 * @return a value for every variable, indexed by variable number, or null if the clauses are unsatisfiable
+	 */
+	static boolean[] solve(Cnf cnf, boolean dual)
+	{
+		int n = cnf.numVariables();
+		int sign = dual ? -1 : 1;
+		int numClauses = cnf.getClauses().size();
+		int[] remaining = new int[numClauses];
+		int[] heads = new int[numClauses];
+
+		// For each variable, the clauses it occurs negatively in, in compressed row form
+		int[] start = new int[n+2];
+		for (int[] clause : cnf.getClauses())
+			for (int l : clause)
+				if (sign*l < 0)
+					start[Math.abs(l)+1]++;
+		for (int i=1; i<start.length; ++i)
+			start[i] += start[i-1];
+		int[] occurrences = new int[start[n+1]];
+		int[] fill = Arrays.copyOf(start, n+1);
+
+		boolean[] ans = new boolean[n+1];
+		int[] queue = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int c=0; c<numClauses; ++c)
+		{
+			for (int l : cnf.getClauses().get(c))
+				if (sign*l < 0)
+				{
+					occurrences[fill[Math.abs(l)]++] = c;
+					remaining[c]++;
+				}
+				else
+					heads[c] = Math.abs(l);
+			if (remaining[c] == 0)
+			{
+				if (heads[c] == 0)
+					return null;
+				if (!ans[heads[c]])
+				{
+					ans[heads[c]] = true;
+					queue[tail++] = heads[c];
+				}
+			}
+		}
+
+		while (head < tail)
+		{
+			int v = queue[head++];
+			for (int i=start[v]; i<start[v+1]; ++i)
+			{
+				int c = occurrences[i];
+				if (--remaining[c] > 0)
+					continue;
+				if (heads[c] == 0)
+					return null;
+				if (!ans[heads[c]])
+				{
+					ans[heads[c]] = true;
+					queue[tail++] = heads[c];
+				}
+			}
+		}
+
+		if (dual)
+			for (int v=1; v<=n; ++v)
+				ans[v] = !ans[v];
+		return ans;
+	}
+}
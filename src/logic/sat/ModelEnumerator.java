@@ -0,0 +1,263 @@
+package logic.sat;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import logic.Expression;
+import logic.Literal;
+import logic.TruthValue;
+
+/**
+ * Lazily enumerates the models of an expression with an incremental CdclSolver.  Each model found is
+ * generalized to a cube, a partial assignment that already forces the expression true, by dropping every
+ * variable the expression doesn't need, as long as the cube stays disjoint from the earlier ones.  The cube
+ * is then blocked so later models are outside it.  The cubes returned together cover every model exactly once,
+ * and the work done grows with the number of cubes rather than with the 2^n rows of a truth table.
+ *
+ * The clauses are reduced by Preprocessor.MODEL_PRESERVING first, so the solver only sees what's left after unit
+ * propagation, equivalent literal substitution and removal of unused gates.
+ *
+ * A Cursor records the cubes returned so far, so enumeration can be paged through and resumed later by a new
+ * enumerator without repeating any cube.
+ * @author Jallibad
+ *
+ */
+public class ModelEnumerator implements Iterator<Map<Literal, Boolean>>
+{
+	private final Expression exp;
+	private final TseitinEncoder encoder = new TseitinEncoder(new Cnf());
+	private final Preprocessor.Result reduced;
+	private final CdclSolver solver;
+	private final List<Literal> variables;
+	private final List<Map<Literal, Boolean>> returned = new ArrayList<>();
+
+	/**
+	 * The next cube, or null if it hasn't been searched for yet
+	 */
+	private Map<Literal, Boolean> next;
+	private boolean exhausted;
+
+	/**
+	 * Creates an enumerator starting from the first cube
+	 * @param exp the expression whose models are enumerated
+	 */
+	public ModelEnumerator(Expression exp)
+	{
+		this(exp, new Cursor());
+	}
+
+	/**
+	 * Creates an enumerator that resumes after the cubes of a cursor
+	 * @param exp the expression whose models are enumerated
+	 * @param cursor a cursor returned by an earlier enumerator of the same expression
+	 */
+	public ModelEnumerator(Expression exp, Cursor cursor)
+	{
+		this.exp = exp;
+		variables = new ArrayList<>(exp.getVariables());
+		variables.forEach(encoder::encode);
+		int root = encoder.encode(Preprocessor.MODEL_PRESERVING.fold(exp));
+		encoder.getCnf().addClause(root);
+		reduced = Preprocessor.MODEL_PRESERVING.preprocess(encoder);
+		solver = new CdclSolver(reduced.getCnf());
+		exhausted = reduced.isUnsatisfiable();
+		Collections.sort(variables, (a, b) -> a.variableName.compareTo(b.variableName));
+		for (Map<Literal, Boolean> cube : cursor.cubes)
+			block(cube);
+		returned.addAll(cursor.cubes);
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (next == null && !exhausted)
+		{
+			if (solver.solve())
+			{
+				boolean[] model = new boolean[solver.numVariables()+1];
+				for (int v=1; v<model.length; ++v)
+					model[v] = solver.modelValue(v);
+				boolean[] ans = reduced.reconstruct(model);
+				next = generalize(encoder.decode(v -> ans[v]));
+			}
+			else
+				exhausted = true;
+		}
+		return next != null;
+	}
+
+	/**
+	 * Gets the next cube.  Variables missing from the cube are don't-cares, any value for them gives a model.
+	 * @return a partial assignment that makes the expression true
+	 */
+	@Override
+	public Map<Literal, Boolean> next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Map<Literal, Boolean> ans = next;
+		next = null;
+		block(ans);
+		returned.add(ans);
+		return ans;
+	}
+
+	/**
+	 * Gets up to limit more cubes
+	 * @param limit the maximum number of cubes to return
+	 * @return the cubes, fewer than limit only if enumeration is finished
+	 */
+	public List<Map<Literal, Boolean>> next(int limit)
+	{
+		List<Map<Literal, Boolean>> ans = new ArrayList<>();
+		while (ans.size() < limit && hasNext())
+			ans.add(next());
+		return ans;
+	}
+
+	/**
+	 * A cursor that a new enumerator can resume from, after every cube returned so far
+	 * @return the cursor
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor(returned);
+	}
+
+	/**
+	 * The remaining cubes as a lazy Stream
+	 * @return the Stream of cubes
+	 */
+	public Stream<Map<Literal, Boolean>> cubes()
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL | Spliterator.DISTINCT), false);
+	}
+
+	/**
+	 * The remaining models as a lazy Stream, with each cube expanded into a full assignment for every combination
+	 * of its don't-care variables
+	 * @return the Stream of models
+	 */
+	public Stream<Map<Literal, Boolean>> models()
+	{
+		return cubes().flatMap(this::expand);
+	}
+
+	private Stream<Map<Literal, Boolean>> expand(Map<Literal, Boolean> cube)
+	{
+		List<Literal> free = new ArrayList<>();
+		for (Literal l : variables)
+			if (!cube.containsKey(l))
+				free.add(l);
+		if (free.size() >= Long.SIZE-1)
+			throw new IllegalArgumentException("A cube has too many don't-care variables to expand");
+		return Stream.iterate(0L, i -> i+1).limit(1L << free.size()).map(i ->
+		{
+			Map<Literal, Boolean> model = new HashMap<>(cube);
+			for (int j=0; j<free.size(); ++j)
+				model.put(free.get(j), (i >>> j & 1) != 0);
+			return model;
+		});
+	}
+
+	/**
+	 * Drops each variable in turn, keeping it dropped if the expression is still forced true without it and
+	 * the cube still doesn't overlap any earlier cube.  The cube is disjoint from an earlier cube as long as it
+	 * keeps at least one variable set to the opposite of that cube's value, so a count of those variables is
+	 * kept for every earlier cube.
+	 */
+	private Map<Literal, Boolean> generalize(Map<Literal, Boolean> model)
+	{
+		int[] differences = new int[returned.size()];
+		for (int i=0; i<returned.size(); ++i)
+			for (Map.Entry<Literal, Boolean> e : returned.get(i).entrySet())
+				if (!e.getValue().equals(model.get(e.getKey())))
+					differences[i]++;
+
+		Map<Literal, Boolean> cube = new HashMap<>(model);
+		for (Literal l : variables)
+		{
+			Boolean value = cube.get(l);
+			List<Integer> separated = new ArrayList<>();
+			for (int i=0; i<returned.size(); ++i)
+				if (value.equals(!returned.get(i).getOrDefault(l, value)))
+					separated.add(i);
+			if (separated.stream().anyMatch(i -> differences[i] == 1))
+				continue;
+			cube.remove(l);
+			if (exp.evaluatePartial(cube) != TruthValue.TRUE)
+			{
+				cube.put(l, value);
+				continue;
+			}
+			separated.forEach(i -> differences[i]--);
+		}
+		return cube;
+	}
+
+	/**
+	 * Adds the clause ruling out every model inside a cube, written in terms of the variables left after
+	 * preprocessing.  A literal fixed false by preprocessing is left out, and one fixed true means every model is
+	 * already outside the cube.
+	 */
+	private void block(Map<Literal, Boolean> cube)
+	{
+		Map<Literal, Integer> numbers = encoder.getVariables();
+		List<Integer> clause = new ArrayList<>();
+		for (Map.Entry<Literal, Boolean> e : cube.entrySet())
+		{
+			Integer v = numbers.get(e.getKey());
+			if (v == null)
+				throw new IllegalArgumentException(e.getKey()+" is not a variable of "+exp);
+			int l = e.getValue() ? -v : v;
+			TruthValue value = reduced.valueOf(l);
+			if (value == TruthValue.TRUE)
+				return;
+			if (value == TruthValue.UNKNOWN)
+				clause.add(reduced.representative(l));
+		}
+		if (!solver.addClause(clause.stream().mapToInt(Integer::intValue).toArray()))
+			exhausted = true;
+	}
+
+	/**
+	 * The position of an enumeration, recorded as the cubes already returned
+	 * @author Jallibad
+	 *
+	 */
+	public static class Cursor implements Serializable
+	{
+		private static final long serialVersionUID = 4436215903170894812L;
+
+		private final List<Map<Literal, Boolean>> cubes;
+
+		private Cursor()
+		{
+			cubes = Collections.emptyList();
+		}
+
+		private Cursor(List<Map<Literal, Boolean>> cubes)
+		{
+			this.cubes = new ArrayList<>(cubes);
+		}
+
+		/**
+		 * The number of cubes returned before this cursor
+		 * @return the number of cubes
+		 */
+		public int position()
+		{
+			return cubes.size();
+		}
+	}
+}
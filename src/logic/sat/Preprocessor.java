@@ -0,0 +1,606 @@
+package logic.sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import logic.Expression;
+import logic.TruthValue;
+import logic.transform.Restrict;
+
+/**
+ * Simplifies a Cnf before it's handed to a solver.  Each stage removes variables, and every removed variable is
+ * pushed onto a reconstruction stack along with the clauses that mentioned it.  Going back down the stack and
+ * giving each variable a value that satisfies its clauses turns any model of the reduced Cnf into a model of the
+ * original, so witnesses and counterexamples are still reported in terms of the original variables.
+ *
+ * Every stage keeps the models of the remaining variables exactly as they were, except PURE_LITERALS, which only
+ * keeps satisfiability.  MODEL_PRESERVING is safe for enumeration and counting, SATISFIABILITY is not.
+ * @author Jallibad
+ *
+ */
+public class Preprocessor
+{
+	/**
+	 * Runs every stage, for callers that only need to know whether a model exists
+	 */
+	public static final Preprocessor SATISFIABILITY = new Preprocessor(EnumSet.allOf(Stage.class));
+
+	/**
+	 * Runs every stage that keeps the set of models, for callers that enumerate or count them
+	 */
+	public static final Preprocessor MODEL_PRESERVING = new Preprocessor(EnumSet.complementOf(EnumSet.of(Stage.PURE_LITERALS)));
+
+	/**
+	 * The stages of the pipeline, which are repeated until none of them changes anything
+	 * @author Jallibad
+	 *
+	 */
+	public enum Stage
+	{
+		/**
+		 * Folds constants out of expressions with Restrict before they're encoded
+		 */
+		CONSTANT_FOLDING,
+		/**
+		 * Assigns the literal of every unit clause and simplifies the clauses it occurs in
+		 */
+		UNIT_PROPAGATION,
+		/**
+		 * Assigns every literal whose negation occurs nowhere, satisfying all of its clauses
+		 */
+		PURE_LITERALS,
+		/**
+		 * Finds literals that imply each other through binary clauses and replaces each with a single representative
+		 */
+		EQUIVALENT_LITERALS,
+		/**
+		 * Drops the definitions of Tseitin gates that nothing refers to any more
+		 */
+		CONE_OF_INFLUENCE
+	}
+
+	private final Set<Stage> stages;
+
+	/**
+	 * Creates a pipeline running the given stages
+	 * @param stages the stages to run, a copy is made to avoid rep exposure
+	 */
+	public Preprocessor(Set<Stage> stages)
+	{
+		this.stages = stages.isEmpty() ? EnumSet.noneOf(Stage.class) : EnumSet.copyOf(stages);
+	}
+
+	/**
+	 * Getter method for the stages that are run
+	 * @return an unmodifiable Set of the stages
+	 */
+	public Set<Stage> getStages()
+	{
+		return Collections.unmodifiableSet(stages);
+	}
+
+	/**
+	 * Folds the constants out of an expression if CONSTANT_FOLDING is one of the stages
+	 * @param e the expression to fold
+	 * @return an equivalent expression with no constants, unless it's a constant itself
+	 */
+	public Expression fold(Expression e)
+	{
+		return stages.contains(Stage.CONSTANT_FOLDING) ? Restrict.FOLD_CONSTANTS.transform(e) : e;
+	}
+
+	/**
+	 * Reduces the clauses of an encoder, using its gate definitions for CONE_OF_INFLUENCE
+	 * @param encoder the encoder whose Cnf is reduced, which is left unchanged
+	 * @return the reduced Cnf and how to reconstruct models of the original from it
+	 */
+	public Result preprocess(TseitinEncoder encoder)
+	{
+		return preprocess(encoder.getCnf(), encoder.getDefinitions());
+	}
+
+	/**
+	 * Reduces a Cnf
+	 * @param cnf the clauses to reduce, which are left unchanged
+	 * @param definitions the indices of the clauses defining each gate variable, as from TseitinEncoder.getDefinitions
+	 * @return the reduced Cnf and how to reconstruct models of the original from it
+	 */
+	public Result preprocess(Cnf cnf, Map<Integer, List<Integer>> definitions)
+	{
+		Result ans = new Result(cnf, definitions);
+		ans.run();
+		return ans;
+	}
+
+	/**
+	 * A reduced Cnf along with the reconstruction stack of the variables removed from it.  The variables keep their
+	 * numbers, so the reduced Cnf can be solved and its models passed straight to reconstruct.
+	 * @author Jallibad
+	 *
+	 */
+	public class Result
+	{
+		private final int numVariables;
+		private final int[][] clauses;
+		private final List<List<Integer>> occurrences = new ArrayList<>();
+		private final Map<Integer, List<Integer>> definitions;
+
+		/**
+		 * The value of each assigned variable, 1 for true, -1 for false and 0 if unassigned
+		 */
+		private final byte[] values;
+
+		/**
+		 * Whether each variable was assigned by a unit clause, so it has that value in every model
+		 */
+		private final boolean[] forced;
+
+		/**
+		 * The literal each variable was replaced with, or 0 if it wasn't
+		 */
+		private final int[] replacements;
+		private final boolean[] removedGates;
+
+		/**
+		 * The number of live clauses each variable occurs in positively and negatively
+		 */
+		private final int[] positive;
+		private final int[] negative;
+
+		/**
+		 * The variables that may have become pure since PURE_LITERALS last looked at them
+		 */
+		private final List<Integer> maybePure = new ArrayList<>();
+		private final List<Elimination> eliminated = new ArrayList<>();
+
+		/**
+		 * The clauses that need simplifying under the current assignment
+		 */
+		private final List<Integer> dirty = new ArrayList<>();
+		private boolean unsatisfiable;
+		private Cnf reduced;
+
+		private Result(Cnf cnf, Map<Integer, List<Integer>> definitions)
+		{
+			numVariables = cnf.numVariables();
+			this.definitions = definitions;
+			values = new byte[numVariables+1];
+			forced = new boolean[numVariables+1];
+			replacements = new int[numVariables+1];
+			removedGates = new boolean[numVariables+1];
+			positive = new int[numVariables+1];
+			negative = new int[numVariables+1];
+			for (int v=0; v<=numVariables; ++v)
+			{
+				occurrences.add(new ArrayList<>());
+				maybePure.add(v);
+			}
+			clauses = new int[cnf.getClauses().size()][];
+			for (int c=0; c<clauses.length; ++c)
+			{
+				setClause(c, normalize(cnf.getClauses().get(c)));
+				if (clauses[c] == null)
+					continue;
+				for (int l : clauses[c])
+					occurrences.get(Math.abs(l)).add(c);
+				dirty.add(c);
+			}
+		}
+
+		/**
+		 * Replaces a clause, keeping the occurrence counts up to date
+		 * @param clause the new clause, or null to remove it
+		 */
+		private void setClause(int c, int[] clause)
+		{
+			if (clauses[c] != null)
+				for (int l : clauses[c])
+				{
+					int v = Math.abs(l);
+					if (l > 0 ? --positive[v] == 0 : --negative[v] == 0)
+						maybePure.add(v);
+				}
+			clauses[c] = clause;
+			if (clause != null)
+				for (int l : clause)
+				{
+					if (l > 0)
+						positive[l]++;
+					else
+						negative[-l]++;
+				}
+		}
+
+		private void run()
+		{
+			boolean changed = true;
+			while (changed && !unsatisfiable)
+			{
+				simplify();
+				changed = false;
+				if (!unsatisfiable && stages.contains(Stage.EQUIVALENT_LITERALS))
+					changed |= substituteEquivalences();
+				if (!unsatisfiable && stages.contains(Stage.PURE_LITERALS))
+					changed |= eliminatePureLiterals();
+				if (!unsatisfiable && stages.contains(Stage.CONE_OF_INFLUENCE))
+					changed |= removeUnusedGates();
+				changed |= !dirty.isEmpty();
+			}
+
+			reduced = new Cnf();
+			while (reduced.numVariables() < numVariables)
+				reduced.newVariable();
+			if (unsatisfiable)
+				reduced.addClause();
+			else
+				for (int[] clause : clauses)
+					if (clause != null)
+						reduced.addClause(clause);
+		}
+
+		/**
+		 * Sorts a clause by variable and removes repeated literals
+		 * @return the clause, or null if it contains a literal and its negation
+		 */
+		private int[] normalize(int[] clause)
+		{
+			int[] ans = clause.clone();
+			for (int i=0; i<ans.length; ++i)
+				ans[i] = ans[i] > 0 ? 2*ans[i] : -2*ans[i]+1;
+			Arrays.sort(ans);
+			int size = 0;
+			for (int i=0; i<ans.length; ++i)
+			{
+				if (size > 0 && ans[size-1] == ans[i])
+					continue;
+				if (size > 0 && ans[size-1]>>1 == ans[i]>>1)
+					return null;
+				ans[size++] = ans[i];
+			}
+			ans = Arrays.copyOf(ans, size);
+			for (int i=0; i<size; ++i)
+				ans[i] = (ans[i]&1) == 0 ? ans[i]>>1 : -(ans[i]>>1);
+			return ans;
+		}
+
+		private TruthValue value(int literal)
+		{
+			byte v = values[Math.abs(literal)];
+			if (v == 0)
+				return TruthValue.UNKNOWN;
+			return TruthValue.of(v > 0 == literal > 0);
+		}
+
+		/**
+		 * Removes satisfied clauses and false literals from every dirty clause, assigning the literal of any unit
+		 * clause if UNIT_PROPAGATION is a stage, which dirties every clause that variable occurs in
+		 */
+		private void simplify()
+		{
+			boolean propagate = stages.contains(Stage.UNIT_PROPAGATION);
+			while (!dirty.isEmpty() && !unsatisfiable)
+			{
+				int c = dirty.remove(dirty.size()-1);
+				int[] clause = clauses[c];
+				if (clause == null)
+					continue;
+				int size = 0;
+				boolean satisfied = false;
+				for (int l : clause)
+				{
+					TruthValue value = value(l);
+					satisfied |= value == TruthValue.TRUE;
+					if (value == TruthValue.UNKNOWN)
+						size++;
+				}
+				if (satisfied)
+				{
+					setClause(c, null);
+					continue;
+				}
+				if (size < clause.length)
+				{
+					int[] shrunk = new int[size];
+					size = 0;
+					for (int l : clause)
+						if (value(l) == TruthValue.UNKNOWN)
+							shrunk[size++] = l;
+					setClause(c, clause = shrunk);
+				}
+				if (clause.length == 0)
+					unsatisfiable = true;
+				else if (clause.length == 1 && propagate)
+				{
+					int l = clause[0];
+					values[Math.abs(l)] = (byte) (l > 0 ? 1 : -1);
+					forced[Math.abs(l)] = true;
+					eliminated.add(new Elimination(Math.abs(l), Collections.singletonList(new int[] {l})));
+					dirty.addAll(occurrences.get(Math.abs(l)));
+					occurrences.get(Math.abs(l)).clear();
+				}
+			}
+		}
+
+		/**
+		 * Finds the strongly connected components of the implication graph of the binary clauses, whose literals
+		 * are all equivalent, and replaces every variable with the smallest variable of its component
+		 * @return true if any variable was replaced
+		 */
+		private boolean substituteEquivalences()
+		{
+			int n = numVariables;
+			int[] degree = new int[2*n+1];
+			for (int[] clause : clauses)
+				if (clause != null && clause.length == 2)
+				{
+					degree[TwoSatSolver.node(-clause[0])+1]++;
+					degree[TwoSatSolver.node(-clause[1])+1]++;
+				}
+			for (int i=1; i<degree.length; ++i)
+				degree[i] += degree[i-1];
+			int[] edges = new int[degree[2*n]];
+			int[] fill = Arrays.copyOf(degree, 2*n);
+			for (int[] clause : clauses)
+				if (clause != null && clause.length == 2)
+				{
+					edges[fill[TwoSatSolver.node(-clause[0])]++] = TwoSatSolver.node(clause[1]);
+					edges[fill[TwoSatSolver.node(-clause[1])]++] = TwoSatSolver.node(clause[0]);
+				}
+			if (edges.length == 0)
+				return false;
+
+			int[] component = TwoSatSolver.tarjan(2*n, degree, edges);
+			int[] representative = new int[2*n];
+			for (int v=1; v<=n; ++v)
+			{
+				int positive = component[TwoSatSolver.node(v)];
+				int negative = component[TwoSatSolver.node(-v)];
+				if (positive == negative)
+				{
+					unsatisfiable = true;
+					return false;
+				}
+				if (representative[positive] == 0)
+					representative[positive] = v;
+				if (representative[negative] == 0)
+					representative[negative] = -v;
+			}
+
+			boolean changed = false;
+			for (int v=1; v<=n; ++v)
+			{
+				int r = representative[component[TwoSatSolver.node(v)]];
+				if (r == v)
+					continue;
+				changed = true;
+				replacements[v] = r;
+				eliminated.add(new Elimination(v, Arrays.asList(new int[] {v, -r}, new int[] {-v, r})));
+				for (int c : occurrences.get(v))
+				{
+					if (clauses[c] == null)
+						continue;
+					int[] clause = clauses[c].clone();
+					for (int i=0; i<clause.length; ++i)
+						if (Math.abs(clause[i]) == v)
+							clause[i] = clause[i] > 0 ? r : -r;
+					setClause(c, normalize(clause));
+					occurrences.get(Math.abs(r)).add(c);
+					dirty.add(c);
+				}
+				occurrences.get(v).clear();
+			}
+			return changed;
+		}
+
+		/**
+		 * Assigns every variable that only occurs with one sign.  Removing the clauses it satisfies can make more
+		 * variables pure, and those are handled in the same pass.
+		 * @return true if any variable was assigned
+		 */
+		private boolean eliminatePureLiterals()
+		{
+			boolean changed = false;
+			while (!maybePure.isEmpty())
+			{
+				int v = maybePure.remove(maybePure.size()-1);
+				if (v == 0 || values[v] != 0 || replacements[v] != 0 || (positive[v] == 0) == (negative[v] == 0))
+					continue;
+				int l = positive[v] > 0 ? v : -v;
+				List<int[]> satisfied = new ArrayList<>();
+				for (int c : occurrences.get(v))
+					if (clauses[c] != null && contains(clauses[c], l))
+					{
+						satisfied.add(clauses[c]);
+						setClause(c, null);
+					}
+				changed = true;
+				values[v] = (byte) (l > 0 ? 1 : -1);
+				eliminated.add(new Elimination(v, satisfied));
+				occurrences.get(v).clear();
+			}
+			return changed;
+		}
+
+		private boolean contains(int[] clause, int literal)
+		{
+			for (int l : clause)
+				if (l == literal)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Marks every variable that the clauses outside of gate definitions depend on, following the definitions
+		 * of marked gates down to their inputs, and drops the definitions of the gates left unmarked
+		 * @return true if any definition was dropped
+		 */
+		private boolean removeUnusedGates()
+		{
+			// The gates that are still free to be dropped, whose variables are unassigned and unreplaced
+			int[] owner = new int[clauses.length];
+			List<Integer> candidates = new ArrayList<>();
+			definitions.forEach((g, defining) ->
+			{
+				if (values[g] != 0 || replacements[g] != 0 || removedGates[g])
+					return;
+				candidates.add(g);
+				for (int c : defining)
+					owner[c] = g;
+			});
+			if (candidates.isEmpty())
+				return false;
+
+			boolean[] marked = new boolean[numVariables+1];
+			List<Integer> stack = new ArrayList<>();
+			for (int c=0; c<clauses.length; ++c)
+				if (clauses[c] != null && owner[c] == 0)
+					for (int l : clauses[c])
+						mark(Math.abs(l), marked, stack);
+			while (!stack.isEmpty())
+			{
+				int v = stack.remove(stack.size()-1);
+				if (definitions.containsKey(v))
+					for (int c : definitions.get(v))
+						if (clauses[c] != null && owner[c] == v)
+							for (int l : clauses[c])
+								mark(Math.abs(l), marked, stack);
+			}
+
+			// Gates are numbered after their inputs, so going down from the largest pushes each gate before the
+			// gates it uses, and reconstruction gives the inputs their values first
+			Collections.sort(candidates, Collections.reverseOrder());
+			boolean changed = false;
+			for (int g : candidates)
+			{
+				if (marked[g])
+					continue;
+				List<int[]> defining = new ArrayList<>();
+				for (int c : definitions.get(g))
+					if (clauses[c] != null && owner[c] == g)
+					{
+						defining.add(clauses[c]);
+						setClause(c, null);
+					}
+				removedGates[g] = true;
+				if (defining.isEmpty())
+					continue;
+				changed = true;
+				eliminated.add(new Elimination(g, defining));
+			}
+			return changed;
+		}
+
+		private void mark(int v, boolean[] marked, List<Integer> stack)
+		{
+			if (!marked[v])
+			{
+				marked[v] = true;
+				stack.add(v);
+			}
+		}
+
+		/**
+		 * Checks whether preprocessing alone showed the Cnf to be unsatisfiable, in which case the reduced Cnf
+		 * is a single empty clause
+		 * @return true if the Cnf is unsatisfiable
+		 */
+		public boolean isUnsatisfiable()
+		{
+			return unsatisfiable;
+		}
+
+		/**
+		 * Getter method for the reduced Cnf, which has the same variables as the original
+		 * @return the reduced Cnf
+		 */
+		public Cnf getCnf()
+		{
+			return reduced;
+		}
+
+		/**
+		 * The number of variables removed from the Cnf
+		 * @return the size of the reconstruction stack
+		 */
+		public int numEliminated()
+		{
+			return eliminated.size();
+		}
+
+		/**
+		 * Follows the replacements made by EQUIVALENT_LITERALS to the literal of the reduced Cnf that a literal is
+		 * equivalent to
+		 * @param literal a literal of the original Cnf
+		 * @return the equivalent literal, which is the literal itself if its variable wasn't replaced
+		 */
+		public int representative(int literal)
+		{
+			int r = replacements[Math.abs(literal)];
+			while (r != 0)
+			{
+				literal = literal > 0 ? r : -r;
+				r = replacements[Math.abs(literal)];
+			}
+			return literal;
+		}
+
+		/**
+		 * The value a literal is forced to have in every model, found by UNIT_PROPAGATION
+		 * @param literal a literal of the original Cnf
+		 * @return TRUE or FALSE if the literal or its representative was assigned by a unit clause, otherwise UNKNOWN
+		 */
+		public TruthValue valueOf(int literal)
+		{
+			int r = representative(literal);
+			return forced[Math.abs(r)] ? value(r) : TruthValue.UNKNOWN;
+		}
+
+		/**
+		 * Extends a model of the reduced Cnf to a model of the original by going back down the reconstruction
+		 * stack, giving each removed variable a value that satisfies the clauses it was removed with
+		 * @param model a value for every variable of the reduced Cnf, indexed by variable number
+		 * @return a value for every variable of the original Cnf, indexed by variable number
+		 */
+		public boolean[] reconstruct(boolean[] model)
+		{
+			boolean[] ans = Arrays.copyOf(model, numVariables+1);
+			for (int i=eliminated.size()-1; i>=0; --i)
+			{
+				Elimination e = eliminated.get(i);
+				ans[e.variable] = false;
+				for (int[] clause : e.clauses)
+				{
+					boolean satisfied = false;
+					for (int l : clause)
+						satisfied |= ans[Math.abs(l)] == l > 0;
+					if (!satisfied)
+					{
+						ans[e.variable] = true;
+						break;
+					}
+				}
+			}
+			return ans;
+		}
+	}
+
+	/**
+	 * An entry of the reconstruction stack, a removed variable and the clauses it has to satisfy
+	 */
+	private static class Elimination
+	{
+		private final int variable;
+		private final List<int[]> clauses;
+
+		private Elimination(int variable, List<int[]> clauses)
+		{
+			this.variable = variable;
+			this.clauses = clauses;
+		}
+	}
+}
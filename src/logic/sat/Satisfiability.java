@@ -0,0 +1,140 @@
+package logic.sat;
+
+import java.util.Map;
+import java.util.Optional;
+
+import logic.Expression;
+import logic.Literal;
+
+/**
+ * Satisfiability, tautology and equivalence checks.  Expressions already in clause form are read straight into
+ * clauses, and anything else is Tseitin encoded, so a normal form is never built.  The clauses are reduced by
+ * Preprocessor.SATISFIABILITY and then classified, and 2-CNF, Horn and dual-Horn clauses go to linear time solvers
+ * while everything else goes to CdclSolver.
+ * Each check returns a witnessing assignment when there is one.
+ * @author Jallibad
+ *
+ */
+public final class Satisfiability
+{
+	private Satisfiability()
+	{
+	}
+
+	/**
+	 * Searches for an assignment that makes an expression true
+	 * @param e the expression to satisfy
+	 * @return a value for every variable of the expression, or empty if it's unsatisfiable
+	 */
+	public static Optional<Map<Literal, Boolean>> findModel(Expression e)
+	{
+		return solve(e, true);
+	}
+
+	/**
+	 * Searches for an assignment that makes an expression false
+	 * @param e the expression to falsify
+	 * @return a value for every variable of the expression, or empty if it's a tautology
+	 */
+	public static Optional<Map<Literal, Boolean>> findCounterexample(Expression e)
+	{
+		return solve(e, false);
+	}
+
+	/**
+	 * Checks whether some assignment makes an expression true
+	 * @param e the expression to check
+	 * @return true if the expression is satisfiable
+	 */
+	public static boolean isSatisfiable(Expression e)
+	{
+		return findModel(e).isPresent();
+	}
+
+	/**
+	 * Checks whether every assignment makes an expression true
+	 * @param e the expression to check
+	 * @return true if the expression is a tautology
+	 */
+	public static boolean isTautology(Expression e)
+	{
+		return !findCounterexample(e).isPresent();
+	}
+
+	/**
+	 * Searches for an assignment under which two expressions differ, by solving the two halves of their miter,
+	 * a∧¬b and ¬a∧b, one after the other.  Keeping the halves apart means an expression in clause form can be
+	 * read straight into clauses and may leave a half in one of the tractable classes.
+	 * @param a the first expression
+	 * @param b the second expression
+	 * @return a value for every variable of either expression, or empty if they're equivalent
+	 */
+	public static Optional<Map<Literal, Boolean>> findDifference(Expression a, Expression b)
+	{
+		Optional<Map<Literal, Boolean>> ans = solve(a, true, b, false);
+		return ans.isPresent() ? ans : solve(a, false, b, true);
+	}
+
+	/**
+	 * Checks whether two expressions have the same value under every assignment
+	 * @param a the first expression
+	 * @param b the second expression
+	 * @return true if the expressions are equivalent
+	 */
+	public static boolean areEquivalent(Expression a, Expression b)
+	{
+		return !findDifference(a, b).isPresent();
+	}
+
+	private static Optional<Map<Literal, Boolean>> solve(Expression e, boolean target)
+	{
+		TseitinEncoder encoder = new TseitinEncoder(new Cnf());
+		require(encoder, e, target);
+		return solve(encoder);
+	}
+
+	private static Optional<Map<Literal, Boolean>> solve(Expression a, boolean targetA, Expression b, boolean targetB)
+	{
+		TseitinEncoder encoder = new TseitinEncoder(new Cnf());
+		require(encoder, a, targetA);
+		require(encoder, b, targetB);
+		return solve(encoder);
+	}
+
+	/**
+	 * Adds clauses requiring an expression to have a value, read straight off the expression if it's in clause
+	 * form and Tseitin encoded otherwise
+	 */
+	private static void require(TseitinEncoder encoder, Expression e, boolean target)
+	{
+		Expression folded = Preprocessor.SATISFIABILITY.fold(e);
+		// Folding can remove variables, but they still need a value in the returned assignment
+		if (folded != e)
+			e.getVariables().forEach(encoder::encode);
+		e = folded;
+		if (TseitinEncoder.isClauseForm(e, target))
+			encoder.addClauses(e, target);
+		else
+		{
+			int root = encoder.encode(e);
+			encoder.getCnf().addClause(target ? root : -root);
+		}
+	}
+
+	/**
+	 * Preprocesses the clauses and sends what's left to the linear time solver for its class if there is one,
+	 * otherwise to CdclSolver
+	 */
+	private static Optional<Map<Literal, Boolean>> solve(TseitinEncoder encoder)
+	{
+		Preprocessor.Result reduced = Preprocessor.SATISFIABILITY.preprocess(encoder);
+		if (reduced.isUnsatisfiable())
+			return Optional.empty();
+		Cnf cnf = reduced.getCnf();
+		boolean[] model = ClauseClass.classify(cnf).solve(cnf);
+		if (model == null)
+			return Optional.empty();
+		boolean[] ans = reduced.reconstruct(model);
+		return Optional.of(encoder.decode(v -> ans[v]));
+	}
+}
@@ -0,0 +1,232 @@
+package logic.sat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * Encodes Expressions into a Cnf in linear size.  Every Function gets a fresh variable that is constrained
+ * to equal the value of the Function, so the clauses grow with the size of the expression rather than
+ * blowing up like NormalForm.CONJUNCTIVE.  Negations don't need a variable of their own, they just flip
+ * the sign of their term, and equal subexpressions share a single variable.
+ * @author Jallibad
+ *
+ */
+public class TseitinEncoder
+{
+	private final Cnf cnf;
+	private final Map<Literal, Integer> variables = new HashMap<>();
+	private final Map<Expression, Integer> gates = new HashMap<>();
+	private final Map<Integer, List<Integer>> definitions = new HashMap<>();
+
+	/**
+	 * The variable fixed to true, used to encode constants
+	 */
+	private int trueVariable;
+
+	/**
+	 * Creates an encoder that adds its clauses to the given Cnf
+	 * @param cnf the Cnf to add clauses to
+	 */
+	public TseitinEncoder(Cnf cnf)
+	{
+		this.cnf = cnf;
+	}
+
+	/**
+	 * Getter method for the Cnf the clauses are added to
+	 * @return the Cnf
+	 */
+	public Cnf getCnf()
+	{
+		return cnf;
+	}
+
+	/**
+	 * Adds the clauses defining an expression
+	 * @param e the expression to encode
+	 * @return a literal of the Cnf that is true exactly when the expression is
+	 */
+	public int encode(Expression e)
+	{
+		if (e instanceof Literal)
+			return variables.computeIfAbsent((Literal) e, l -> cnf.newVariable());
+		if (e instanceof Constant)
+		{
+			if (trueVariable == 0)
+			{
+				trueVariable = cnf.newVariable();
+				cnf.addClause(trueVariable);
+			}
+			return ((Constant) e).value ? trueVariable : -trueVariable;
+		}
+		Function f = (Function) e;
+		if (f.operator == Operator.NEG)
+			return -encode(f.getTerm(0));
+		Integer gate = gates.get(f);
+		if (gate != null)
+			return gate;
+
+		int[] terms = new int[f.operator.numArguments];
+		for (int i=0; i<terms.length; ++i)
+			terms[i] = encode(f.getTerm(i));
+		int x = cnf.newVariable();
+		int first = cnf.getClauses().size();
+		switch (f.operator)
+		{
+			case AND:
+				cnf.addClause(-x, terms[0]);
+				cnf.addClause(-x, terms[1]);
+				cnf.addClause(x, -terms[0], -terms[1]);
+				break;
+			case OR:
+				cnf.addClause(x, -terms[0]);
+				cnf.addClause(x, -terms[1]);
+				cnf.addClause(-x, terms[0], terms[1]);
+				break;
+			default:
+				// Rule out every row of the truth table where x differs from the result
+				for (boolean[] row : f.operator.truthTable)
+				{
+					int[] clause = new int[terms.length+1];
+					for (int i=0; i<terms.length; ++i)
+						clause[i] = row[i] ? -terms[i] : terms[i];
+					clause[terms.length] = row[terms.length] ? x : -x;
+					cnf.addClause(clause);
+				}
+		}
+		gates.put(f, x);
+		List<Integer> defining = new ArrayList<>();
+		for (int c=first; c<cnf.getClauses().size(); ++c)
+			defining.add(c);
+		definitions.put(x, Collections.unmodifiableList(defining));
+		return x;
+	}
+
+	/**
+	 * Checks whether an expression can be added by addClauses, meaning it's already in clause form.
+	 * For a target of true that's a conjunction of disjunctions of literals, and for a target of false a
+	 * disjunction of conjunctions of literals, whose negation is a conjunction of clauses by De Morgan's laws.
+	 * @param e the expression to check
+	 * @param target the value the expression is required to have
+	 * @return true if addClauses would accept the expression
+	 */
+	public static boolean isClauseForm(Expression e, boolean target)
+	{
+		Operator outer = target ? Operator.AND : Operator.OR;
+		if (e.getOperator() == Operator.NEG && !isLiteral(e))
+			return isClauseForm(((Function) e).getTerm(0), !target);
+		if (e.getOperator() == outer)
+			return ((Function) e).getTerms().stream().allMatch(t -> isClauseForm(t, target));
+		return isClause(e, target);
+	}
+
+	private static boolean isClause(Expression e, boolean target)
+	{
+		Operator inner = target ? Operator.OR : Operator.AND;
+		if (e.getOperator() == Operator.NEG && !isLiteral(e))
+			return isClause(((Function) e).getTerm(0), !target);
+		if (e.getOperator() == inner)
+			return ((Function) e).getTerms().stream().allMatch(t -> isClause(t, target));
+		return isLiteral(e);
+	}
+
+	/**
+	 * Whether an expression is a variable, a constant, or a negation of one
+	 */
+	private static boolean isLiteral(Expression e)
+	{
+		while (e.getOperator() == Operator.NEG)
+			e = ((Function) e).getTerm(0);
+		return e instanceof Literal || e instanceof Constant;
+	}
+
+	/**
+	 * Adds clauses read straight off an expression already in clause form, with no new variables
+	 * @param e an expression accepted by isClauseForm
+	 * @param target the value the expression is required to have
+	 */
+	public void addClauses(Expression e, boolean target)
+	{
+		if (!isClauseForm(e, target))
+			throw new IllegalArgumentException(e+" is not in clause form");
+		addClauseForm(e, target);
+	}
+
+	private void addClauseForm(Expression e, boolean target)
+	{
+		Operator outer = target ? Operator.AND : Operator.OR;
+		if (e.getOperator() == Operator.NEG && !isLiteral(e))
+			addClauseForm(((Function) e).getTerm(0), !target);
+		else if (e.getOperator() == outer)
+			((Function) e).getTerms().forEach(t -> addClauseForm(t, target));
+		else
+		{
+			List<Integer> clause = new ArrayList<>();
+			if (!collectClause(e, target, clause))
+				cnf.addClause(clause.stream().mapToInt(Integer::intValue).toArray());
+		}
+	}
+
+	/**
+	 * Collects the literals of a clause, each negated when the target is false
+	 * @return true if the clause contains a constant that satisfies it
+	 */
+	private boolean collectClause(Expression e, boolean target, List<Integer> clause)
+	{
+		if (isLiteral(e))
+		{
+			int l = encode(e);
+			if (l == trueVariable || l == -trueVariable)
+				return (l == trueVariable) == target;
+			clause.add(target ? l : -l);
+			return false;
+		}
+		if (e.getOperator() == Operator.NEG)
+			return collectClause(((Function) e).getTerm(0), !target, clause);
+		for (Expression t : ((Function) e).getTerms())
+			if (collectClause(t, target, clause))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Gets the Cnf variable of each variable of the encoded expressions
+	 * @return an unmodifiable Map from each variable to its number
+	 */
+	public Map<Literal, Integer> getVariables()
+	{
+		return Collections.unmodifiableMap(variables);
+	}
+
+	/**
+	 * Gets the clauses defining the variable of each encoded Function.  Nothing else constrains a gate variable
+	 * until it's used, so a gate nobody refers to can be dropped along with its definition.
+	 * @return an unmodifiable Map from each gate variable to the indices in the Cnf of its defining clauses
+	 */
+	public Map<Integer, List<Integer>> getDefinitions()
+	{
+		return Collections.unmodifiableMap(definitions);
+	}
+
+	/**
+	 * Translates an assignment of the Cnf's variables back into an assignment of the encoded expressions' variables
+	 * @param model whether each numbered variable is true
+	 * @return the value of every variable of the encoded expressions
+	 */
+	public Map<Literal, Boolean> decode(IntPredicate model)
+	{
+		Map<Literal, Boolean> ans = new HashMap<>();
+		variables.forEach((l, v) -> ans.put(l, model.test(v)));
+		return ans;
+	}
+}
@@ -0,0 +1,137 @@
+package logic.sat;
+
+import java.util.Arrays;
+
+/**
+ * Solves 2-CNF in linear time.  Each clause (a∨b) becomes the implications ¬a→b and ¬b→a, and the clauses are
+ * satisfiable exactly when no variable is in the same strongly connected component as its negation.  Components
+ * are found with an iterative version of Tarjan's algorithm, which numbers them in reverse topological order,
+ * so setting each literal true when its component comes before its negation's gives a model.
+ * @author Jallibad
+ *
+ */
+final class TwoSatSolver
+{
+	private TwoSatSolver()
+	{
+	}
+
+	/**
+	 * Solves clauses with at most two literals each
+	 * @param cnf the clauses
+	 * @return a value for every variable, indexed by variable number, or null if the clauses are unsatisfiable
+	 */
+	static boolean[] solve(Cnf cnf)
+	{
+		int n = cnf.numVariables();
+		// Literal v is node 2(v-1), literal -v is node 2(v-1)+1
+		int[] degree = new int[2*n+1];
+		for (int[] clause : cnf.getClauses())
+		{
+			if (clause.length == 0)
+				return null;
+			int a = clause[0];
+			int b = clause[clause.length-1];
+			degree[node(-a)+1]++;
+			degree[node(-b)+1]++;
+		}
+		for (int i=1; i<degree.length; ++i)
+			degree[i] += degree[i-1];
+		int[] edges = new int[degree[2*n]];
+		int[] fill = Arrays.copyOf(degree, 2*n);
+		for (int[] clause : cnf.getClauses())
+		{
+			int a = clause[0];
+			int b = clause[clause.length-1];
+			edges[fill[node(-a)]++] = node(b);
+			edges[fill[node(-b)]++] = node(a);
+		}
+
+		int[] component = tarjan(2*n, degree, edges);
+		boolean[] ans = new boolean[n+1];
+		for (int v=1; v<=n; ++v)
+		{
+			if (component[node(v)] == component[node(-v)])
+				return null;
+			ans[v] = component[node(v)] < component[node(-v)];
+		}
+		return ans;
+	}
+
+	/**
+	 * The node of the implication graph for a literal
+	 */
+	static int node(int literal)
+	{
+		return literal > 0 ? 2*(literal-1) : 2*(-literal-1)+1;
+	}
+
+	/**
+	 * Finds strongly connected components without recursion, so long implication chains can't overflow the stack
+	 * @return the component of each node, numbered in the order they are completed
+	 */
+	static int[] tarjan(int numNodes, int[] start, int[] edges)
+	{
+		int[] index = new int[numNodes];
+		int[] low = new int[numNodes];
+		int[] component = new int[numNodes];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[numNodes];
+		int[] stack = new int[numNodes];
+		int stackSize = 0;
+		int[] callStack = new int[numNodes];
+		int[] nextEdge = new int[numNodes];
+		int counter = 0;
+		int components = 0;
+
+		for (int root=0; root<numNodes; ++root)
+		{
+			if (index[root] != -1)
+				continue;
+			int depth = 0;
+			callStack[depth++] = root;
+			index[root] = low[root] = counter++;
+			nextEdge[root] = start[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth > 0)
+			{
+				int v = callStack[depth-1];
+				if (nextEdge[v] < start[v+1])
+				{
+					int w = edges[nextEdge[v]++];
+					if (index[w] == -1)
+					{
+						index[w] = low[w] = counter++;
+						nextEdge[w] = start[w];
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[depth++] = w;
+					}
+					else if (onStack[w])
+						low[v] = Math.min(low[v], index[w]);
+					continue;
+				}
+				depth--;
+				if (depth > 0)
+				{
+					int parent = callStack[depth-1];
+					low[parent] = Math.min(low[parent], low[v]);
+				}
+				if (low[v] == index[v])
+				{
+					int w;
+					do
+					{
+						w = stack[--stackSize];
+						onStack[w] = false;
+						component[w] = components;
+					}
+					while (w != v);
+					components++;
+				}
+			}
+		}
+		return component;
+	}
+}
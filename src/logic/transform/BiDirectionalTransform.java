@@ -46,7 +46,7 @@ public interface BiDirectionalTransform extends Transform
 	public default TransformSteps transformLeftWithSteps(Expression orig)
 	{
 		TransformSteps ans = new TransformSteps(orig);
-		if (left().matches(orig))
+		if (inLeft(orig))
 			ans.addStep(this);
 		return ans;
 	}
@@ -58,7 +58,7 @@ public interface BiDirectionalTransform extends Transform
 	 */
 	public default void transformLeftWithSteps(TransformSteps steps)
 	{
-		if (left().matches(steps.result()))
+		if (inLeft(steps.result()))
 			steps.addStep(this);
 	}
 	
@@ -85,7 +85,7 @@ public interface BiDirectionalTransform extends Transform
 	public default TransformSteps transformRightWithSteps(Expression orig)
 	{
 		TransformSteps ans = new TransformSteps(orig);
-		if (right().matches(orig))
+		if (inRight(orig))
 			ans.addStep(this);
 		return ans;
 	}
@@ -97,7 +97,7 @@ public interface BiDirectionalTransform extends Transform
 	 */
 	public default void transformRightWithSteps(TransformSteps steps)
 	{
-		if (right().matches(steps.result()))
+		if (inRight(steps.result()))
 			steps.addStep(this);
 	}
 	
@@ -0,0 +1,698 @@
+package logic.transform;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * An e-graph, a compact representation of many equivalent expressions at once.  Expressions known to be equal are
+ * kept in the same e-class, and each e-class holds e-nodes, an operator applied to e-classes rather than to
+ * expressions, so every way of writing every subterm is shared.  E-nodes are hash-consed, so adding an expression
+ * that's already represented costs nothing, and merging two e-classes is followed by rebuild, which merges
+ * whatever else became equal by congruence and restores the hash-consing.
+ *
+ * E-classes are numbered from 0, and an e-class merged into another one is found under the other's number by
+ * find.
+ *
+ * An e-graph can also be created to explain itself, keeping a ProofForest of why its e-classes are equal, so
+ * explain can give the rule applications turning one expression into another one in the same e-class.  Only
+ * add and EqualitySaturation can add to it then, since an e-class merged by hand would have nothing to explain
+ * it.  Which e-classes there are, and how they're numbered, is the same either way.
+ * @author Jallibad
+ *
+ */
+public class EGraph
+{
+	private int[] unionFind = new int[16];
+	private final List<List<Node>> nodes = new ArrayList<>();
+	private final List<List<Parent>> parents = new ArrayList<>();
+	private final Map<Node, Integer> hashcons = new HashMap<>();
+	private final List<Integer> worklist = new ArrayList<>();
+	private final ProofForest proofs;
+	// The term of each hash-consed e-node, when the e-graph explains itself
+	private final Map<Node, Integer> nodeTerms;
+
+	/**
+	 * Creates an empty e-graph
+	 */
+	public EGraph()
+	{
+		this(false);
+	}
+
+	/**
+	 * Creates an empty e-graph
+	 * @param explains whether to keep track of why e-classes are equal, for explain
+	 */
+	public EGraph(boolean explains)
+	{
+		proofs = explains ? new ProofForest() : null;
+		nodeTerms = explains ? new HashMap<>() : null;
+	}
+
+	/**
+	 * Whether the e-graph keeps track of why e-classes are equal
+	 * @return true if the e-graph was created to explain itself
+	 */
+	public boolean explains()
+	{
+		return proofs != null;
+	}
+
+	/**
+	 * Adds an expression, sharing every subterm that's already represented
+	 * @param e the expression to add
+	 * @return the e-class of the expression
+	 */
+	public int add(Expression e)
+	{
+		return add(e, new IdentityHashMap<>())[0];
+	}
+
+	/**
+	 * @return the e-class of the expression, followed by its term, which is -1 unless the e-graph explains itself
+	 */
+	private int[] add(Expression e, Map<Expression, int[]> added)
+	{
+		int[] known = added.get(e);
+		if (known != null)
+			return known;
+		Node n;
+		if (e instanceof Function)
+		{
+			int[] children = new int[e.getOperator().numArguments];
+			int[] terms = new int[children.length];
+			for (int i=0; i<children.length; ++i)
+			{
+				int[] term = add(((Function) e).getTerm(i), added);
+				children[i] = term[0];
+				terms[i] = term[1];
+			}
+			n = node(e.getOperator(), null, children, terms);
+		}
+		else
+			n = node(null, e, new int[0], new int[0]);
+		int[] ans = {add(n), n.term};
+		added.put(e, ans);
+		return ans;
+	}
+
+	/**
+	 * An e-node, along with the concrete term it was added as when the e-graph explains itself
+	 * @param terms the term each child was added as
+	 */
+	private Node node(Operator operator, Expression leaf, int[] children, int[] terms)
+	{
+		return new Node(operator, leaf, children, proofs == null ? -1 : proofs.term(operator, leaf, terms));
+	}
+
+	/**
+	 * Adds an instance of a pattern with its variables bound to e-classes
+	 * @param pattern the pattern to instantiate
+	 * @param bindings the e-class of every Literal in the pattern
+	 * @return the e-class of the instance
+	 * @throws IllegalStateException if the e-graph explains itself
+	 */
+	public int instantiate(Expression pattern, Map<Literal, Integer> bindings)
+	{
+		if (proofs != null)
+			throw new IllegalStateException("An e-graph that explains itself can only be added to by rewrite");
+		if (pattern instanceof Literal)
+			return find(bindings.get(pattern));
+		if (pattern instanceof Constant)
+			return add(new Node(null, pattern, new int[0], -1));
+		int[] children = new int[pattern.getOperator().numArguments];
+		for (int i=0; i<children.length; ++i)
+			children[i] = instantiate(((Function) pattern).getTerm(i), bindings);
+		return add(new Node(pattern.getOperator(), null, children, -1));
+	}
+
+	private int add(Node n)
+	{
+		Node canonical = canonicalize(n);
+		Integer known = hashcons.get(canonical);
+		if (known != null)
+		{
+			// The new term only differs from the e-node already there in terms that are equal
+			if (proofs != null)
+				proofs.join(n.term, nodeTerms.get(canonical), null, null);
+			return find(known);
+		}
+		int id = nodes.size();
+		if (id == unionFind.length)
+			unionFind = Arrays.copyOf(unionFind, 2*id);
+		unionFind[id] = id;
+		nodes.add(new ArrayList<>(Collections.singletonList(canonical)));
+		parents.add(new ArrayList<>());
+		hashcons.put(canonical, id);
+		if (nodeTerms != null)
+			nodeTerms.put(canonical, canonical.term);
+		for (int child : canonical.children)
+			parents.get(child).add(new Parent(canonical, id));
+		return id;
+	}
+
+	/**
+	 * Finds the representative of an e-class
+	 * @param id the number an e-class was given
+	 * @return the number of the e-class it's been merged into
+	 */
+	public int find(int id)
+	{
+		while (unionFind[id] != id)
+		{
+			unionFind[id] = unionFind[unionFind[id]];
+			id = unionFind[id];
+		}
+		return id;
+	}
+
+	/**
+	 * Records that two e-classes are equal.  Congruences that follow from it are only found by rebuild.
+	 * @param a an e-class
+	 * @param b another e-class
+	 * @return true if they weren't already the same e-class
+	 * @throws IllegalStateException if the e-graph explains itself
+	 */
+	public boolean merge(int a, int b)
+	{
+		if (proofs != null)
+			throw new IllegalStateException("An e-graph that explains itself can only be merged by rewrite");
+		return union(a, b);
+	}
+
+	private boolean union(int a, int b)
+	{
+		a = find(a);
+		b = find(b);
+		if (a == b)
+			return false;
+		if (nodes.get(a).size()+parents.get(a).size() < nodes.get(b).size()+parents.get(b).size())
+		{
+			int t = a;
+			a = b;
+			b = t;
+		}
+		unionFind[b] = a;
+		nodes.get(a).addAll(nodes.get(b));
+		parents.get(a).addAll(parents.get(b));
+		nodes.set(b, null);
+		parents.set(b, null);
+		worklist.add(a);
+		return true;
+	}
+
+	/**
+	 * Merges every pair of e-nodes that became equal because their e-classes were merged, until the e-graph is
+	 * closed under congruence again
+	 */
+	public void rebuild()
+	{
+		while (!worklist.isEmpty())
+		{
+			List<Integer> todo = new ArrayList<>(worklist);
+			worklist.clear();
+			for (int id : todo)
+				if (find(id) == id)
+					repair(id);
+		}
+		for (int id=0; id<nodes.size(); ++id)
+			if (find(id) == id)
+			{
+				Set<Node> canonical = new LinkedHashSet<>();
+				for (Node n : nodes.get(id))
+					canonical.add(canonicalize(n));
+				nodes.set(id, new ArrayList<>(canonical));
+			}
+	}
+
+	private void repair(int id)
+	{
+		// Merging below can add to this e-class's parents, so work on a copy
+		List<Parent> uses = new ArrayList<>(parents.get(id));
+		parents.get(id).clear();
+		for (Parent p : uses)
+		{
+			hashcons.remove(p.node);
+			if (nodeTerms != null)
+				nodeTerms.remove(p.node);
+		}
+		Map<Node, Parent> unique = new LinkedHashMap<>();
+		for (Parent p : uses)
+		{
+			Node n = canonicalize(p.node);
+			Parent other = unique.get(n);
+			if (other != null)
+			{
+				if (proofs != null)
+					proofs.join(other.node.term, n.term, null, null);
+				union(other.id, p.id);
+			}
+			unique.put(n, new Parent(n, find(p.id)));
+		}
+		unique.forEach((n, p) ->
+		{
+			hashcons.put(n, find(p.id));
+			if (nodeTerms != null)
+				nodeTerms.put(n, n.term);
+			parents.get(find(id)).add(new Parent(n, find(p.id)));
+		});
+	}
+
+	private Node canonicalize(Node n)
+	{
+		int[] children = new int[n.children.length];
+		for (int i=0; i<children.length; ++i)
+			children[i] = find(n.children[i]);
+		return new Node(n.operator, n.leaf, children, n.term);
+	}
+
+	/**
+	 * The representatives of every e-class
+	 * @return the e-classes in the order they were created
+	 */
+	public List<Integer> classes()
+	{
+		List<Integer> ans = new ArrayList<>();
+		for (int id=0; id<nodes.size(); ++id)
+			if (find(id) == id)
+				ans.add(id);
+		return ans;
+	}
+
+	/**
+	 * The number of distinct e-nodes, which is how much memory the e-graph takes
+	 * @return the number of e-nodes
+	 */
+	public int numNodes()
+	{
+		return hashcons.size();
+	}
+
+	/**
+	 * Finds every way a pattern matches some expression in an e-class
+	 * @param pattern the pattern, where every Literal stands for any e-class and a repeated Literal for the same one
+	 * @param id the e-class to match
+	 * @return the e-class of every Literal, for each way the pattern matches
+	 */
+	public List<Map<Literal, Integer>> match(Expression pattern, int id)
+	{
+		Map<Literal, Integer> slots = new HashMap<>();
+		pattern.getVariables().forEach(l -> slots.put(l, slots.size()));
+		int[] bindings = new int[slots.size()];
+		Arrays.fill(bindings, -1);
+		List<Map<Literal, Integer>> ans = new ArrayList<>();
+		match(pattern, slots, bindings, id, () ->
+		{
+			Map<Literal, Integer> m = new HashMap<>();
+			slots.forEach((l, i) -> m.put(l, bindings[i]));
+			ans.add(m);
+		});
+		return ans;
+	}
+
+	/**
+	 * Finds every way a pattern matches some expression in an e-class, binding the pattern's variables in place
+	 * @param slots the index in bindings of each Literal in the pattern
+	 * @param bindings the e-class bound to each Literal, -1 if it's unbound, which holds a match while found runs
+	 * and is restored afterwards
+	 * @param found called for every match
+	 */
+	void match(Expression pattern, Map<Literal, Integer> slots, int[] bindings, int id, Runnable found)
+	{
+		solve(new Goal(pattern, id, null), slots, bindings, found);
+	}
+
+	private void solve(Goal goal, Map<Literal, Integer> slots, int[] bindings, Runnable found)
+	{
+		if (goal == null)
+		{
+			found.run();
+			return;
+		}
+		Expression pattern = goal.pattern;
+		int id = find(goal.id);
+		if (pattern instanceof Literal)
+		{
+			int slot = slots.get(pattern);
+			if (bindings[slot] < 0)
+			{
+				bindings[slot] = id;
+				solve(goal.next, slots, bindings, found);
+				bindings[slot] = -1;
+			}
+			else if (find(bindings[slot]) == id)
+				solve(goal.next, slots, bindings, found);
+			return;
+		}
+		for (Node n : nodes.get(id))
+		{
+			if (pattern instanceof Constant)
+			{
+				if (pattern.equals(n.leaf))
+				{
+					solve(goal.next, slots, bindings, found);
+					return;
+				}
+				continue;
+			}
+			if (n.operator != pattern.getOperator())
+				continue;
+			Goal next = goal.next;
+			for (int i=n.children.length-1; i>=0; --i)
+				next = new Goal(((Function) pattern).getTerm(i), n.children[i], next);
+			solve(next, slots, bindings, found);
+		}
+	}
+
+	/**
+	 * Adds an instance of a pattern with its variables bound in place
+	 * @param slots the index in bindings of each Literal in the pattern
+	 * @param bindings the e-class bound to each Literal
+	 */
+	int instantiate(Expression pattern, Map<Literal, Integer> slots, int[] bindings)
+	{
+		if (pattern instanceof Literal)
+			return find(bindings[slots.get(pattern)]);
+		if (pattern instanceof Constant)
+			return add(new Node(null, pattern, new int[0], -1));
+		int[] children = new int[pattern.getOperator().numArguments];
+		for (int i=0; i<children.length; ++i)
+			children[i] = instantiate(((Function) pattern).getTerm(i), slots, bindings);
+		return add(new Node(pattern.getOperator(), null, children, -1));
+	}
+
+	/**
+	 * The concrete terms a match was found at, for rewrite.  Has to be called while the match is found, before
+	 * anything is merged, since it only looks the match up.
+	 * @param slots the index in bindings of each Literal in the pattern
+	 * @param bindings the e-class bound to each Literal
+	 * @return the term standing for each Literal, followed by the term the pattern matched, or null if the
+	 * e-graph doesn't explain itself
+	 */
+	int[] matchTerms(Expression pattern, Map<Literal, Integer> slots, int[] bindings)
+	{
+		if (proofs == null)
+			return null;
+		int[] terms = new int[slots.size()+1];
+		for (int i=0; i<bindings.length; ++i)
+			terms[i] = nodes.get(find(bindings[i])).get(0).term;
+		terms[slots.size()] = lookUp(pattern, slots, bindings, terms, new IdentityHashMap<>())[1];
+		return terms;
+	}
+
+	/**
+	 * Merges an e-class with the instance of a rule's replacement it matched, recording the rule as the reason
+	 * when the e-graph explains itself.  Congruences that follow from it are only found by rebuild.
+	 * @param id the e-class the rule's pattern matched
+	 * @param slots the index in bindings of each Literal in the pattern
+	 * @param bindings the e-class bound to each Literal
+	 * @param terms the terms of the match, from matchTerms
+	 * @param rule the rule
+	 * @param side the side of the rule the pattern is
+	 * @return true if they weren't already the same e-class
+	 */
+	boolean rewrite(int id, Expression replacement, Map<Literal, Integer> slots, int[] bindings, int[] terms, BiDirectionalTransform rule, RuleIndex.Side side)
+	{
+		if (proofs == null)
+			return union(id, instantiate(replacement, slots, bindings));
+		int[] instance = instantiate(replacement, slots, bindings, terms);
+		proofs.join(terms[terms.length-1], instance[1], rule, side);
+		return union(id, instance[0]);
+	}
+
+	/**
+	 * Adds an instance of a pattern with its variables bound in place, and with the terms from matchTerms
+	 * @return the e-class of the instance, followed by its term
+	 */
+	private int[] instantiate(Expression pattern, Map<Literal, Integer> slots, int[] bindings, int[] terms)
+	{
+		if (pattern instanceof Literal)
+		{
+			int slot = slots.get(pattern);
+			return new int[] {find(bindings[slot]), terms[slot]};
+		}
+		Node n;
+		if (pattern instanceof Constant)
+			n = node(null, pattern, new int[0], new int[0]);
+		else
+		{
+			int[] children = new int[pattern.getOperator().numArguments];
+			int[] childTerms = new int[children.length];
+			for (int i=0; i<children.length; ++i)
+			{
+				int[] child = instantiate(((Function) pattern).getTerm(i), slots, bindings, terms);
+				children[i] = child[0];
+				childTerms[i] = child[1];
+			}
+			n = node(pattern.getOperator(), null, children, childTerms);
+		}
+		return new int[] {add(n), n.term};
+	}
+
+	/**
+	 * Finds an expression that's already represented, without adding anything to the e-classes
+	 * @param slots the index in bindings of each Literal that stands for an e-class, every other Literal stands
+	 * for itself
+	 * @return the e-class of the expression, followed by its term
+	 */
+	private int[] lookUp(Expression e, Map<Literal, Integer> slots, int[] bindings, int[] terms, Map<Expression, int[]> found)
+	{
+		int[] ans = found.get(e);
+		if (ans != null)
+			return ans;
+		Integer slot = slots.get(e);
+		if (slot != null)
+			ans = new int[] {find(bindings[slot]), terms[slot]};
+		else
+		{
+			int[] children = new int[e instanceof Function ? e.getOperator().numArguments : 0];
+			int[] childTerms = new int[children.length];
+			for (int i=0; i<children.length; ++i)
+			{
+				int[] child = lookUp(((Function) e).getTerm(i), slots, bindings, terms, found);
+				children[i] = child[0];
+				childTerms[i] = child[1];
+			}
+			Node n = node(e.getOperator(), e instanceof Function ? null : e, children, childTerms);
+			Integer known = hashcons.get(n);
+			if (known == null)
+				throw new IllegalArgumentException(e+" isn't in the e-graph");
+			proofs.join(n.term, nodeTerms.get(n), null, null);
+			ans = new int[] {find(known), n.term};
+		}
+		found.put(e, ans);
+		return ans;
+	}
+
+	/**
+	 * The rule applications turning one expression into another, where both have been added or extracted and
+	 * are in the same e-class.  Every step rewrites one subterm with one of the rules the e-graph was rewritten
+	 * with, in one direction.
+	 * @param from the expression to start from
+	 * @param to an expression equal to it
+	 * @param limit the most steps to give, since a proof repeats the proof of a subterm everywhere that subterm
+	 * is used, and can be exponentially long
+	 * @return the steps from one to the other, or nothing if there are more than limit of them
+	 * @throws IllegalStateException if the e-graph doesn't explain itself
+	 * @throws IllegalArgumentException if either expression isn't in the e-graph, or they aren't in the same
+	 * e-class
+	 */
+	public Optional<TransformSteps> explain(Expression from, Expression to, long limit)
+	{
+		if (proofs == null)
+			throw new IllegalStateException("The e-graph wasn't created to explain itself");
+		Map<Expression, int[]> found = new IdentityHashMap<>();
+		int a = lookUp(from, Collections.emptyMap(), null, null, found)[1];
+		int b = lookUp(to, Collections.emptyMap(), null, null, found)[1];
+		if (proofs.length(a, b) > limit)
+			return Optional.empty();
+		TransformSteps ans = new TransformSteps(from);
+		proofs.explain(a, b, new ArrayList<>(), ans);
+		return Optional.of(ans);
+	}
+
+	/**
+	 * Extracts the cheapest expression in an e-class.  Subterms are shared wherever the same e-class is used
+	 * twice.
+	 * @param id the e-class to extract from
+	 * @param cost the cost of each expression, which has to be more than the cost of any of its terms
+	 * @return the cheapest expression
+	 */
+	public Expression extract(int id, CostFunction cost)
+	{
+		// Costs only ever go down, so iterating until nothing changes finds the cheapest e-node of each e-class
+		long[] best = new long[nodes.size()];
+		Node[] choice = new Node[nodes.size()];
+		Arrays.fill(best, Long.MAX_VALUE);
+		List<Integer> classes = classes();
+		for (boolean changed = true; changed;)
+		{
+			changed = false;
+			for (int c : classes)
+				for (Node n : nodes.get(c))
+				{
+					long[] termCosts = new long[n.children.length];
+					boolean known = true;
+					for (int i=0; i<termCosts.length && known; ++i)
+					{
+						termCosts[i] = best[find(n.children[i])];
+						known = termCosts[i] != Long.MAX_VALUE;
+					}
+					if (!known)
+						continue;
+					long total = n.operator == null ? cost.leaf(n.leaf) : cost.function(n.operator, termCosts);
+					if (total < best[c])
+					{
+						best[c] = total;
+						choice[c] = n;
+						changed = true;
+					}
+				}
+		}
+		return build(find(id), choice, new HashMap<>());
+	}
+
+	private Expression build(int id, Node[] choice, Map<Integer, Expression> built)
+	{
+		Expression ans = built.get(id);
+		if (ans != null)
+			return ans;
+		Node n = choice[id];
+		if (n.operator == null)
+			ans = n.leaf;
+		else
+		{
+			List<Expression> terms = new ArrayList<>();
+			for (int child : n.children)
+				terms.add(build(find(child), choice, built));
+			ans = Function.constructUnsafe(n.operator, terms);
+		}
+		built.put(id, ans);
+		return ans;
+	}
+
+	/**
+	 * The cost of an expression, found from the costs of its terms, that extract minimizes
+	 * @author Jallibad
+	 *
+	 */
+	public interface CostFunction extends Serializable
+	{
+		/**
+		 * The cost of complexity(), one for every Literal, Constant and operator
+		 */
+		public static final CostFunction COMPLEXITY = new CostFunction()
+		{
+			@Override
+			public long leaf(Expression leaf)
+			{
+				return leaf.complexity();
+			}
+
+			@Override
+			public long function(Operator operator, long[] termCosts)
+			{
+				return Arrays.stream(termCosts).sum()+1;
+			}
+		};
+
+		/**
+		 * The cost of a Literal or Constant
+		 * @param leaf the Literal or Constant
+		 * @return its cost
+		 */
+		public long leaf(Expression leaf);
+
+		/**
+		 * The cost of a Function
+		 * @param operator the operator of the Function
+		 * @param termCosts the cost of each term
+		 * @return its cost, which has to be more than each term's
+		 */
+		public long function(Operator operator, long[] termCosts);
+	}
+
+	/**
+	 * An operator applied to e-classes, or a Literal or Constant.  When the e-graph explains itself, it also has
+	 * the concrete term it was added as, whose terms are in its e-classes, which doesn't take part in equality.
+	 */
+	private static final class Node
+	{
+		private final Operator operator;
+		private final Expression leaf;
+		private final int[] children;
+		private final int term;
+
+		private Node(Operator operator, Expression leaf, int[] children, int term)
+		{
+			this.operator = operator;
+			this.leaf = leaf;
+			this.children = children;
+			this.term = term;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Node))
+				return false;
+			Node other = (Node) o;
+			return operator == other.operator && (leaf == null ? other.leaf == null : leaf.equals(other.leaf))
+				&& Arrays.equals(children, other.children);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31*(31*(operator == null ? 0 : operator.hashCode())+(leaf == null ? 0 : leaf.hashCode()))+Arrays.hashCode(children);
+		}
+	}
+
+	/**
+	 * A subpattern left to match against an e-class
+	 */
+	private static final class Goal
+	{
+		private final Expression pattern;
+		private final int id;
+		private final Goal next;
+
+		private Goal(Expression pattern, int id, Goal next)
+		{
+			this.pattern = pattern;
+			this.id = id;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * An e-node using an e-class, along with the e-class the e-node is in
+	 */
+	private static final class Parent
+	{
+		private final Node node;
+		private final int id;
+
+		private Parent(Node node, int id)
+		{
+			this.node = node;
+			this.id = id;
+		}
+	}
+}
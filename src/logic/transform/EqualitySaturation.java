@@ -0,0 +1,327 @@
+package logic.transform;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+import logic.OperatorTrait;
+
+/**
+ * A Transform that finds the cheapest expression equivalent to the original under a set of rules.  Rather than
+ * committing to one rewrite at a time, every rule is applied in both directions to everything in an EGraph, so
+ * every expression reachable so far is kept at once and nothing done is ever undone.  Once no rule adds anything
+ * new, or the node or iteration limit is reached, the cheapest expression is extracted.
+ *
+ * Rules are matched syntactically, so commutativity and associativity are added as rules of their own for every
+ * operator with those traits.
+ *
+ * transformWithSteps saturates an EGraph that explains itself instead, which ends up with the same e-classes, so
+ * it extracts the same expression, and then gives the rule applications that got there from the original.  Those
+ * can be exponentially many, so past STEP_LIMIT of them the transform is a single step.
+ * @author Jallibad
+ *
+ */
+public class EqualitySaturation implements Transform
+{
+	private static final long serialVersionUID = 3318275904217735190L;
+
+	/**
+	 * The default number of e-nodes after which no more rules are applied
+	 */
+	public static final int DEFAULT_NODE_LIMIT = 5000;
+
+	/**
+	 * The default number of rounds of applying every rule
+	 */
+	public static final int DEFAULT_ITERATION_LIMIT = 20;
+
+	/**
+	 * The number of matches a rule may have in a round before it's banned
+	 */
+	private static final int MATCH_LIMIT = 1000;
+
+	/**
+	 * The number of rounds a rule is banned for the first time
+	 */
+	private static final int BAN_LENGTH = 2;
+
+	/**
+	 * The most rewrites transformWithSteps gives before giving the whole transform as a single step instead
+	 */
+	private static final int STEP_LIMIT = 10000;
+
+	private final List<BiDirectionalTransform> rules;
+	// Each rule in both directions
+	private final List<Rewrite> rewrites = new ArrayList<>();
+	private final int nodeLimit;
+	private final int iterationLimit;
+	private final EGraph.CostFunction cost;
+
+	/**
+	 * Creates a Transform extracting the expression with the least complexity() with the default limits
+	 * @param rules the rules, applied in both directions
+	 */
+	public EqualitySaturation(List<? extends BiDirectionalTransform> rules)
+	{
+		this(rules, DEFAULT_NODE_LIMIT, DEFAULT_ITERATION_LIMIT, EGraph.CostFunction.COMPLEXITY);
+	}
+
+	/**
+	 * Creates a Transform extracting the cheapest expression
+	 * @param rules the rules, applied in both directions
+	 * @param nodeLimit the number of e-nodes after which no more rules are applied
+	 * @param iterationLimit the number of rounds of applying every rule
+	 * @param cost the cost to minimize
+	 */
+	public EqualitySaturation(List<? extends BiDirectionalTransform> rules, int nodeLimit, int iterationLimit, EGraph.CostFunction cost)
+	{
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		this.nodeLimit = nodeLimit;
+		this.iterationLimit = iterationLimit;
+		this.cost = cost;
+		for (BiDirectionalTransform rule : rules)
+		{
+			addRewrite(rule, RuleIndex.Side.LEFT);
+			addRewrite(rule, RuleIndex.Side.RIGHT);
+		}
+		Literal p = Literal.createUnsafe("P"), q = Literal.createUnsafe("Q"), r = Literal.createUnsafe("R");
+		for (Operator op : Operator.values())
+		{
+			// Commutativity from right to left is the same rewrite again
+			if (op.hasTrait(OperatorTrait.COMMUTATIVE))
+				addRewrite(new TraitRule(binary(op, p, q), binary(op, q, p), "commutativity"), RuleIndex.Side.LEFT);
+			if (op.hasTrait(OperatorTrait.ASSOCIATIVE))
+			{
+				TraitRule associativity = new TraitRule(binary(op, binary(op, p, q), r), binary(op, p, binary(op, q, r)), "associativity");
+				addRewrite(associativity, RuleIndex.Side.LEFT);
+				addRewrite(associativity, RuleIndex.Side.RIGHT);
+			}
+		}
+	}
+
+	/**
+	 * Adds a rule in one direction, unless its replacement needs a variable the pattern doesn't bind
+	 */
+	private void addRewrite(BiDirectionalTransform rule, RuleIndex.Side side)
+	{
+		Rewrite rewrite = new Rewrite(rule, side);
+		if (rewrite.pattern.getVariables().containsAll(rewrite.replacement.getVariables()))
+			rewrites.add(rewrite);
+	}
+
+	private static Expression binary(Operator op, Expression a, Expression b)
+	{
+		return Function.constructUnsafe(op, Arrays.asList(a, b));
+	}
+
+	/**
+	 * Getter method for the rules
+	 * @return an unmodifiable List of the rules
+	 */
+	public List<BiDirectionalTransform> getRules()
+	{
+		return rules;
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		EGraph graph = new EGraph();
+		int root = graph.add(orig);
+		saturate(graph);
+		return graph.extract(root, cost);
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		EGraph graph = new EGraph(true);
+		int root = graph.add(orig);
+		saturate(graph);
+		return graph.explain(orig, graph.extract(root, cost), STEP_LIMIT).orElseGet(() ->
+		{
+			TransformSteps ans = new TransformSteps(orig);
+			ans.addStep(this);
+			return ans;
+		});
+	}
+
+	/**
+	 * Finds the rewrites turning one expression into another, by saturating an EGraph holding both of them
+	 * @param from the expression to start from
+	 * @param to an expression equivalent to from
+	 * @return the rewrites, or an empty Optional if the rules didn't show the expressions are equal within the
+	 * limits, or if it takes more than STEP_LIMIT rewrites
+	 */
+	public Optional<TransformSteps> prove(Expression from, Expression to)
+	{
+		EGraph graph = new EGraph(true);
+		int a = graph.add(from);
+		int b = graph.add(to);
+		saturate(graph);
+		if (graph.find(a) != graph.find(b))
+			return Optional.empty();
+		return graph.explain(from, to, STEP_LIMIT);
+	}
+
+	/**
+	 * Applies every rule to every e-class, in rounds, until a round adds nothing new or a limit is reached.  Each
+	 * round finds every match before applying any of them, so the order of the rules doesn't matter.
+	 *
+	 * Rules like associativity can match more and more each round without ever getting anywhere, and would use
+	 * up the whole node limit by themselves.  So a rule that matches more than MATCH_LIMIT times in a round is
+	 * banned for BAN_LENGTH rounds instead, with both doubling every time it's banned, which leaves room for
+	 * the other rules to make progress first.
+	 * @param graph the e-graph to saturate
+	 */
+	public void saturate(EGraph graph)
+	{
+		int[] timesBanned = new int[rewrites.size()];
+		int[] bannedUntil = new int[rewrites.size()];
+		for (int round=0; round<iterationLimit && graph.numNodes() < nodeLimit; ++round)
+		{
+			List<Rewrite> matched = new ArrayList<>();
+			List<Integer> classes = new ArrayList<>();
+			List<int[]> bindings = new ArrayList<>();
+			// The terms of each match, when the e-graph explains itself
+			List<int[]> terms = new ArrayList<>();
+			boolean banned = false;
+			for (int r=0; r<rewrites.size(); ++r)
+			{
+				if (bannedUntil[r] > round)
+				{
+					banned = true;
+					continue;
+				}
+				Rewrite rewrite = rewrites.get(r);
+				int limit = MATCH_LIMIT << timesBanned[r];
+				int start = classes.size();
+				int[] b = new int[rewrite.slots.size()];
+				Arrays.fill(b, -1);
+				for (int c : graph.classes())
+				{
+					graph.match(rewrite.pattern, rewrite.slots, b, c, () ->
+					{
+						matched.add(rewrite);
+						classes.add(c);
+						bindings.add(b.clone());
+						terms.add(graph.matchTerms(rewrite.pattern, rewrite.slots, b));
+					});
+					if (classes.size()-start > limit)
+						break;
+				}
+				if (classes.size()-start > limit)
+				{
+					matched.subList(start, matched.size()).clear();
+					classes.subList(start, classes.size()).clear();
+					bindings.subList(start, bindings.size()).clear();
+					terms.subList(start, terms.size()).clear();
+					bannedUntil[r] = round+(BAN_LENGTH << timesBanned[r]);
+					++timesBanned[r];
+					banned = true;
+				}
+			}
+
+			int before = graph.numNodes();
+			boolean merged = false;
+			for (int i=0; i<classes.size() && graph.numNodes() < nodeLimit; ++i)
+			{
+				Rewrite rewrite = matched.get(i);
+				merged |= graph.rewrite(classes.get(i), rewrite.replacement, rewrite.slots, bindings.get(i), terms.get(i), rewrite.rule, rewrite.side);
+			}
+			graph.rebuild();
+			if (!merged && !banned && graph.numNodes() == before)
+				return;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "equality saturation with "+rules;
+	}
+
+	/**
+	 * A rule in one direction, with the variables of its pattern numbered
+	 */
+	private static final class Rewrite implements Serializable
+	{
+		private static final long serialVersionUID = -1842937716553024879L;
+
+		private final BiDirectionalTransform rule;
+		private final RuleIndex.Side side;
+		private final Expression pattern;
+		private final Expression replacement;
+		private final Map<Literal, Integer> slots = new HashMap<>();
+
+		private Rewrite(BiDirectionalTransform rule, RuleIndex.Side side)
+		{
+			this.rule = rule;
+			this.side = side;
+			this.pattern = side == RuleIndex.Side.LEFT ? rule.left() : rule.right();
+			this.replacement = side == RuleIndex.Side.LEFT ? rule.right() : rule.left();
+			pattern.getVariables().forEach(l -> slots.put(l, slots.size()));
+		}
+	}
+
+	/**
+	 * Commutativity or associativity of an operator, which patterns are matched modulo everywhere else, but which
+	 * the e-graph needs as rules
+	 */
+	private static final class TraitRule implements BiDirectionalTransform
+	{
+		private static final long serialVersionUID = 4471382215607929366L;
+
+		private final Expression left;
+		private final Expression right;
+		private final String name;
+
+		private TraitRule(Expression left, Expression right, String name)
+		{
+			this.left = left;
+			this.right = right;
+			this.name = name;
+		}
+
+		@Override
+		public Expression left()
+		{
+			return left;
+		}
+
+		@Override
+		public Expression right()
+		{
+			return right;
+		}
+
+		@Override
+		public Expression transform(Expression orig)
+		{
+			return transformLeft(orig);
+		}
+
+		@Override
+		public TransformSteps transformWithSteps(Expression orig)
+		{
+			TransformSteps ans = new TransformSteps(orig);
+			ans.addStep(this);
+			return ans;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name+" of "+left.getOperator();
+		}
+	}
+}
@@ -1,20 +1,128 @@
 package logic.transform;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Logger;
 
-import logic.ExpParser;
 import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
 
+/**
+ * The rules NormalForm and Simplify are built from.  Each rule is compiled by hand into code that checks the
+ * operators of a term directly and builds the other side with a few constructor calls, so applying a rule never
+ * interprets its patterns, and the patterns themselves are built directly rather than parsed.  left() and right()
+ * are kept for everything that works on patterns generically, and the compiled code has to agree with them.
+ *
+ * ∧ and ∨ are matched modulo associativity and commutativity, like PatternMatcher does, so a distribution rule
+ * applies to any operand of a chain in any position, with P standing for the rest of the chain.
+ * @author Jallibad
+ *
+ */
 public enum InferenceRule implements BiDirectionalTransform
 {
 	// TODO all of these except for DOUBLE_NEGATION are backwards
-	DE_MORGANS_OR("¬(P∨Q)", "(¬P)∧(¬Q)", "DeMorgan's or"),
-	DE_MORGANS_AND("¬(P∧Q)", "(¬P)∨(¬Q)", "DeMorgan's and"),
-	OR_DISTRIBUTION("P∨(Q∧R)", "(P∨Q)∧(P∨R)"),
-	OR_DISTRIBUTION_FLIPPED("(Q∧R)∨P", "(P∨Q)∧(P∨R)"),
-	AND_DISTRIBUTION("P∧(Q∨R)", "(P∧Q)∨(P∧R)"),
-	AND_DISTRIBUTION_FLIPPED("(Q∨R)∧P", "(P∧Q)∨(P∧R)"),
-	DOUBLE_NEGATION("¬¬P", "P");
+	/**
+	 * ¬(P∨Q) ⇔ (¬P)∧(¬Q)
+	 */
+	DE_MORGANS_OR(not(or(Patterns.P, Patterns.Q)), and(not(Patterns.P), not(Patterns.Q)), "DeMorgan's or")
+	{
+		@Override
+		Expression rewriteLeft(Expression e)
+		{
+			if (e.getOperator() != Operator.NEG || term(e, 0).getOperator() != Operator.OR)
+				return null;
+			Expression t = term(e, 0);
+			return and(not(term(t, 0)), not(term(t, 1)));
+		}
+
+		@Override
+		Expression rewriteRight(Expression e)
+		{
+			if (e.getOperator() != Operator.AND || term(e, 0).getOperator() != Operator.NEG || term(e, 1).getOperator() != Operator.NEG)
+				return null;
+			return not(or(term(term(e, 0), 0), term(term(e, 1), 0)));
+		}
+	},
+	/**
+	 * ¬(P∧Q) ⇔ (¬P)∨(¬Q)
+	 */
+	DE_MORGANS_AND(not(and(Patterns.P, Patterns.Q)), or(not(Patterns.P), not(Patterns.Q)), "DeMorgan's and")
+	{
+		@Override
+		Expression rewriteLeft(Expression e)
+		{
+			if (e.getOperator() != Operator.NEG || term(e, 0).getOperator() != Operator.AND)
+				return null;
+			Expression t = term(e, 0);
+			return or(not(term(t, 0)), not(term(t, 1)));
+		}
+
+		@Override
+		Expression rewriteRight(Expression e)
+		{
+			if (e.getOperator() != Operator.OR || term(e, 0).getOperator() != Operator.NEG || term(e, 1).getOperator() != Operator.NEG)
+				return null;
+			return not(and(term(term(e, 0), 0), term(term(e, 1), 0)));
+		}
+	},
+	/**
+	 * P∨(Q∧R) ⇔ (P∨Q)∧(P∨R)
+	 */
+	OR_DISTRIBUTION(or(Patterns.P, and(Patterns.Q, Patterns.R)), and(or(Patterns.P, Patterns.Q), or(Patterns.P, Patterns.R)))
+	{
+		@Override
+		Expression rewriteLeft(Expression e)
+		{
+			return distribute(e, Operator.OR, Operator.AND);
+		}
+
+		@Override
+		Expression rewriteRight(Expression e)
+		{
+			return factor(e, Operator.AND, Operator.OR);
+		}
+	},
+	/**
+	 * P∧(Q∨R) ⇔ (P∧Q)∨(P∧R)
+	 */
+	AND_DISTRIBUTION(and(Patterns.P, or(Patterns.Q, Patterns.R)), or(and(Patterns.P, Patterns.Q), and(Patterns.P, Patterns.R)))
+	{
+		@Override
+		Expression rewriteLeft(Expression e)
+		{
+			return distribute(e, Operator.AND, Operator.OR);
+		}
+
+		@Override
+		Expression rewriteRight(Expression e)
+		{
+			return factor(e, Operator.OR, Operator.AND);
+		}
+	},
+	/**
+	 * ¬¬P ⇔ P
+	 */
+	DOUBLE_NEGATION(not(not(Patterns.P)), Patterns.P)
+	{
+		@Override
+		Expression rewriteLeft(Expression e)
+		{
+			if (e.getOperator() != Operator.NEG || term(e, 0).getOperator() != Operator.NEG)
+				return null;
+			return term(term(e, 0), 0);
+		}
+
+		@Override
+		Expression rewriteRight(Expression e)
+		{
+			return not(not(e));
+		}
+	};
 
 	private final Expression left;
 	private final Expression right;
@@ -26,39 +134,74 @@ public enum InferenceRule implements BiDirectionalTransform
 	 * @param right the right expression, by convention less complex
 	 * @param name the display name
 	 */
-	InferenceRule(String left, String right, String name)
+	InferenceRule(Expression left, Expression right, String name)
 	{
-		// We have to use parseUnsafe because the enum constructor can't throw a checked exception
-		this.left = ExpParser.parseUnsafe(left);
-		this.right = ExpParser.parseUnsafe(right);
+		this.left = left;
+		this.right = right;
 		this.name = name;
 	}
-	
+
 	/**
 	 * InferenceRule constructor, takes the left and right expression
 	 * @param left the left expression, by convention more complex
 	 * @param right the right expression, by convention less complex
 	 */
-	InferenceRule(String left, String right)
+	InferenceRule(Expression left, Expression right)
 	{
-		this.left = ExpParser.parseUnsafe(left);
-		this.right = ExpParser.parseUnsafe(right);
-		name = null;
+		this(left, right, null);
 	}
-	
+
+	/**
+	 * Rewrites a term matching left() into the matching instance of right()
+	 * @param e the term to rewrite
+	 * @return the rewritten term, or null if the term doesn't match
+	 */
+	abstract Expression rewriteLeft(Expression e);
+
+	/**
+	 * Rewrites a term matching right() into the matching instance of left()
+	 * @param e the term to rewrite
+	 * @return the rewritten term, or null if the term doesn't match
+	 */
+	abstract Expression rewriteRight(Expression e);
+
 	public Expression transform(Expression orig)
 	{
-//		left.fillMatches(orig)
-//			.ifPresent(m -> Transform.transform(m, right))
-//			//.orElse(right.fillMatches(orig).orElse(null));
-		if (left.matches(orig))
-			return Transform.transform(left.fillMatches(orig).get(), right);
-		else if (right.matches(orig))
-			return Transform.transform(right.fillMatches(orig).get(), left);
+		Expression ans = rewriteLeft(orig);
+		if (ans == null)
+			ans = rewriteRight(orig);
+		if (ans != null)
+			return ans;
 		LOGGER.warning("An inference rule couldn't be successfully applied");
 		return orig; // TODO this could be a terrible idea
 	}
-	
+
+	@Override
+	public Expression transformLeft(Expression orig)
+	{
+		Expression ans = rewriteLeft(orig);
+		return ans == null ? orig : ans;
+	}
+
+	@Override
+	public Expression transformRight(Expression orig)
+	{
+		Expression ans = rewriteRight(orig);
+		return ans == null ? orig : ans;
+	}
+
+	@Override
+	public boolean inLeft(Expression orig)
+	{
+		return rewriteLeft(orig) != null;
+	}
+
+	@Override
+	public boolean inRight(Expression orig)
+	{
+		return rewriteRight(orig) != null;
+	}
+
 	@Override
 	public TransformSteps transformWithSteps(Expression orig)
 	{
@@ -66,10 +209,10 @@ public enum InferenceRule implements BiDirectionalTransform
 		ans.addStep(this);
 		return ans;
 	}
-	
+
 	/**
 	 * Returns the name of the inference rule.  By default that is the name of the enum with underscores
-	 * replaced by spaces, and all in lowercase.  Some rules have specialized names though. 
+	 * replaced by spaces, and all in lowercase.  Some rules have specialized names though.
 	 */
 	@Override
 	public String toString()
@@ -90,6 +233,122 @@ public enum InferenceRule implements BiDirectionalTransform
 	{
 		return right;
 	}
-	
+
+	private static Expression term(Expression e, int i)
+	{
+		return ((Function) e).getTerm(i);
+	}
+
+	/**
+	 * Rewrites P∘(Q•R) into (P∘Q)•(P∘R) modulo AC, distributing over the last operand of the ∘ chain that is a
+	 * • chain, with P the other operands
+	 * @param outer the operator ∘
+	 * @param inner the operator •
+	 * @return the distributed term, or null if no operand is a • chain
+	 */
+	private static Expression distribute(Expression e, Operator outer, Operator inner)
+	{
+		if (e.getOperator() != outer)
+			return null;
+		Expression[] split = splitOff(e, outer, inner);
+		if (split == null)
+			return null;
+		Expression p = split[0], t = split[1];
+		return binary(inner, binary(outer, p, term(t, 0)), binary(outer, p, term(t, 1)));
+	}
+
+	/**
+	 * Finds the last operand of a ∘ chain that is a • chain, searching without allocating anything, and removes
+	 * it by rebuilding only the ∘ nodes above it, so the rest of the chain stays shared
+	 * @return the rest of the chain, or null if it was just the operand, followed by the operand, or null if
+	 * there is no such operand
+	 */
+	private static Expression[] splitOff(Expression e, Operator outer, Operator inner)
+	{
+		if (e.getOperator() == inner)
+			return new Expression[] {null, e};
+		if (e.getOperator() != outer)
+			return null;
+		Expression a = term(e, 0), b = term(e, 1);
+		Expression[] ans = splitOff(b, outer, inner);
+		if (ans != null)
+		{
+			ans[0] = ans[0] == null ? a : binary(outer, a, ans[0]);
+			return ans;
+		}
+		ans = splitOff(a, outer, inner);
+		if (ans != null)
+			ans[0] = ans[0] == null ? b : binary(outer, ans[0], b);
+		return ans;
+	}
+
+	/**
+	 * Rewrites (P•Q)∘(P•R) into P•(Q∘R) modulo AC, with P every operand the two • chains have in common.  If
+	 * that's all of one chain then one common operand is left in both Q and R, so neither is empty.
+	 * @param outer the operator ∘
+	 * @param inner the operator •
+	 * @return the factored term, or null if the chains have nothing in common
+	 */
+	private static Expression factor(Expression e, Operator outer, Operator inner)
+	{
+		if (e.getOperator() != outer || term(e, 0).getOperator() != inner || term(e, 1).getOperator() != inner)
+			return null;
+		List<Expression> q = PatternMatcher.flatten(term(e, 0), inner);
+		List<Expression> r = PatternMatcher.flatten(term(e, 1), inner);
+		List<Expression> p = new ArrayList<>();
+		for (Iterator<Expression> it = q.iterator(); it.hasNext();)
+		{
+			Expression x = it.next();
+			for (int j=0; j<r.size(); ++j)
+				if (PatternMatcher.equalModuloAc(x, r.get(j)))
+				{
+					p.add(x);
+					r.remove(j);
+					it.remove();
+					break;
+				}
+		}
+		if (p.isEmpty())
+			return null;
+		if (q.isEmpty() || r.isEmpty())
+		{
+			Expression x = p.remove(p.size()-1);
+			q.add(x);
+			r.add(x);
+		}
+		return binary(inner, PatternMatcher.join(inner, p), binary(outer, PatternMatcher.join(inner, q), PatternMatcher.join(inner, r)));
+	}
+
+	private static Expression binary(Operator op, Expression a, Expression b)
+	{
+		return Function.constructUnsafe(op, Arrays.asList(a, b));
+	}
+
+	private static Expression not(Expression e)
+	{
+		return Function.constructUnsafe(Operator.NEG, Collections.singletonList(e));
+	}
+
+	private static Expression and(Expression a, Expression b)
+	{
+		return binary(Operator.AND, a, b);
+	}
+
+	private static Expression or(Expression a, Expression b)
+	{
+		return binary(Operator.OR, a, b);
+	}
+
+	/**
+	 * The variables the patterns are built from, kept out of the enum so the constants can use them before the
+	 * enum's own static fields are initialized
+	 */
+	private static final class Patterns
+	{
+		private static final Literal P = Literal.createUnsafe("P");
+		private static final Literal Q = Literal.createUnsafe("Q");
+		private static final Literal R = Literal.createUnsafe("R");
+	}
+
 	private static final Logger LOGGER = Logger.getLogger(Expression.class.getName());
-}
\ No newline at end of file
+}
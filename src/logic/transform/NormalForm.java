@@ -1,13 +1,8 @@
 package logic.transform;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
-
 import logic.Expression;
-import logic.Function;
-import logic.Literal;
-import logic.Operator;
+import logic.FormClassification;
+import logic.sat.ClauseSet;
 
 /**
  * An enum representing the supported normal form transformations.  Subclass Transform.
@@ -22,7 +17,8 @@ public enum NormalForm implements Transform
 	 * </p>
 	 * 
 	 * Conjunctive normal form is a conjunction of one or more clauses,
-	 * where a clause is a disjunction of literals
+	 * where a clause is a disjunction of literals.  Clauses share their literals and any
+	 * common beginning, see ExpressionSize for how large the result is as a tree.
 	 */
 	CONJUNCTIVE,
 	
@@ -31,7 +27,7 @@ public enum NormalForm implements Transform
 	 * Enum representing a transformation of disjunctive normal form
 	 * </p>
 	 * Disjunctive normal form is a disjunction of one or more clauses,
-	 * where a clause is a conjunction of literals
+	 * where a clause is a conjunction of literals.  Shares subexpressions like CONJUNCTIVE.
 	 * 
 	 */
 	DISJUNCTIVE,
@@ -43,7 +39,25 @@ public enum NormalForm implements Transform
 	 * 
 	 * Negation normal form allows only conjunctions and disjunctions, as well as negations applied directly to literals.
 	 */
-	NEGATION;
+	NEGATION,
+
+	/**
+	 * <p>
+	 * Enum representing a transformation into an equisatisfiable conjunctive normal form
+	 * </p>
+	 * The result is in conjunctive normal form but only equisatisfiable with the original, since fresh definition
+	 * literals stand in for its subformulas.  In exchange it's linear in the size of the original instead of
+	 * exponential.  Uses TseitinTransform.PLAISTED_GREENBAUM, whose encode method also gives what each
+	 * definition literal stands for.
+	 */
+	EQUISATISFIABLE_CONJUNCTIVE;
+
+	// Negations are pushed down from the top
+	private static final RewriteEngine DE_MORGANS = new RewriteEngine(RewriteEngine.Strategy.OUTERMOST,
+		InferenceRule.DE_MORGANS_OR,
+		InferenceRule.DE_MORGANS_AND,
+		InferenceRule.DOUBLE_NEGATION
+	);
 
 	@Override
 	public Expression transform(Expression orig)
@@ -51,142 +65,66 @@ public enum NormalForm implements Transform
 		switch (this)
 		{
 			case CONJUNCTIVE:
-				// Put into NNF, then drive all "∨"s inwards.
-				return transformHelper(NEGATION.transform(orig),
-					InferenceRule.OR_DISTRIBUTION,
-					InferenceRule.OR_DISTRIBUTION_FLIPPED
-				);
+				// Put into NNF, then drive all "∨"s inwards as sets of clauses, dropping redundant ones as they appear
 			case DISJUNCTIVE:
-				// Put into NNF, then drive all "∧"s inwards.
-				return transformHelper(NEGATION.transform(orig),
-					InferenceRule.AND_DISTRIBUTION,
-					InferenceRule.AND_DISTRIBUTION_FLIPPED
-				);
+				// Put into NNF, then drive all "∧"s inwards as sets of terms
+			{
+				ClauseSet clauses = ClauseSet.of(orig, this);
+				clauses.strengthen();
+				return clauses.toExpression();
+			}
 			case NEGATION:
 				// Drive negations inwards using DeMorgan's laws, eliminate any double negations
-				return transformHelper(orig,
-					InferenceRule.DE_MORGANS_OR,
-					InferenceRule.DE_MORGANS_AND,
-					InferenceRule.DOUBLE_NEGATION
-				);
+				return DE_MORGANS.transform(orig);
+			case EQUISATISFIABLE_CONJUNCTIVE:
+				return TseitinTransform.PLAISTED_GREENBAUM.transform(orig);
 			default:
 				throw new UnsupportedOperationException("A normal form transform has been applied without an implementation");
 		}
 	}
 	
 	/**
-	 * Checks if the expression is in either conjunctive, disjunctive, or negation normal form
+	 * Checks if the expression is in either conjunctive, disjunctive, or negation normal form.  Every form is
+	 * found at once by FormClassification, and remembered, so checking several forms costs one walk.
 	 * 
 	 * @param e the Expression, who's form is being checked
 	 * @return True if the expression is in the indicated form, otherwise False
 	 */
 	public boolean inForm(Expression e)
 	{
-		switch (this)
-		{
-			case CONJUNCTIVE:
-				return
-					// Either the expression should be disjunctions of (possibly negated) literals
-					checkAll(Operator.OR, e) ||
-					// Or it should be a conjunction with each clause in CNF
-					e.mapPredicate(CONJUNCTIVE::inForm, Operator.AND);
-				
-			case DISJUNCTIVE:
-				return
-					// Same as CNF but with conjunctions and disjunctions flipped
-					checkAll(Operator.AND, e) ||
-					e.mapPredicate(DISJUNCTIVE::inForm, Operator.OR);
-				
-			case NEGATION:
-				return
-					// The expression should be either a (possibly negated) literal
-					e instanceof Literal ||
-					e.equalWithoutLiterals("¬A") ||
-					// Or the expression is a conjunction or disjunction of clauses in NNF
-					e.mapPredicate(NEGATION::inForm, Operator.AND, Operator.OR);
-			default:
-				throw new UnsupportedOperationException("A normal form has been checked without an implementation");
-		}
+		return FormClassification.of(e).is(this);
 	}
-	
+
 	/**
-	 * Recursively checks if every subterm is either a (possibly negated) literal,
-	 * or if the given operator expression is a function of the given operator and every clause
-	 * matches the original criteria.
-	 * @param op the allowed operator
-	 * @param e the expression to check
-	 * @return true if the expression consists of only negations and the specified operator
+	 * Transforms the expression, ending at exactly what transform gives.  Negations are pushed down one DeMorgan's
+	 * law or double negation at a time, but CONJUNCTIVE and DISJUNCTIVE then find their clauses as sets rather
+	 * than by distributing one term at a time, so that's a single step after the negation normal form.
 	 */
-	private static boolean checkAll(Operator op, Expression e)
-	{
-		return
-			e instanceof Literal ||
-			e.equalWithoutLiterals("¬A") ||
-			e.mapPredicate(t -> checkAll(op,t), op);
-	}
-
 	@Override
 	public TransformSteps transformWithSteps(Expression orig)
 	{
 		switch (this)
 		{
 			case CONJUNCTIVE:
-				return transformHelperWithSteps(NEGATION.transformWithSteps(orig), InferenceRule.OR_DISTRIBUTION);
 			case DISJUNCTIVE:
-				return transformHelperWithSteps(NEGATION.transformWithSteps(orig), InferenceRule.AND_DISTRIBUTION);
+			{
+				// ClauseSet puts the expression into NNF itself, which leaves an expression already in NNF alone
+				TransformSteps ans = DE_MORGANS.transformWithSteps(orig);
+				ans.addStep(this);
+				return ans;
+			}
 			case NEGATION:
-				return transformHelperWithSteps(orig,
-					InferenceRule.DE_MORGANS_OR,
-					InferenceRule.DE_MORGANS_AND,
-					InferenceRule.DOUBLE_NEGATION
-				);
+				return DE_MORGANS.transformWithSteps(orig);
+			case EQUISATISFIABLE_CONJUNCTIVE:
+				return TseitinTransform.PLAISTED_GREENBAUM.transformWithSteps(orig);
 			default:
 				throw new UnsupportedOperationException("A normal form transform has been applied without an implementation");
 		}
 	}
 	
-	private TransformSteps transformHelperWithSteps(TransformSteps orig, InferenceRule inferenceRules)
-	{
-		return orig.combine(transformHelperWithSteps(orig.result(), inferenceRules));
-	}
-
-	private Expression transformHelper(Expression orig, InferenceRule... inferenceRules)
-	{
-		for (InferenceRule i : inferenceRules)
-			orig = i.transformLeft(orig);
-		if (orig instanceof Function)
-		{
-			Function f = (Function) orig;
-			List<Expression> normalFormTerms =
-				f.getTerms().stream().map(t -> transformHelper(t, inferenceRules)).collect(Collectors.toList());
-			orig = Function.constructUnsafe(f.operator, normalFormTerms);
-		}
-		return orig;
-	}
-	
-	private TransformSteps transformHelperWithSteps(Expression orig, InferenceRule... inferenceRules)
-	{
-		TransformSteps steps = new TransformSteps(orig);
-		for (InferenceRule i : inferenceRules)
-			i.transformLeftWithSteps(steps);
-		if (steps.result() instanceof Function)
-		{
-			Function f = (Function) steps.result();
-			List<Expression> getTerms = f.getTerms();
-			List<Expression> normalFormTerms = new ArrayList<>();
-			for (int i=0; i<getTerms.size(); ++i)
-			{
-				TransformSteps partialSteps = transformHelperWithSteps(getTerms.get(i), inferenceRules);
-				normalFormTerms.add(partialSteps.result());
-				steps.combine(partialSteps, i);
-			}
-		}
-		return steps;
-	}
-	
 	@Override
 	public String toString()
 	{
-		return name().toLowerCase()+" normal form";
+		return name().toLowerCase().replace('_', ' ')+" normal form";
 	}
 }
\ No newline at end of file
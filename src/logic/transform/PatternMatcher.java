@@ -0,0 +1,560 @@
+package logic.transform;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+import logic.OperatorTrait;
+
+/**
+ * A rewrite rule compiled for fast matching.  The variables of the pattern are numbered once, up front, and the
+ * pattern is flattened into preorder arrays, so matching is a single loop over those arrays that binds each
+ * variable into a slot of a preallocated frame instead of building a Map.  A variable used more than once has
+ * to be bound to equal subterms every time, which is checked by identity first, so it stays cheap when equal
+ * subterms are shared.  The replacement is instantiated straight from the frame, so rewriting a term allocates
+ * nothing besides the nodes of the result.
+ *
+ * Operators that are both COMMUTATIVE and ASSOCIATIVE are matched modulo those laws.  A chain of such an
+ * operator is read as a flat list of operands, the pattern's arguments of it are matched against the operands in
+ * any order, and a variable argument takes however many operands are left over, bound to them joined back
+ * together.  So P∨(Q∧R) matches (A∧B)∨C, and A∨(B∧C)∨D with P bound to A∨D.  Repeated variables are compared
+ * modulo the same laws.  Matching modulo AC needs backtracking, so it's only used for patterns containing such
+ * an operator, and enumerates every split of the leftover operands when two unbound variables share a chain.
+ *
+ * Every thread gets its own frame, so a matcher can be shared between threads.
+ * @author Jallibad
+ *
+ */
+public final class PatternMatcher implements Serializable
+{
+	private static final long serialVersionUID = 4410283617905725331L;
+
+	private static final byte FUNCTION = 0;
+	private static final byte CONSTANT = 1;
+	private static final byte VARIABLE = 2;
+
+	private final Expression pattern;
+	private final Expression replacement;
+
+	// The pattern in preorder, one entry per node
+	private final byte[] kinds;
+	private final Operator[] operators;
+	private final Constant[] constants;
+	private final int[] slots;
+	private final int numVariables;
+
+	// The pattern as a tree, only built when it contains an AC operator
+	private final Node tree;
+
+	private final Template template;
+
+	private transient ThreadLocal<Frame> frames;
+
+	/**
+	 * Compiles a rule rewriting terms matching a pattern into a replacement
+	 * @param pattern the pattern, where every Literal stands for any subterm
+	 * @param replacement the replacement, which may only use Literals from the pattern
+	 * @throws IllegalArgumentException if the replacement uses a Literal the pattern doesn't
+	 */
+	public PatternMatcher(Expression pattern, Expression replacement)
+	{
+		this.pattern = pattern;
+		this.replacement = replacement;
+
+		List<Expression> preorder = new ArrayList<>();
+		List<Expression> stack = new ArrayList<>();
+		stack.add(pattern);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.remove(stack.size()-1);
+			preorder.add(t);
+			if (t instanceof Function)
+				for (int i=t.getOperator().numArguments-1; i>=0; --i)
+					stack.add(((Function) t).getTerm(i));
+		}
+
+		kinds = new byte[preorder.size()];
+		operators = new Operator[preorder.size()];
+		constants = new Constant[preorder.size()];
+		slots = new int[preorder.size()];
+		Map<Literal, Integer> numbering = new HashMap<>();
+		for (int i=0; i<preorder.size(); ++i)
+		{
+			Expression t = preorder.get(i);
+			if (t instanceof Function)
+			{
+				kinds[i] = FUNCTION;
+				operators[i] = t.getOperator();
+			}
+			else if (t instanceof Constant)
+			{
+				kinds[i] = CONSTANT;
+				constants[i] = (Constant) t;
+			}
+			else
+			{
+				kinds[i] = VARIABLE;
+				slots[i] = numbering.computeIfAbsent((Literal) t, l -> numbering.size());
+			}
+		}
+		numVariables = numbering.size();
+		tree = preorder.stream().anyMatch(t -> isAc(t.getOperator())) ? Node.of(pattern, numbering) : null;
+		template = Template.of(replacement, numbering);
+	}
+
+	/**
+	 * Getter method for the pattern
+	 * @return the pattern
+	 */
+	public Expression pattern()
+	{
+		return pattern;
+	}
+
+	/**
+	 * Getter method for the replacement
+	 * @return the replacement
+	 */
+	public Expression replacement()
+	{
+		return replacement;
+	}
+
+	/**
+	 * Tests whether a term matches the pattern, with every repeated variable bound to equal subterms
+	 * @param term the term to test
+	 * @return true if the term matches
+	 */
+	public boolean matches(Expression term)
+	{
+		return bind(term, frame());
+	}
+
+	/**
+	 * Rewrites a term if it matches the pattern
+	 * @param term the term to rewrite
+	 * @return the instantiated replacement, or null if the term doesn't match
+	 */
+	public Expression rewrite(Expression term)
+	{
+		Frame f = frame();
+		if (!bind(term, f))
+			return null;
+		Expression ans = template.instantiate(f.bindings);
+		Arrays.fill(f.bindings, null); // Don't keep the term reachable from the frame
+		return ans;
+	}
+
+	private Frame frame()
+	{
+		if (frames == null)
+			frames = ThreadLocal.withInitial(() -> new Frame(numVariables, kinds.length));
+		return frames.get();
+	}
+
+	/**
+	 * Walks the pattern in preorder, popping the subterm each node has to match off a stack of the subterms
+	 * still to be read
+	 */
+	private boolean bind(Expression term, Frame f)
+	{
+		if (tree != null)
+		{
+			Arrays.fill(f.bindings, null);
+			return solve(new Goal(tree, term, null), f.bindings);
+		}
+		Expression[] bindings = f.bindings;
+		Expression[] stack = f.stack;
+		Arrays.fill(bindings, null);
+		int top = 0;
+		stack[top++] = term;
+		for (int i=0; i<kinds.length; ++i)
+		{
+			Expression t = stack[--top];
+			stack[top] = null;
+			switch (kinds[i])
+			{
+				case FUNCTION:
+					if (t.getOperator() != operators[i] || !(t instanceof Function))
+						return clear(stack, top);
+					Function function = (Function) t;
+					for (int k=operators[i].numArguments-1; k>=0; --k)
+						stack[top++] = function.getTerm(k);
+					break;
+				case CONSTANT:
+					if (!constants[i].equals(t))
+						return clear(stack, top);
+					break;
+				case VARIABLE:
+					Expression bound = bindings[slots[i]];
+					if (bound == null)
+						bindings[slots[i]] = t;
+					else if (bound != t && !bound.equals(t))
+						return clear(stack, top);
+					break;
+				default:
+					throw new UnsupportedOperationException("A pattern node has been read without an implementation");
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves the goals left to right, backtracking over the ways of matching AC chains
+	 */
+	private static boolean solve(Goal goal, Expression[] bindings)
+	{
+		if (goal == null)
+			return true;
+		Node node = goal.node;
+		if (goal.operands != null)
+			return node.numFixed > goal.index ? assignFixed(goal, bindings) : distribute(goal, new ArrayList<>(), node.numFixed, bindings);
+		Expression t = goal.term;
+		switch (node.kind)
+		{
+			case FUNCTION:
+				if (t.getOperator() != node.operator || !(t instanceof Function))
+					return false;
+				if (node.ac)
+				{
+					List<Expression> operands = flatten(t, node.operator);
+					if (operands.size() < node.args.length)
+						return false;
+					return solve(new Goal(node, operands, new boolean[operands.size()], 0, goal.next), bindings);
+				}
+				Goal next = goal.next;
+				for (int k=node.args.length-1; k>=0; --k)
+					next = new Goal(node.args[k], ((Function) t).getTerm(k), next);
+				return solve(next, bindings);
+			case CONSTANT:
+				return node.constant.equals(t) && solve(goal.next, bindings);
+			case VARIABLE:
+				Expression bound = bindings[node.slot];
+				if (bound != null)
+					return equalModuloAc(bound, t) && solve(goal.next, bindings);
+				bindings[node.slot] = t;
+				if (solve(goal.next, bindings))
+					return true;
+				bindings[node.slot] = null;
+				return false;
+			default:
+				throw new UnsupportedOperationException("A pattern node has been read without an implementation");
+		}
+	}
+
+	/**
+	 * Tries every unused operand for the next argument of an AC chain that isn't a variable
+	 */
+	private static boolean assignFixed(Goal goal, Expression[] bindings)
+	{
+		Goal rest = new Goal(goal.node, goal.operands, goal.used, goal.index+1, goal.next);
+		for (int j=0; j<goal.operands.size(); ++j)
+		{
+			if (goal.used[j])
+				continue;
+			goal.used[j] = true;
+			if (solve(new Goal(goal.node.args[goal.index], goal.operands.get(j), rest), bindings))
+				return true;
+			goal.used[j] = false;
+		}
+		return false;
+	}
+
+	/**
+	 * Shares the operands no fixed argument took between the variable arguments of an AC chain, each of which
+	 * takes at least one
+	 * @param taken the operands already given to a variable
+	 * @param index the next variable argument
+	 */
+	private static boolean distribute(Goal goal, List<Integer> taken, int index, Expression[] bindings)
+	{
+		Node node = goal.node;
+		List<Integer> free = new ArrayList<>();
+		for (int j=0; j<goal.operands.size(); ++j)
+			if (!goal.used[j] && !taken.contains(j))
+				free.add(j);
+		if (index == node.args.length)
+			return free.isEmpty() && solve(goal.next, bindings);
+		int slot = node.args[index].slot;
+		Expression bound = bindings[slot];
+		if (bound != null)
+		{
+			// A bound variable has to take operands equal to the ones it was bound to, and any equal ones will do
+			List<Integer> more = new ArrayList<>(taken);
+			for (Expression part : flatten(bound, node.operator))
+			{
+				int found = -1;
+				for (int j : free)
+					if (!more.contains(j) && equalModuloAc(part, goal.operands.get(j)))
+					{
+						found = j;
+						break;
+					}
+				if (found < 0)
+					return false;
+				more.add(found);
+			}
+			return distribute(goal, more, index+1, bindings);
+		}
+		if (free.isEmpty() || free.size() > Long.SIZE-2)
+			return false;
+		// The last variable takes everything left, the others try every nonempty subset
+		long last = (1L << free.size())-1;
+		for (long subset = index == node.args.length-1 ? last : 1; subset <= last; ++subset)
+		{
+			List<Expression> parts = new ArrayList<>();
+			List<Integer> more = new ArrayList<>(taken);
+			for (int i=0; i<free.size(); ++i)
+				if ((subset & (1L << i)) != 0)
+				{
+					parts.add(goal.operands.get(free.get(i)));
+					more.add(free.get(i));
+				}
+			bindings[slot] = join(node.operator, parts);
+			if (distribute(goal, more, index+1, bindings))
+				return true;
+		}
+		bindings[slot] = null;
+		return false;
+	}
+
+	/**
+	 * Checks whether an operator is matched modulo associativity and commutativity
+	 */
+	static boolean isAc(Operator op)
+	{
+		return op != null && op.hasTrait(OperatorTrait.COMMUTATIVE) && op.hasTrait(OperatorTrait.ASSOCIATIVE);
+	}
+
+	/**
+	 * Reads a chain of an operator as the list of its operands, from left to right
+	 */
+	static List<Expression> flatten(Expression e, Operator op)
+	{
+		List<Expression> ans = new ArrayList<>();
+		List<Expression> stack = new ArrayList<>();
+		stack.add(e);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.remove(stack.size()-1);
+			if (t.getOperator() == op)
+				for (int i=op.numArguments-1; i>=0; --i)
+					stack.add(((Function) t).getTerm(i));
+			else
+				ans.add(t);
+		}
+		return ans;
+	}
+
+	/**
+	 * Joins operands back into a chain, nested to the left
+	 */
+	static Expression join(Operator op, List<Expression> operands)
+	{
+		Expression ans = operands.get(0);
+		for (int i=1; i<operands.size(); ++i)
+			ans = Function.constructUnsafe(op, Arrays.asList(ans, operands.get(i)));
+		return ans;
+	}
+
+	/**
+	 * Checks whether two expressions are equal once the chains of every AC operator are read as multisets
+	 */
+	static boolean equalModuloAc(Expression a, Expression b)
+	{
+		if (a == b || a.equals(b))
+			return true;
+		Operator op = a.getOperator();
+		if (op == null || op != b.getOperator())
+			return false;
+		if (!isAc(op))
+		{
+			for (int i=0; i<op.numArguments; ++i)
+				if (!equalModuloAc(((Function) a).getTerm(i), ((Function) b).getTerm(i)))
+					return false;
+			return true;
+		}
+		List<Expression> as = flatten(a, op), bs = flatten(b, op);
+		if (as.size() != bs.size())
+			return false;
+		boolean[] matched = new boolean[bs.size()];
+		for (Expression x : as)
+		{
+			int j = 0;
+			while (j < bs.size() && (matched[j] || !equalModuloAc(x, bs.get(j))))
+				++j;
+			if (j == bs.size())
+				return false;
+			matched[j] = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Empties what's left of the stack after a failed match
+	 * @return false
+	 */
+	private static boolean clear(Expression[] stack, int top)
+	{
+		Arrays.fill(stack, 0, top, null);
+		return false;
+	}
+
+	@Override
+	public String toString()
+	{
+		return pattern+" → "+replacement;
+	}
+
+	private static final class Frame
+	{
+		private final Expression[] bindings;
+		private final Expression[] stack;
+
+		private Frame(int numVariables, int patternSize)
+		{
+			bindings = new Expression[numVariables];
+			// Each node pops one entry and pushes at most its arguments, so the stack never outgrows the pattern
+			stack = new Expression[patternSize];
+		}
+	}
+
+	/**
+	 * Something left to match, either a pattern node against a term, or the arguments of an AC chain from index
+	 * on against the operands that aren't used yet
+	 */
+	private static final class Goal
+	{
+		private final Node node;
+		private final Expression term;
+		private final List<Expression> operands;
+		private final boolean[] used;
+		private final int index;
+		private final Goal next;
+
+		private Goal(Node node, Expression term, Goal next)
+		{
+			this(node, term, null, null, 0, next);
+		}
+
+		private Goal(Node node, List<Expression> operands, boolean[] used, int index, Goal next)
+		{
+			this(node, null, operands, used, index, next);
+		}
+
+		private Goal(Node node, Expression term, List<Expression> operands, boolean[] used, int index, Goal next)
+		{
+			this.node = node;
+			this.term = term;
+			this.operands = operands;
+			this.used = used;
+			this.index = index;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * A node of a pattern containing an AC operator.  The arguments of an AC node are its flattened chain,
+	 * with the numFixed arguments that aren't variables first.
+	 */
+	private static final class Node implements Serializable
+	{
+		private static final long serialVersionUID = 6938124470913652018L;
+
+		private final byte kind;
+		private final Operator operator;
+		private final Constant constant;
+		private final int slot;
+		private final boolean ac;
+		private final Node[] args;
+		private final int numFixed;
+
+		private Node(byte kind, Operator operator, Constant constant, int slot, boolean ac, Node[] args, int numFixed)
+		{
+			this.kind = kind;
+			this.operator = operator;
+			this.constant = constant;
+			this.slot = slot;
+			this.ac = ac;
+			this.args = args;
+			this.numFixed = numFixed;
+		}
+
+		private static Node of(Expression e, Map<Literal, Integer> numbering)
+		{
+			if (e instanceof Constant)
+				return new Node(CONSTANT, null, (Constant) e, -1, false, null, 0);
+			if (e instanceof Literal)
+				return new Node(VARIABLE, null, null, numbering.get(e), false, null, 0);
+			Operator op = e.getOperator();
+			if (!isAc(op))
+			{
+				Node[] args = new Node[op.numArguments];
+				for (int i=0; i<args.length; ++i)
+					args[i] = of(((Function) e).getTerm(i), numbering);
+				return new Node(FUNCTION, op, null, -1, false, args, args.length);
+			}
+			List<Node> fixed = new ArrayList<>(), variables = new ArrayList<>();
+			for (Expression t : flatten(e, op))
+				(t instanceof Literal ? variables : fixed).add(of(t, numbering));
+			fixed.addAll(variables);
+			return new Node(FUNCTION, op, null, -1, true, fixed.toArray(new Node[0]), fixed.size()-variables.size());
+		}
+	}
+
+	/**
+	 * The replacement with its variables already resolved to slots of the frame
+	 */
+	private static final class Template implements Serializable
+	{
+		private static final long serialVersionUID = -2179485534038851720L;
+
+		private final Operator operator;
+		private final Template[] terms;
+		private final Constant constant;
+		private final int slot;
+
+		private Template(Operator operator, Template[] terms, Constant constant, int slot)
+		{
+			this.operator = operator;
+			this.terms = terms;
+			this.constant = constant;
+			this.slot = slot;
+		}
+
+		private static Template of(Expression e, Map<Literal, Integer> numbering)
+		{
+			if (e instanceof Function)
+			{
+				Template[] terms = new Template[e.getOperator().numArguments];
+				for (int i=0; i<terms.length; ++i)
+					terms[i] = of(((Function) e).getTerm(i), numbering);
+				return new Template(e.getOperator(), terms, null, -1);
+			}
+			if (e instanceof Constant)
+				return new Template(null, null, (Constant) e, -1);
+			Integer slot = numbering.get(e);
+			if (slot == null)
+				throw new IllegalArgumentException("The replacement uses "+e+", which isn't in the pattern");
+			return new Template(null, null, null, slot);
+		}
+
+		private Expression instantiate(Expression[] bindings)
+		{
+			if (operator == null)
+				return constant != null ? constant : bindings[slot];
+			List<Expression> ans = new ArrayList<>(terms.length);
+			for (Template t : terms)
+				ans.add(t.instantiate(bindings));
+			return Function.constructUnsafe(operator, ans);
+		}
+	}
+}
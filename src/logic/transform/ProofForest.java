@@ -0,0 +1,305 @@
+package logic.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import logic.Expression;
+import logic.Function;
+import logic.Operator;
+
+/**
+ * Why the e-classes of an EGraph are equal, kept by an EGraph that explains itself.  Every concrete expression
+ * the e-graph is told about is numbered as a term, and every equality it learns joins two terms by an edge,
+ * labelled with the rule that rewrites one into the other, or with congruence when the two only differ in terms
+ * that are already joined.  An edge is only added between terms that aren't joined yet, so the edges form a tree
+ * for every e-class, and the path between two terms of a tree is a proof that they're equal.
+ *
+ * A congruence edge is added after the path between its terms' terms, and edges are never removed, so that path
+ * is made of older edges.  So expanding the congruence edges of a proof into proofs of their terms always stops,
+ * but a proof used by several congruences is repeated for each of them, so the number of rewrites can grow
+ * exponentially.  length finds it without expanding anything twice.
+ * @author Jallibad
+ *
+ */
+final class ProofForest
+{
+	private final List<Operator> operators = new ArrayList<>();
+	private final List<Expression> leaves = new ArrayList<>();
+	private final List<int[]> children = new ArrayList<>();
+	private final Map<Term, Integer> numbers = new HashMap<>();
+	private final List<Expression> expressions = new ArrayList<>();
+
+	// The edge from each term towards the root of its tree, with the rule rewriting the term into its parent, and
+	// the side of the rule the term matches, where a null rule is a congruence
+	private int[] parent = new int[16];
+	private BiDirectionalTransform[] rules = new BiDirectionalTransform[16];
+	private RuleIndex.Side[] sides = new RuleIndex.Side[16];
+	// Which terms are joined, and how many terms each tree has
+	private int[] unionFind = new int[16];
+	private int[] size = new int[16];
+	// The number of rewrites between two terms, for each pair length has been asked about
+	private final Map<List<Integer>, Long> lengths = new HashMap<>();
+
+	/**
+	 * The number of a concrete term, numbering it if it's new
+	 * @param operator the operator, or null for a Literal or Constant
+	 * @param leaf the Literal or Constant, or null for a Function
+	 * @param terms the numbers of the terms of a Function
+	 * @return the number of the term
+	 */
+	int term(Operator operator, Expression leaf, int[] terms)
+	{
+		Term key = new Term(operator, leaf, terms);
+		Integer known = numbers.get(key);
+		if (known != null)
+			return known;
+		int id = operators.size();
+		if (id == parent.length)
+		{
+			parent = Arrays.copyOf(parent, 2*id);
+			rules = Arrays.copyOf(rules, 2*id);
+			sides = Arrays.copyOf(sides, 2*id);
+			unionFind = Arrays.copyOf(unionFind, 2*id);
+			size = Arrays.copyOf(size, 2*id);
+		}
+		parent[id] = id;
+		unionFind[id] = id;
+		size[id] = 1;
+		operators.add(operator);
+		leaves.add(leaf);
+		children.add(terms);
+		expressions.add(null);
+		numbers.put(key, id);
+		return id;
+	}
+
+	/**
+	 * Joins two terms, unless they already are
+	 * @param a a term
+	 * @param b a term equal to a
+	 * @param rule the rule rewriting a into b, or null if a and b are congruent
+	 * @param side the side of the rule a matches
+	 */
+	void join(int a, int b, BiDirectionalTransform rule, RuleIndex.Side side)
+	{
+		int ra = find(a), rb = find(b);
+		if (ra == rb)
+			return;
+		// Only the smaller tree is turned around
+		if (size[ra] > size[rb])
+		{
+			int t = a;
+			a = b;
+			b = t;
+			side = opposite(side);
+			t = ra;
+			ra = rb;
+			rb = t;
+		}
+		reroot(a);
+		parent[a] = b;
+		rules[a] = rule;
+		sides[a] = side;
+		unionFind[ra] = rb;
+		size[rb] += size[ra];
+		// Paths through the turned around tree may have changed
+		lengths.clear();
+	}
+
+	private int find(int id)
+	{
+		while (unionFind[id] != id)
+		{
+			unionFind[id] = unionFind[unionFind[id]];
+			id = unionFind[id];
+		}
+		return id;
+	}
+
+	/**
+	 * Makes a term the root of its tree by reversing every edge between it and the old root
+	 */
+	private void reroot(int t)
+	{
+		int child = t, next = parent[t];
+		BiDirectionalTransform rule = rules[t];
+		RuleIndex.Side side = sides[t];
+		parent[t] = t;
+		rules[t] = null;
+		sides[t] = null;
+		while (next != child)
+		{
+			int after = parent[next];
+			BiDirectionalTransform nextRule = rules[next];
+			RuleIndex.Side nextSide = sides[next];
+			parent[next] = child;
+			rules[next] = rule;
+			sides[next] = opposite(side);
+			child = next;
+			next = after;
+			rule = nextRule;
+			side = nextSide;
+		}
+	}
+
+	private static RuleIndex.Side opposite(RuleIndex.Side side)
+	{
+		if (side == null)
+			return null;
+		return side == RuleIndex.Side.LEFT ? RuleIndex.Side.RIGHT : RuleIndex.Side.LEFT;
+	}
+
+	/**
+	 * The expression a term stands for, with the same term always giving the same expression
+	 * @param t a term
+	 * @return the expression
+	 */
+	Expression expression(int t)
+	{
+		Expression ans = expressions.get(t);
+		if (ans != null)
+			return ans;
+		if (operators.get(t) == null)
+			ans = leaves.get(t);
+		else
+		{
+			List<Expression> terms = new ArrayList<>();
+			for (int child : children.get(t))
+				terms.add(expression(child));
+			ans = Function.constructUnsafe(operators.get(t), terms);
+		}
+		expressions.set(t, ans);
+		return ans;
+	}
+
+	/**
+	 * The number of rewrites explain gives
+	 * @param a a term
+	 * @param b a term joined to a
+	 * @return the number of rewrites, or Long.MAX_VALUE if there are at least that many
+	 */
+	long length(int a, int b)
+	{
+		List<Integer> key = Arrays.asList(a, b);
+		Long known = lengths.get(key);
+		if (known != null)
+			return known;
+		long ans = 0;
+		for (int[] edge : path(a, b))
+		{
+			if (rules[edge[0]] != null)
+				++ans;
+			else
+			{
+				int[] fromTerms = children.get(edge[1]), toTerms = children.get(edge[2]);
+				for (int i=0; i<fromTerms.length; ++i)
+					ans += Math.min(length(fromTerms[i], toTerms[i]), Long.MAX_VALUE-ans);
+			}
+			if (ans == Long.MAX_VALUE)
+				break;
+		}
+		lengths.put(key, ans);
+		return ans;
+	}
+
+	/**
+	 * Adds the rewrites turning one term into another to a TransformSteps object
+	 * @param a a term, which the subterm of steps.result() at the position has to be
+	 * @param b a term joined to a
+	 * @param position the index of the term to go into at each level, which is restored afterwards
+	 * @param steps the steps to add to
+	 */
+	void explain(int a, int b, List<Integer> position, TransformSteps steps)
+	{
+		for (int[] edge : path(a, b))
+		{
+			int from = edge[1], to = edge[2];
+			if (rules[edge[0]] != null)
+			{
+				RuleIndex.Side side = from == edge[0] ? sides[edge[0]] : opposite(sides[edge[0]]);
+				steps.addStep(new RuleApplication(rules[edge[0]], side, position, expression(to)));
+				continue;
+			}
+			int[] fromTerms = children.get(from), toTerms = children.get(to);
+			for (int i=0; i<fromTerms.length; ++i)
+			{
+				position.add(i);
+				explain(fromTerms[i], toTerms[i], position, steps);
+				position.remove(position.size()-1);
+			}
+		}
+	}
+
+	/**
+	 * The path between two terms of a tree
+	 * @return for each edge in order, the term whose edge to its parent it is, followed by the term it's
+	 * crossed from and the term it's crossed to
+	 */
+	private List<int[]> path(int a, int b)
+	{
+		if (find(a) != find(b))
+			throw new IllegalArgumentException("The terms haven't been shown to be equal");
+		// Everything from a up to the root, then the part of b's path that isn't on it
+		Set<Integer> up = new HashSet<>();
+		for (int t = a;; t = parent[t])
+		{
+			up.add(t);
+			if (parent[t] == t)
+				break;
+		}
+		List<Integer> down = new ArrayList<>();
+		int common = b;
+		while (!up.contains(common))
+		{
+			down.add(common);
+			common = parent[common];
+		}
+		List<int[]> ans = new ArrayList<>();
+		for (int t = a; t != common; t = parent[t])
+			ans.add(new int[] {t, t, parent[t]});
+		for (int i=down.size()-1; i>=0; --i)
+		{
+			int t = down.get(i);
+			ans.add(new int[] {t, parent[t], t});
+		}
+		return ans;
+	}
+
+	/**
+	 * An operator applied to terms, or a Literal or Constant, used to give the same term the same number
+	 */
+	private static final class Term
+	{
+		private final Operator operator;
+		private final Expression leaf;
+		private final int[] terms;
+
+		private Term(Operator operator, Expression leaf, int[] terms)
+		{
+			this.operator = operator;
+			this.leaf = leaf;
+			this.terms = terms;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Term))
+				return false;
+			Term other = (Term) o;
+			return operator == other.operator && Objects.equals(leaf, other.leaf) && Arrays.equals(terms, other.terms);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31*(31*Objects.hashCode(operator)+Objects.hashCode(leaf))+Arrays.hashCode(terms);
+		}
+	}
+}
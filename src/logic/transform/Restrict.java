@@ -0,0 +1,129 @@
+package logic.transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * A Transform that substitutes known values for some of the variables and then folds away
+ * every constant, so the result only mentions the variables that are still unassigned.
+ * For instance restricting "(A∧B)∨C" with A=false gives "C", and with C=true gives "⊤".
+ * @author Jallibad
+ *
+ */
+public class Restrict implements Transform
+{
+	private static final long serialVersionUID = 6306184547934781630L;
+
+	/**
+	 * Folds constants without assigning any variables
+	 */
+	public static final Restrict FOLD_CONSTANTS = new Restrict(Collections.emptyMap());
+
+	private final Map<Literal, Boolean> settings;
+
+	/**
+	 * Creates a transform that assigns the given variables
+	 * @param settings the values of the assigned variables, a copy is made to avoid rep exposure
+	 */
+	public Restrict(Map<Literal, Boolean> settings)
+	{
+		this.settings = new HashMap<>(settings);
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		if (orig instanceof Literal)
+		{
+			Boolean value = settings.get(orig);
+			return value == null ? orig : Constant.of(value);
+		}
+		if (!(orig instanceof Function))
+			return orig;
+
+		Function f = (Function) orig;
+		List<Expression> terms = new ArrayList<>();
+		boolean changed = false;
+		int unknown = -1;
+		int numUnknown = 0;
+		for (int i=0; i<f.operator.numArguments; ++i)
+		{
+			Expression term = transform(f.getTerm(i));
+			changed |= term != f.getTerm(i);
+			terms.add(term);
+			if (!(term instanceof Constant))
+			{
+				unknown = i;
+				numUnknown++;
+			}
+		}
+
+		if (numUnknown == 0)
+			return Constant.of(apply(f.operator, terms, -1, false));
+		if (numUnknown == 1)
+		{
+			// With one term left the operator is either constant, the identity, or a negation of that term
+			boolean whenFalse = apply(f.operator, terms, unknown, false);
+			boolean whenTrue = apply(f.operator, terms, unknown, true);
+			Expression term = terms.get(unknown);
+			if (whenFalse == whenTrue)
+				return Constant.of(whenTrue);
+			if (whenTrue)
+				return term;
+			if (f.operator == Operator.NEG && !changed)
+				return orig;
+			if (term.getOperator() == Operator.NEG)
+				return ((Function) term).getTerm(0);
+			return Function.constructUnsafe(Operator.NEG, Collections.singletonList(term));
+		}
+		return changed ? Function.constructUnsafe(f.operator, terms) : orig;
+	}
+
+	/**
+	 * Applies an operator to a list of terms that are all constants, except possibly the one at index unknown
+	 */
+	private static boolean apply(Operator op, List<Expression> terms, int unknown, boolean unknownValue)
+	{
+		boolean[] args = new boolean[terms.size()];
+		for (int i=0; i<args.length; ++i)
+			args[i] = i == unknown ? unknownValue : ((Constant) terms.get(i)).value;
+		return op.apply(args);
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		TransformSteps ans = new TransformSteps(orig);
+		ans.addStep(this);
+		return ans;
+	}
+
+	@Override
+	public String toString()
+	{
+		if (settings.isEmpty())
+			return "constant folding";
+		return "restrict "+settings;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof Restrict && ((Restrict) o).settings.equals(settings);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return settings.hashCode();
+	}
+}
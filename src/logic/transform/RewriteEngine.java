@@ -0,0 +1,221 @@
+package logic.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import logic.Expression;
+import logic.Function;
+
+/**
+ * Rewrites an expression with a set of rules, each applied from left to right, until none of them applies
+ * anywhere.  Every subterm that has been normalized is remembered by identity, along with its normal form, so a
+ * subterm shared between several places, or carried unchanged into the result of a rewrite, is only normalized
+ * once.  The memo lasts for a single call to transform.
+ *
+ * transformWithSteps rewrites in exactly the same order but records every rewrite as a RuleApplication, so it
+ * doesn't use the memo, since a subterm found in it would have its rewrites left out of the steps.
+ * @author Jallibad
+ *
+ */
+public class RewriteEngine implements Transform
+{
+	private static final long serialVersionUID = 2874102983427051644L;
+
+	/**
+	 * The order redexes are rewritten in
+	 * @author Jallibad
+	 *
+	 */
+	public enum Strategy
+	{
+		/**
+		 * Normalizes the terms of a Function before rewriting the Function itself, like call by value
+		 */
+		INNERMOST,
+		/**
+		 * Rewrites a Function until no rule applies to it before normalizing its terms, like call by name
+		 */
+		OUTERMOST
+	}
+
+	private final Strategy strategy;
+	private final List<BiDirectionalTransform> rules;
+	private final RuleIndex index;
+
+	/**
+	 * Creates an engine with the given rules, which are tried in order at each subterm
+	 * @param strategy the order redexes are rewritten in
+	 * @param rules the rules, applied from left to right, which must not be able to rewrite forever
+	 */
+	public RewriteEngine(Strategy strategy, BiDirectionalTransform... rules)
+	{
+		this(strategy, Arrays.asList(rules));
+	}
+
+	/**
+	 * Creates an engine with the given rules, which are tried in order at each subterm
+	 * @param strategy the order redexes are rewritten in
+	 * @param rules the rules, applied from left to right, a copy is made to avoid rep exposure
+	 */
+	public RewriteEngine(Strategy strategy, List<? extends BiDirectionalTransform> rules)
+	{
+		this.strategy = strategy;
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		this.index = new RuleIndex(rules, RuleIndex.Side.LEFT);
+	}
+
+	/**
+	 * Getter method for the strategy
+	 * @return the strategy
+	 */
+	public Strategy getStrategy()
+	{
+		return strategy;
+	}
+
+	/**
+	 * Getter method for the rules
+	 * @return an unmodifiable List of the rules in the order they're tried
+	 */
+	public List<BiDirectionalTransform> getRules()
+	{
+		return rules;
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		return normalize(orig, new IdentityHashMap<>(), null);
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		TransformSteps ans = new TransformSteps(orig);
+		normalize(orig, null, new Position(ans));
+		return ans;
+	}
+
+	/**
+	 * Normalizes an expression
+	 * @param memo the normal form of every subterm normalized so far, or null when recording steps
+	 * @param at where the expression is in the whole expression, and the steps to record rewrites in, or null
+	 * when not recording steps
+	 */
+	private Expression normalize(Expression e, Map<Expression, Expression> memo, Position at)
+	{
+		Expression cached = memo == null ? null : memo.get(e);
+		if (cached != null)
+			return cached;
+		Expression ans;
+		switch (strategy)
+		{
+			case INNERMOST:
+				ans = innermost(e, memo, at);
+				break;
+			case OUTERMOST:
+				ans = outermost(e, memo, at);
+				break;
+			default:
+				throw new UnsupportedOperationException("A rewrite strategy has been used without an implementation");
+		}
+		if (memo != null)
+		{
+			memo.put(e, ans);
+			memo.put(ans, ans);
+		}
+		return ans;
+	}
+
+	private Expression innermost(Expression e, Map<Expression, Expression> memo, Position at)
+	{
+		Expression ans = normalizeTerms(e, memo, at);
+		Optional<Expression> rewritten = rewriteTop(ans, at);
+		// The terms of the rewritten expression mostly come from normalized terms, which the memo already knows
+		return rewritten.isPresent() ? normalize(rewritten.get(), memo, at) : ans;
+	}
+
+	private Expression outermost(Expression e, Map<Expression, Expression> memo, Position at)
+	{
+		Expression ans = e;
+		while (true)
+		{
+			for (Optional<Expression> r = rewriteTop(ans, at); r.isPresent(); r = rewriteTop(ans, at))
+				ans = r.get();
+			Expression normalTerms = normalizeTerms(ans, memo, at);
+			// Normalizing the terms can expose a new redex at the top, so check again unless nothing changed
+			if (normalTerms == ans)
+				return ans;
+			ans = normalTerms;
+		}
+	}
+
+	/**
+	 * Normalizes every term of a Function
+	 * @return the original expression if no term changed, otherwise a new Function with the normalized terms
+	 */
+	private Expression normalizeTerms(Expression e, Map<Expression, Expression> memo, Position at)
+	{
+		if (!(e instanceof Function))
+			return e;
+		Function f = (Function) e;
+		List<Expression> terms = new ArrayList<>();
+		boolean changed = false;
+		for (Expression t : f.getTerms())
+		{
+			if (at != null)
+				at.path.add(terms.size());
+			Expression normal = normalize(t, memo, at);
+			if (at != null)
+				at.path.remove(at.path.size()-1);
+			changed |= normal != t;
+			terms.add(normal);
+		}
+		return changed ? Function.constructUnsafe(f.operator, terms) : e;
+	}
+
+	/**
+	 * Applies the first rule whose left side matches the whole expression, only trying the rules the index
+	 * says have the right shape
+	 */
+	private Optional<Expression> rewriteTop(Expression e, Position at)
+	{
+		for (RuleIndex.Candidate c : index.candidates(e))
+		{
+			Expression rewritten = c.rewrite(e);
+			if (rewritten != null)
+			{
+				if (at != null)
+					at.steps.addStep(new RuleApplication(c.rule(), c.side(), at.path, rewritten));
+				return Optional.of(rewritten);
+			}
+		}
+		return Optional.empty();
+	}
+
+	@Override
+	public String toString()
+	{
+		return strategy.name().toLowerCase()+" rewriting with "+rules;
+	}
+
+	/**
+	 * The steps rewrites are recorded in, along with the position of the subterm being normalized in the
+	 * expression they end at
+	 */
+	private static final class Position
+	{
+		private final TransformSteps steps;
+		private final List<Integer> path = new ArrayList<>();
+
+		private Position(TransformSteps steps)
+		{
+			this.steps = steps;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package logic.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import logic.Expression;
+import logic.Function;
+
+/**
+ * A single rewrite of one subterm of an expression by a rule, in one direction.  The subterm is found by its
+ * position, the index of the term to go into at each level from the top, and is replaced by what the rule
+ * rewrote it into.  The result is kept rather than found again, since a rule may match modulo AC in more than one
+ * way, so the step always gives exactly what the rewrite that recorded it gave.
+ * @author Jallibad
+ *
+ */
+public class RuleApplication implements Transform
+{
+	private static final long serialVersionUID = 6120846127385532309L;
+
+	private final BiDirectionalTransform rule;
+	private final RuleIndex.Side side;
+	private final int[] position;
+	private final Expression result;
+
+	/**
+	 * Creates a step rewriting one subterm
+	 * @param rule the rule applied
+	 * @param side the side of the rule the subterm matched
+	 * @param position the index of the term to go into at each level, a copy is made to avoid rep exposure
+	 * @param result what the subterm is rewritten into
+	 */
+	public RuleApplication(BiDirectionalTransform rule, RuleIndex.Side side, List<Integer> position, Expression result)
+	{
+		this.rule = rule;
+		this.side = side;
+		this.position = position.stream().mapToInt(Integer::intValue).toArray();
+		this.result = result;
+	}
+
+	/**
+	 * Getter method for the rule
+	 * @return the rule applied
+	 */
+	public BiDirectionalTransform getRule()
+	{
+		return rule;
+	}
+
+	/**
+	 * Getter method for the side
+	 * @return the side of the rule the subterm matched
+	 */
+	public RuleIndex.Side getSide()
+	{
+		return side;
+	}
+
+	/**
+	 * Getter method for the position
+	 * @return the index of the term to go into at each level from the top
+	 */
+	public List<Integer> getPosition()
+	{
+		List<Integer> ans = new ArrayList<>();
+		for (int i : position)
+			ans.add(i);
+		return ans;
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		return replace(orig, 0);
+	}
+
+	private Expression replace(Expression e, int depth)
+	{
+		if (depth == position.length)
+			return result;
+		if (!(e instanceof Function) || position[depth] >= e.getOperator().numArguments)
+			throw new TransformNotApplicableError();
+		List<Expression> terms = ((Function) e).getTerms();
+		terms.set(position[depth], replace(terms.get(position[depth]), depth+1));
+		return Function.constructUnsafe(e.getOperator(), terms);
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		TransformSteps ans = new TransformSteps(orig);
+		ans.addStep(this);
+		return ans;
+	}
+
+	@Override
+	public String toString()
+	{
+		return side == RuleIndex.Side.LEFT ? rule.toString() : rule+" (right to left)";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof RuleApplication))
+			return false;
+		RuleApplication other = (RuleApplication) o;
+		return rule.equals(other.rule) && side == other.side && Arrays.equals(position, other.position)
+			&& result.equals(other.result);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(rule, side, Arrays.hashCode(position), result);
+	}
+}
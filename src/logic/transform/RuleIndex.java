@@ -0,0 +1,299 @@
+package logic.transform;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+
+/**
+ * A discrimination tree over the patterns of a set of BiDirectionalTransforms.  Each pattern is read in preorder
+ * as a string of symbols, an operator for every Function, the constant itself for every Constant, and a wildcard
+ * for every Literal, since Literals in patterns stand for any subterm.  The strings are stored in a trie, so
+ * finding the patterns that could match a term is a single walk down the trie alongside the term, skipping a
+ * whole subterm at each wildcard, and doesn't depend on how many rules there are.
+ *
+ * Below a COMMUTATIVE and ASSOCIATIVE operator a pattern can match its arguments in any order and grouping, so
+ * only the operator itself is indexed and each of its arguments is read as a wildcard.
+ *
+ * The index only looks at the shape of the patterns.  A candidate whose pattern uses the same Literal twice may
+ * still fail to match, so candidates have to be confirmed, which rewrite does.
+ * @author Jallibad
+ *
+ */
+public class RuleIndex implements Serializable
+{
+	private static final long serialVersionUID = -6370420581738164245L;
+
+	/**
+	 * Which pattern of a rule is indexed
+	 * @author Jallibad
+	 *
+	 */
+	public enum Side
+	{
+		/**
+		 * The left pattern, for rewriting from left to right
+		 */
+		LEFT,
+		/**
+		 * The right pattern, for rewriting from right to left
+		 */
+		RIGHT
+	}
+
+	/**
+	 * Stands in for the arguments of an AC operator, which aren't indexed
+	 */
+	private static final Literal WILDCARD = Literal.createUnsafe("_");
+
+	private final List<Candidate> entries = new ArrayList<>();
+	private final Node root = new Node();
+
+	/**
+	 * Indexes the given sides of every rule.  A side whose other side uses variables it doesn't, like the right
+	 * side of absorption, (P OR (P AND Q)) to P, is skipped, since there'd be nothing to put in place of Q.
+	 * @param rules the rules to index, candidates are returned in this order
+	 * @param sides the patterns to index of each rule
+	 */
+	public RuleIndex(Collection<? extends BiDirectionalTransform> rules, Side... sides)
+	{
+		for (BiDirectionalTransform rule : rules)
+			for (Side side : sides)
+			{
+				Expression pattern = side == Side.LEFT ? rule.left() : rule.right();
+				Expression replacement = side == Side.LEFT ? rule.right() : rule.left();
+				if (!pattern.getVariables().containsAll(replacement.getVariables()))
+					continue;
+				Candidate c = new Candidate(rule, side);
+				Node n = root;
+				for (Expression symbol : preorder(c.pattern()))
+					n = n.child(symbol);
+				n.entries.add(entries.size());
+				entries.add(c);
+			}
+	}
+
+	/**
+	 * Finds every indexed pattern whose shape matches a term
+	 * @param term the term to look up
+	 * @return the candidates in the order the rules were given
+	 */
+	public List<Candidate> candidates(Expression term)
+	{
+		TreeMap<Integer, Candidate> found = new TreeMap<>();
+		collect(root, new Pending(term, null), found);
+		return new ArrayList<>(found.values());
+	}
+
+	/**
+	 * The number of patterns indexed
+	 * @return the number of patterns
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Every indexed pattern
+	 * @return an unmodifiable List of the candidates in the order they were indexed
+	 */
+	public List<Candidate> getEntries()
+	{
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Walks down the trie alongside the subterms still to be read, which are only expanded as far as the trie
+	 * goes, so a large term costs no more to look up than a small one
+	 */
+	private void collect(Node n, Pending pending, Map<Integer, Candidate> found)
+	{
+		if (pending == null)
+		{
+			n.entries.forEach(i -> found.put(i, entries.get(i)));
+			return;
+		}
+		if (n.wildcard != null)
+			collect(n.wildcard, pending.next, found);
+		Node child = n.children.get(key(pending.term));
+		if (child == null)
+			return;
+		Pending rest = pending.next;
+		if (pending.term instanceof Function)
+		{
+			List<Expression> terms = ((Function) pending.term).getTerms();
+			for (int i=terms.size()-1; i>=0; --i)
+				rest = new Pending(terms.get(i), rest);
+		}
+		collect(child, rest, found);
+	}
+
+	private static List<Expression> preorder(Expression e)
+	{
+		List<Expression> ans = new ArrayList<>();
+		List<Expression> stack = new ArrayList<>();
+		stack.add(e);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.remove(stack.size()-1);
+			ans.add(t);
+			if (PatternMatcher.isAc(t.getOperator()))
+			{
+				for (int i=0; i<t.getOperator().numArguments; ++i)
+					stack.add(WILDCARD);
+			}
+			else if (t instanceof Function)
+			{
+				List<Expression> terms = ((Function) t).getTerms();
+				for (int i=terms.size()-1; i>=0; --i)
+					stack.add(terms.get(i));
+			}
+		}
+		return ans;
+	}
+
+	/**
+	 * The symbol a trie edge is labelled with, or null for a Literal
+	 */
+	private static Object key(Expression symbol)
+	{
+		if (symbol instanceof Function)
+			return symbol.getOperator();
+		if (symbol instanceof Constant)
+			return symbol;
+		return null;
+	}
+
+	/**
+	 * A linked stack of the subterms still to be read, shared between the branches of the walk
+	 */
+	private static class Pending
+	{
+		private final Expression term;
+		private final Pending next;
+
+		private Pending(Expression term, Pending next)
+		{
+			this.term = term;
+			this.next = next;
+		}
+	}
+
+	private static class Node implements Serializable
+	{
+		private static final long serialVersionUID = 1390857207726134410L;
+
+		private final Map<Object, Node> children = new HashMap<>();
+		private Node wildcard;
+		private final List<Integer> entries = new ArrayList<>();
+
+		private Node child(Expression symbol)
+		{
+			if (symbol instanceof Literal)
+			{
+				if (wildcard == null)
+					wildcard = new Node();
+				return wildcard;
+			}
+			return children.computeIfAbsent(key(symbol), k -> new Node());
+		}
+	}
+
+	/**
+	 * A rule along with the side of it whose pattern matched
+	 * @author Jallibad
+	 *
+	 */
+	public static final class Candidate implements Serializable
+	{
+		private static final long serialVersionUID = 5011239460612813742L;
+
+		private final BiDirectionalTransform rule;
+		private final Side side;
+		private final PatternMatcher matcher;
+
+		private Candidate(BiDirectionalTransform rule, Side side)
+		{
+			this.rule = rule;
+			this.side = side;
+			this.matcher = new PatternMatcher(pattern(), replacement());
+		}
+
+		/**
+		 * Getter method for the rule
+		 * @return the rule
+		 */
+		public BiDirectionalTransform rule()
+		{
+			return rule;
+		}
+
+		/**
+		 * Getter method for the side of the rule that matched
+		 * @return the side
+		 */
+		public Side side()
+		{
+			return side;
+		}
+
+		/**
+		 * The pattern that matched
+		 * @return left() or right() of the rule, depending on the side
+		 */
+		public Expression pattern()
+		{
+			return side == Side.LEFT ? rule.left() : rule.right();
+		}
+
+		/**
+		 * The pattern the term is rewritten into
+		 * @return the other side of the rule
+		 */
+		public Expression replacement()
+		{
+			return side == Side.LEFT ? rule.right() : rule.left();
+		}
+
+		/**
+		 * The rule compiled for rewriting in the direction of this side
+		 * @return a matcher from pattern() to replacement()
+		 */
+		public PatternMatcher matcher()
+		{
+			return matcher;
+		}
+
+		/**
+		 * Rewrites a term from pattern() to replacement(), with the rule's own compiled code when it's an
+		 * InferenceRule and with matcher() otherwise
+		 * @param term the term to rewrite
+		 * @return the rewritten term, or null if the term doesn't match
+		 */
+		public Expression rewrite(Expression term)
+		{
+			if (rule instanceof InferenceRule)
+			{
+				InferenceRule r = (InferenceRule) rule;
+				return side == Side.LEFT ? r.rewriteLeft(term) : r.rewriteRight(term);
+			}
+			return matcher.rewrite(term);
+		}
+
+		@Override
+		public String toString()
+		{
+			return rule+" ("+side.name().toLowerCase()+")";
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package logic.transform;
+
+import logic.Expression;
+
+/**
+ * A single step replacing an expression with one that has been shown to be equivalent by exhausting
+ * every possible counterexample, rather than by a chain of InferenceRules.  Used as the justification of
+ * a proof when no step-by-step derivation could be reconstructed.
+ * @author Jallibad
+ *
+ */
+public class SemanticEquivalence implements Transform
+{
+	private static final long serialVersionUID = -2215930847164153406L;
+
+	private final Expression result;
+
+	/**
+	 * Creates a step that replaces any expression with the given one
+	 * @param result an expression equivalent to whatever the step is applied to
+	 */
+	public SemanticEquivalence(Expression result)
+	{
+		this.result = result;
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		return result;
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		TransformSteps ans = new TransformSteps(orig);
+		ans.addStep(this);
+		return ans;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "semantic equivalence (no counterexample exists)";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof SemanticEquivalence && ((SemanticEquivalence) o).result.equals(result);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return result.hashCode();
+	}
+}
@@ -1,8 +1,7 @@
 package logic.transform;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Optional;
 
 import logic.ExpParser;
 import logic.Expression;
@@ -16,13 +15,11 @@ public class Simplify implements Transform
 	}
 	
 	private static final long serialVersionUID = -5938246885231590898L;
-	private static final List<BiDirectionalTransform> strategies = new ArrayList<>();
-	static
-	{
-		strategies.add(InferenceRule.DOUBLE_NEGATION);
-		strategies.add(InferenceRule.DE_MORGANS_AND);
-		strategies.add(InferenceRule.DE_MORGANS_OR);
-	}
+	/*
+	 * Every inference rule is applied in both directions, so a larger intermediate step, like distributing to
+	 * expose a factor that cancels, doesn't stop anything smaller from being found.
+	 */
+	private static final EqualitySaturation saturation = new EqualitySaturation(Arrays.asList(InferenceRule.values()));
 	
 	public static final Simplify ACT = new Simplify();
 	
@@ -34,16 +31,23 @@ public class Simplify implements Transform
 	@Override
 	public Expression transform(Expression e)
 	{
-		return strategies.stream()
-				.map(strat -> strat.transformLeft(e))
-				.min(Comparator.comparing(simplified -> e.complexity()-simplified.complexity()))
-				.orElse(e).mapTerms(ACT::transform);
+		return saturation.transform(e);
 	}
 
 	@Override
 	public TransformSteps transformWithSteps(Expression orig)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return saturation.transformWithSteps(orig);
+	}
+
+	/**
+	 * Finds the inference rules turning one expression into another
+	 * @param from the expression to start from
+	 * @param to an expression equivalent to from
+	 * @return the rewrites, or an empty Optional if none were found
+	 */
+	public Optional<TransformSteps> prove(Expression from, Expression to)
+	{
+		return saturation.prove(from, to);
 	}
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package logic.transform;
 import java.io.Serializable;
 import java.util.Map;
 
+import logic.Constant;
 import logic.Expression;
 import logic.Function;
 import logic.Literal;
@@ -33,6 +34,8 @@ public interface Transform extends Serializable
 	{
 		if (e instanceof Literal && mapping.containsKey(e))
 			return mapping.get(e);
+		else if (e instanceof Constant)
+			return e;
 		else if (e instanceof Function)
 			return ((Function) e).mapTerms(x -> transform(mapping, x));
 		else
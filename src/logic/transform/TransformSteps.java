@@ -97,8 +97,6 @@ public class TransformSteps implements Serializable, Iterable<StepOrExpression>
 	 */
 	private void checkRep()
 	{
-		System.out.println(intermediaries);
-		System.out.println(steps);
 		assert(intermediaries.size() == steps.size()+1);
 	}
 	
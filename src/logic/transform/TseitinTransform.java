@@ -0,0 +1,335 @@
+package logic.transform;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * A Transform into an equisatisfiable conjunctive normal form of linear size.  Every Function gets a fresh
+ * definition literal, named τ1, τ2 and so on, along with a few clauses tying it to its terms, and the result is
+ * those clauses together with a unit clause asserting the root.  Unlike NormalForm.CONJUNCTIVE nothing is ever
+ * distributed, but the result is only equisatisfiable: it has a model exactly when the original does, and every
+ * model of it is a model of the original once the definition literals are dropped.
+ *
+ * With Plaisted–Greenbaum polarity reduction a definition literal only gets the clauses for the direction it's
+ * used in.  A subformula that only occurs positively just needs its literal to imply it, which roughly halves
+ * the number of clauses.
+ *
+ * Subformulas are shared by identity, so a subexpression object referenced twice is only defined once.
+ * @author Jallibad
+ *
+ */
+public class TseitinTransform implements Transform
+{
+	private static final long serialVersionUID = -4027749302855149732L;
+
+	/**
+	 * Defines every subformula in both directions, so each definition literal is equivalent to its subformula
+	 */
+	public static final TseitinTransform FULL = new TseitinTransform(false);
+
+	/**
+	 * Defines every subformula only in the directions it's used in
+	 */
+	public static final TseitinTransform PLAISTED_GREENBAUM = new TseitinTransform(true);
+
+	private static final int POSITIVE = 1;
+	private static final int NEGATIVE = 2;
+
+	private final boolean polarityReduction;
+
+	private TseitinTransform(boolean polarityReduction)
+	{
+		this.polarityReduction = polarityReduction;
+	}
+
+	@Override
+	public Expression transform(Expression orig)
+	{
+		return encode(orig).getCnf();
+	}
+
+	@Override
+	public TransformSteps transformWithSteps(Expression orig)
+	{
+		TransformSteps ans = new TransformSteps(orig);
+		ans.addStep(this);
+		return ans;
+	}
+
+	/**
+	 * Encodes an expression, keeping track of what every definition literal stands for
+	 * @param orig the expression to encode
+	 * @return the conjunctive normal form and its definition literals
+	 */
+	public Result encode(Expression orig)
+	{
+		Expression e = Restrict.FOLD_CONSTANTS.transform(orig);
+		Result ans = new Result(e);
+		if (!(e instanceof Function))
+		{
+			ans.cnf = e;
+			return ans;
+		}
+
+		// Number the Functions so each one comes after every Function it contains
+		List<Function> order = new ArrayList<>();
+		Map<Expression, Integer> index = new IdentityHashMap<>();
+		Deque<Expression> stack = new ArrayDeque<>();
+		Set<Expression> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+		stack.push(e);
+		while (!stack.isEmpty())
+		{
+			Expression t = stack.peek();
+			if (!(t instanceof Function) || index.containsKey(t))
+			{
+				stack.pop();
+				continue;
+			}
+			if (expanded.add(t))
+			{
+				for (Expression term : ((Function) t).getTerms())
+					stack.push(term);
+				continue;
+			}
+			stack.pop();
+			index.put(t, order.size());
+			order.add((Function) t);
+		}
+
+		// The polarity of each Function, found from the root down
+		int[] polarity = new int[order.size()];
+		polarity[order.size()-1] = POSITIVE;
+		for (int i=order.size()-1; i>=0; --i)
+		{
+			Function f = order.get(i);
+			int p = polarityReduction ? polarity[i] : POSITIVE | NEGATIVE;
+			for (Expression term : f.getTerms())
+			{
+				Integer j = index.get(term);
+				if (j == null)
+					continue;
+				if (f.operator == Operator.NEG)
+					polarity[j] |= flip(p);
+				else if (f.operator == Operator.AND || f.operator == Operator.OR)
+					polarity[j] |= p;
+				else
+					polarity[j] |= POSITIVE | NEGATIVE;
+			}
+		}
+
+		Expression[] literals = new Expression[order.size()];
+		List<Expression> clauses = new ArrayList<>();
+		for (int i=0; i<order.size(); ++i)
+		{
+			Function f = order.get(i);
+			Expression[] terms = new Expression[f.operator.numArguments];
+			for (int k=0; k<terms.length; ++k)
+			{
+				Integer j = index.get(f.getTerm(k));
+				terms[k] = j == null ? f.getTerm(k) : literals[j];
+			}
+			if (f.operator == Operator.NEG)
+			{
+				literals[i] = negate(terms[0]);
+				continue;
+			}
+			Literal x = ans.fresh(f);
+			literals[i] = x;
+			int p = polarityReduction ? polarity[i] : POSITIVE | NEGATIVE;
+			switch (f.operator)
+			{
+				case AND:
+					if ((p & POSITIVE) != 0)
+					{
+						clauses.add(or(negate(x), terms[0]));
+						clauses.add(or(negate(x), terms[1]));
+					}
+					if ((p & NEGATIVE) != 0)
+						clauses.add(or(x, or(negate(terms[0]), negate(terms[1]))));
+					break;
+				case OR:
+					if ((p & POSITIVE) != 0)
+						clauses.add(or(negate(x), or(terms[0], terms[1])));
+					if ((p & NEGATIVE) != 0)
+					{
+						clauses.add(or(x, negate(terms[0])));
+						clauses.add(or(x, negate(terms[1])));
+					}
+					break;
+				default:
+					// Rule out every row of the truth table where x differs from the result
+					for (boolean[] row : f.operator.truthTable)
+					{
+						Expression clause = row[terms.length] ? x : negate(x);
+						for (int k=0; k<terms.length; ++k)
+							clause = or(clause, row[k] ? negate(terms[k]) : terms[k]);
+						clauses.add(clause);
+					}
+			}
+		}
+		clauses.add(literals[order.size()-1]);
+		ans.cnf = balanced(clauses, 0, clauses.size());
+		return ans;
+	}
+
+	/**
+	 * The polarity of the term of a negation
+	 */
+	private static int flip(int polarity)
+	{
+		return ((polarity & POSITIVE) != 0 ? NEGATIVE : 0) | ((polarity & NEGATIVE) != 0 ? POSITIVE : 0);
+	}
+
+	/**
+	 * Negates a literal, removing a double negation rather than creating one
+	 */
+	private static Expression negate(Expression l)
+	{
+		if (l.getOperator() == Operator.NEG)
+			return ((Function) l).getTerm(0);
+		return Function.constructUnsafe(Operator.NEG, Collections.singletonList(l));
+	}
+
+	private static Expression or(Expression a, Expression b)
+	{
+		return Function.constructUnsafe(Operator.OR, Arrays.asList(a, b));
+	}
+
+	/**
+	 * Joins the clauses with ∧ as a balanced tree, so the depth of the result only grows logarithmically
+	 */
+	private static Expression balanced(List<Expression> clauses, int from, int to)
+	{
+		if (to-from == 1)
+			return clauses.get(from);
+		int mid = (from+to) >>> 1;
+		return Function.constructUnsafe(Operator.AND, Arrays.asList(balanced(clauses, from, mid), balanced(clauses, mid, to)));
+	}
+
+	@Override
+	public String toString()
+	{
+		return polarityReduction ? "Plaisted–Greenbaum encoding" : "Tseitin encoding";
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof TseitinTransform && ((TseitinTransform) o).polarityReduction == polarityReduction;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Boolean.hashCode(polarityReduction);
+	}
+
+	/**
+	 * The conjunctive normal form produced by encode, along with the subformula each definition literal stands for
+	 * @author Jallibad
+	 *
+	 */
+	public static class Result
+	{
+		private final Set<String> taken = new HashSet<>();
+		private final Map<Literal, Expression> definitions = new LinkedHashMap<>();
+		private Expression cnf;
+		private int counter;
+
+		private Result(Expression e)
+		{
+			Deque<Expression> stack = new ArrayDeque<>();
+			stack.push(e);
+			Set<Expression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+			while (!stack.isEmpty())
+			{
+				Expression t = stack.pop();
+				if (t instanceof Literal)
+					taken.add(((Literal) t).variableName);
+				else if (t instanceof Function && seen.add(t))
+					((Function) t).getTerms().forEach(stack::push);
+			}
+		}
+
+		/**
+		 * Creates a definition literal whose name isn't used by the original expression
+		 */
+		private Literal fresh(Expression definition)
+		{
+			String name;
+			do
+				name = "τ"+(++counter);
+			while (taken.contains(name));
+			Literal ans = Literal.createUnsafe(name);
+			definitions.put(ans, definition);
+			return ans;
+		}
+
+		/**
+		 * Getter method for the conjunctive normal form
+		 * @return the encoded expression
+		 */
+		public Expression getCnf()
+		{
+			return cnf;
+		}
+
+		/**
+		 * Gets the subformula each definition literal stands for, in the order they were created, so every
+		 * definition only mentions literals created before it
+		 * @return an unmodifiable Map from each definition literal to its subformula
+		 */
+		public Map<Literal, Expression> getDefinitions()
+		{
+			return Collections.unmodifiableMap(definitions);
+		}
+
+		/**
+		 * Extends a model of the original expression to a model of the encoding by giving every definition
+		 * literal the value of its subformula
+		 * @param model a value for every variable of the original expression
+		 * @return the model with the definition literals added
+		 */
+		public Map<Literal, Boolean> extend(Map<Literal, Boolean> model)
+		{
+			Map<Literal, Boolean> ans = new HashMap<>(model);
+			// Every definition's terms were defined before it, so each is evaluated from values already found
+			Map<Expression, Boolean> values = new IdentityHashMap<>();
+			definitions.forEach((l, d) ->
+			{
+				boolean[] args = new boolean[d.getOperator().numArguments];
+				for (int i=0; i<args.length; ++i)
+					args[i] = valueOf(((Function) d).getTerm(i), model, values);
+				boolean value = d.getOperator().apply(args);
+				values.put(d, value);
+				ans.put(l, value);
+			});
+			return ans;
+		}
+
+		private static boolean valueOf(Expression e, Map<Literal, Boolean> model, Map<Expression, Boolean> values)
+		{
+			Boolean value = values.get(e);
+			if (value != null)
+				return value;
+			if (e.getOperator() == Operator.NEG)
+				return !valueOf(((Function) e).getTerm(0), model, values);
+			return e.evaluate(model);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package logic.truthtable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import logic.Expression;
+import logic.Literal;
+import logic.TruthAssignment;
+
+/**
+ * Evaluates many expressions over the same variables together.  Every expression is compiled into a
+ * single CompiledExpression, so subterms shared between expressions are only evaluated once, and all
+ * of the truth tables are computed in a single pass over the rows.
+ * @author Jallibad
+ *
+ */
+public class BatchEvaluator
+{
+	private final List<Expression> expressions;
+	private final CompiledExpression compiled;
+
+	/**
+	 * Compiles the given expressions together over the union of their variables
+	 * @param expressions the expressions to evaluate
+	 */
+	public BatchEvaluator(Collection<? extends Expression> expressions)
+	{
+		this.expressions = new ArrayList<>(expressions);
+		Set<Literal> variables = new TreeSet<>(Comparator.comparing(l -> l.variableName));
+		for (Expression e : expressions)
+			variables.addAll(e.getVariables());
+		compiled = new CompiledExpression(this.expressions, new ArrayList<>(variables));
+	}
+
+	/**
+	 * Getter method for the shared variables, every truth table uses these columns in this order
+	 * @return an unmodifiable List of the columns
+	 */
+	public List<Literal> getColumns()
+	{
+		return compiled.getColumns();
+	}
+
+	/**
+	 * The number of distinct subterms across every expression, which is the work done per block of rows
+	 * @return the size of the merged expression
+	 */
+	public int sharedSize()
+	{
+		return compiled.size();
+	}
+
+	/**
+	 * Computes the truth table of every expression, packed in the same layout as CompiledExpression::evaluateBlock.
+	 * @return an array with the packed results of each expression, in the order they were given
+	 */
+	public long[][] truthTables()
+	{
+		if ((compiled.numRows()+63)/64 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The truth tables are too large to be held in memory");
+		long[][] ans = new long[expressions.size()][(int) ((compiled.numRows()+63)/64)];
+		long[] scratch = compiled.newScratch();
+		for (long block=0; block<compiled.numRows(); block+=CompiledExpression.BLOCK_SIZE)
+		{
+			compiled.evaluateBlock(block, scratch);
+			long valid = compiled.validBits(block);
+			for (int i=0; i<ans.length; ++i)
+				ans[i][(int) (block/64)] = compiled.rootValue(i, scratch) & valid;
+		}
+		return ans;
+	}
+
+	/**
+	 * Computes the truth table of every expression as a TruthAssignment over the shared columns
+	 * @return a List with the truth table of each expression, in the order they were given
+	 */
+	public List<TruthAssignment> truthAssignments()
+	{
+		List<TruthAssignment> ans = new ArrayList<>();
+		for (long[] table : truthTables())
+			ans.add(new TruthAssignment(getColumns(), table));
+		return ans;
+	}
+
+	/**
+	 * Counts the satisfying rows of every expression without keeping the truth tables
+	 * @return an array with the number of models of each expression, in the order they were given
+	 */
+	public long[] countModels()
+	{
+		long[] ans = new long[expressions.size()];
+		long[] scratch = compiled.newScratch();
+		for (long block=0; block<compiled.numRows(); block+=CompiledExpression.BLOCK_SIZE)
+		{
+			compiled.evaluateBlock(block, scratch);
+			long valid = compiled.validBits(block);
+			for (int i=0; i<ans.length; ++i)
+				ans[i] += Long.bitCount(compiled.rootValue(i, scratch) & valid);
+		}
+		return ans;
+	}
+
+	/**
+	 * Checks which expressions have exactly the same truth table as the given one, for instance to
+	 * find every answer that's equivalent to an answer key
+	 * @param index the index of the expression to compare against
+	 * @return an array that's true at each index whose expression is equivalent to expression index
+	 */
+	public boolean[] equivalentTo(int index)
+	{
+		boolean[] ans = new boolean[expressions.size()];
+		Arrays.fill(ans, true);
+		long[] scratch = compiled.newScratch();
+		for (long block=0; block<compiled.numRows(); block+=CompiledExpression.BLOCK_SIZE)
+		{
+			compiled.evaluateBlock(block, scratch);
+			long valid = compiled.validBits(block);
+			long expected = compiled.rootValue(index, scratch) & valid;
+			for (int i=0; i<ans.length; ++i)
+				ans[i] &= (compiled.rootValue(i, scratch) & valid) == expected;
+		}
+		return ans;
+	}
+}
@@ -0,0 +1,450 @@
+package logic.truthtable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * A flattened, bit-parallel form of an Expression used for enumerating large truth tables.
+ * Equal subterms are merged into a single node, and nodes are stored in evaluation order so
+ * each distinct subterm is computed once.  Every evaluation computes a block of 64 consecutive
+ * rows at once, one row per bit of a long.
+ *
+ * Rows are numbered in the same order as TruthAssignment, row 0 has every variable set to true and
+ * the last row has every variable set to false.  In other words column i is true in row r exactly when
+ * bit i of r is clear.  Columns are sorted by variable name so the numbering is stable between runs.
+ * @author Jallibad
+ *
+ */
+public class CompiledExpression implements Serializable
+{
+	private static final long serialVersionUID = 4418279153310629147L;
+
+	/**
+	 * The number of rows computed by a single call to evaluateBlock
+	 */
+	public static final int BLOCK_SIZE = 64;
+
+	/**
+	 * The largest number of variables supported, the row count has to fit in a long
+	 */
+	public static final int MAX_VARIABLES = 62;
+
+	/**
+	 * The operator value used for nodes that read a column directly
+	 */
+	private static final int VARIABLE = -1;
+
+	/**
+	 * The operator value used for the constants, with an operand of 1 for true and 0 for false
+	 */
+	private static final int CONSTANT = -2;
+
+	/**
+	 * The column patterns for the first six variables within a block, bit j is set when bit i of j is clear.
+	 */
+	private static final long[] LOW_COLUMNS =
+	{
+		0x5555555555555555L,
+		0x3333333333333333L,
+		0x0F0F0F0F0F0F0F0FL,
+		0x00FF00FF00FF00FFL,
+		0x0000FFFF0000FFFFL,
+		0x00000000FFFFFFFFL
+	};
+
+	private final List<Literal> columns;
+
+	/**
+	 * For each node either the ordinal of its Operator, VARIABLE, or CONSTANT
+	 */
+	private final int[] operators;
+
+	/**
+	 * For variable nodes the column index, for functions the start of the node's arguments in arguments[]
+	 */
+	private final int[] operands;
+
+	/**
+	 * The node indices of each function's arguments, packed together in order
+	 */
+	private final int[] arguments;
+
+	/**
+	 * The node index of each compiled expression, in the order they were given
+	 */
+	private final int[] roots;
+
+	/**
+	 * Compiles the given expression over its own variables
+	 * @param exp the expression to compile
+	 */
+	public CompiledExpression(Expression exp)
+	{
+		this(exp, sortedColumns(exp));
+	}
+
+	/**
+	 * Compiles the given expression over the given columns, which have to contain every variable
+	 * in the expression.  Extra columns are allowed and simply don't affect the result.
+	 * @param exp the expression to compile
+	 * @param columns the variables of the truth table, in column order
+	 */
+	public CompiledExpression(Expression exp, List<Literal> columns)
+	{
+		this(Collections.singletonList(exp), columns);
+	}
+
+	/**
+	 * Compiles several expressions together over the given columns.  Subterms that are shared between the
+	 * expressions are only stored once, so they're only evaluated once per block.  The first expression is the one
+	 * returned by evaluateBlock, the rest can be read with rootValue.
+	 * @param exps the expressions to compile
+	 * @param columns the variables of the truth table, in column order
+	 */
+	public CompiledExpression(List<Expression> exps, List<Literal> columns)
+	{
+		if (exps.isEmpty())
+			throw new IllegalArgumentException("At least one expression is needed");
+		if (columns.size() > MAX_VARIABLES)
+			throw new IllegalArgumentException(String.format
+			(
+				"Truth tables of %d variables are not supported, the maximum is %d",
+				columns.size(),
+				MAX_VARIABLES
+			));
+		this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+		Builder builder = new Builder(this.columns);
+		roots = exps.stream().mapToInt(builder::add).toArray();
+		operators = builder.operators.stream().mapToInt(Integer::intValue).toArray();
+		operands = builder.operands.stream().mapToInt(Integer::intValue).toArray();
+		arguments = builder.arguments.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private CompiledExpression(List<Literal> columns, int[] operators, int[] operands, int[] arguments, int[] roots)
+	{
+		this.columns = Collections.unmodifiableList(columns);
+		this.operators = operators;
+		this.operands = operands;
+		this.arguments = arguments;
+		this.roots = roots;
+	}
+
+	/**
+	 * Writes a compact binary form of the expression, which can be read back with read.
+	 * This is much smaller than default serialization and doesn't need the Expression classes on the other end.
+	 * @param out the stream to write to
+	 * @throws IOException if the stream can't be written
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeShort(columns.size());
+		for (Literal l : columns)
+			out.writeUTF(l.variableName);
+		out.writeInt(operators.length);
+		for (int i=0; i<operators.length; ++i)
+		{
+			out.writeByte(operators[i]);
+			out.writeInt(operands[i]);
+		}
+		out.writeInt(arguments.length);
+		for (int a : arguments)
+			out.writeInt(a);
+		out.writeInt(roots.length);
+		for (int r : roots)
+			out.writeInt(r);
+	}
+
+	/**
+	 * Reads an expression written by write
+	 * @param in the stream to read from
+	 * @return the compiled expression
+	 * @throws IOException if the stream can't be read
+	 */
+	public static CompiledExpression read(DataInput in) throws IOException
+	{
+		List<Literal> columns = new ArrayList<>();
+		for (int i=in.readShort(); i>0; --i)
+			columns.add(Literal.createUnsafe(in.readUTF()));
+		int[] operators = new int[in.readInt()];
+		int[] operands = new int[operators.length];
+		for (int i=0; i<operators.length; ++i)
+		{
+			operators[i] = in.readByte();
+			operands[i] = in.readInt();
+		}
+		int[] arguments = new int[in.readInt()];
+		for (int i=0; i<arguments.length; ++i)
+			arguments[i] = in.readInt();
+		int[] roots = new int[in.readInt()];
+		for (int i=0; i<roots.length; ++i)
+			roots[i] = in.readInt();
+		return new CompiledExpression(columns, operators, operands, arguments, roots);
+	}
+
+	/**
+	 * Collects the variables of an expression, sorted by name
+	 * @param exp the expression to collect variables from
+	 * @return a sorted List of the variables
+	 */
+	public static List<Literal> sortedColumns(Expression exp)
+	{
+		List<Literal> ans = new ArrayList<>(exp.getVariables());
+		ans.sort(Comparator.comparing(l -> l.variableName));
+		return ans;
+	}
+
+	/**
+	 * Getter method for the variables of the truth table, column i corresponds to bit i of the row number
+	 * @return an unmodifiable List of the columns
+	 */
+	public List<Literal> getColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * The number of rows in the full truth table, 2^n for n variables
+	 * @return the row count
+	 */
+	public long numRows()
+	{
+		return 1L << columns.size();
+	}
+
+	/**
+	 * The number of distinct subterms, which is the amount of work done per block
+	 * @return the node count
+	 */
+	public int size()
+	{
+		return operators.length;
+	}
+
+	/**
+	 * Allocates a scratch array large enough to be used with evaluateBlock
+	 * @return a new scratch array
+	 */
+	public long[] newScratch()
+	{
+		return new long[operators.length];
+	}
+
+	/**
+	 * Evaluates 64 consecutive rows of the truth table.  Bit j of the result is the value of the
+	 * expression in row firstRow+j.  Bits past the end of the table are unspecified, see validBits.
+	 * @param firstRow the first row of the block, must be a multiple of 64
+	 * @param scratch an array from newScratch, reused between calls to avoid allocation
+	 * @return the packed results
+	 */
+	public long evaluateBlock(long firstRow, long[] scratch)
+	{
+		evaluateNodes(firstRow, scratch);
+		return scratch[roots[0]];
+	}
+
+	/**
+	 * The number of expressions that were compiled together
+	 * @return the number of roots
+	 */
+	public int numRoots()
+	{
+		return roots.length;
+	}
+
+	/**
+	 * Reads the result of one of the compiled expressions after a call to evaluateBlock
+	 * @param i the index of the expression, in the order they were compiled
+	 * @param scratch the scratch array passed to evaluateBlock
+	 * @return the packed results of expression i
+	 */
+	public long rootValue(int i, long[] scratch)
+	{
+		return scratch[roots[i]];
+	}
+
+	/**
+	 * Evaluates every node for the block starting at firstRow, leaving the packed value of node i in scratch[i]
+	 * @param firstRow the first row of the block, must be a multiple of 64
+	 * @param scratch an array from newScratch
+	 */
+	void evaluateNodes(long firstRow, long[] scratch)
+	{
+		for (int i=0; i<operators.length; ++i)
+		{
+			int op = operators[i];
+			if (op == VARIABLE)
+			{
+				scratch[i] = column(operands[i], firstRow);
+				continue;
+			}
+			if (op == CONSTANT)
+			{
+				scratch[i] = operands[i] == 0 ? 0L : -1L;
+				continue;
+			}
+			int args = operands[i];
+			switch (OPERATORS[op])
+			{
+				case NEG:
+					scratch[i] = ~scratch[arguments[args]];
+					break;
+				case AND:
+					scratch[i] = scratch[arguments[args]] & scratch[arguments[args+1]];
+					break;
+				case OR:
+					scratch[i] = scratch[arguments[args]] | scratch[arguments[args+1]];
+					break;
+				default:
+					scratch[i] = fromTruthTable(OPERATORS[op], scratch, args);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a single row of the truth table
+	 * @param row the row number
+	 * @return the value of the expression in that row
+	 */
+	public boolean evaluate(long row)
+	{
+		return evaluate(row, newScratch());
+	}
+
+	/**
+	 * Evaluates a single row of the truth table, reusing a scratch array
+	 * @param row the row number
+	 * @param scratch an array from newScratch
+	 * @return the value of the expression in that row
+	 */
+	public boolean evaluate(long row, long[] scratch)
+	{
+		long firstRow = row & -BLOCK_SIZE;
+		return (evaluateBlock(firstRow, scratch) >>> (row-firstRow) & 1) != 0;
+	}
+
+	/**
+	 * The variable settings of a single row
+	 * @param row the row number
+	 * @return a Map from each column to its value in that row
+	 */
+	public Map<Literal, Boolean> assignment(long row)
+	{
+		Map<Literal, Boolean> ans = new HashMap<>();
+		for (int i=0; i<columns.size(); ++i)
+			ans.put(columns.get(i), (row >>> i & 1) == 0);
+		return ans;
+	}
+
+	/**
+	 * A mask of the bits of the block starting at firstRow that are actually inside the table
+	 * @param firstRow the first row of the block
+	 * @return a mask with one bit set per valid row
+	 */
+	public long validBits(long firstRow)
+	{
+		long remaining = numRows()-firstRow;
+		return remaining >= BLOCK_SIZE ? -1L : (1L << remaining)-1;
+	}
+
+	/**
+	 * The packed values of a column within the block starting at firstRow
+	 * @param i the column index
+	 * @param firstRow the first row of the block, must be a multiple of 64
+	 * @return the packed column values
+	 */
+	static long column(int i, long firstRow)
+	{
+		if (i < LOW_COLUMNS.length)
+			return LOW_COLUMNS[i];
+		return (firstRow >>> i & 1) == 0 ? -1L : 0L;
+	}
+
+	/**
+	 * Evaluates an arbitrary operator from its truth table, as the disjunction of each row
+	 * that results in true.
+	 */
+	private long fromTruthTable(Operator op, long[] scratch, int args)
+	{
+		long ans = 0;
+		for (boolean[] row : op.truthTable)
+		{
+			if (!row[row.length-1])
+				continue;
+			long minterm = -1L;
+			for (int x=0; x<row.length-1; ++x)
+				minterm &= row[x] ? scratch[arguments[args+x]] : ~scratch[arguments[args+x]];
+			ans |= minterm;
+		}
+		return ans;
+	}
+
+	private static final Operator[] OPERATORS = Operator.values();
+
+	/**
+	 * Flattens expressions into node arrays, merging equal subterms.
+	 */
+	private static class Builder
+	{
+		final List<Integer> operators = new ArrayList<>();
+		final List<Integer> operands = new ArrayList<>();
+		final List<Integer> arguments = new ArrayList<>();
+		final Map<Literal, Integer> columnIndices = new HashMap<>();
+		final Map<List<Integer>, Integer> nodes = new HashMap<>();
+
+		Builder(List<Literal> columns)
+		{
+			for (int i=0; i<columns.size(); ++i)
+				columnIndices.put(columns.get(i), i);
+		}
+
+		int add(Expression exp)
+		{
+			if (exp instanceof Literal)
+			{
+				Integer column = columnIndices.get(exp);
+				if (column == null)
+					throw new IllegalArgumentException(exp+" is not one of the columns");
+				return node(Arrays.asList(VARIABLE, column), VARIABLE, column, Collections.emptyList());
+			}
+			if (exp instanceof Constant)
+			{
+				int value = ((Constant) exp).value ? 1 : 0;
+				return node(Arrays.asList(CONSTANT, value), CONSTANT, value, Collections.emptyList());
+			}
+			Function f = (Function) exp;
+			List<Integer> args = new ArrayList<>();
+			for (int i=0; i<f.operator.numArguments; ++i)
+				args.add(add(f.getTerm(i)));
+			List<Integer> key = new ArrayList<>(args);
+			key.add(0, f.operator.ordinal());
+			return node(key, f.operator.ordinal(), arguments.size(), args);
+		}
+
+		private int node(List<Integer> key, int operator, int operand, List<Integer> args)
+		{
+			Integer existing = nodes.get(key);
+			if (existing != null)
+				return existing;
+			arguments.addAll(args);
+			operators.add(operator);
+			operands.add(operand);
+			nodes.put(key, operators.size()-1);
+			return operators.size()-1;
+		}
+	}
+}
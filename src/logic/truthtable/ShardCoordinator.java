@@ -0,0 +1,279 @@
+package logic.truthtable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import logic.Expression;
+import logic.Literal;
+
+/**
+ * Splits truth table enumeration across several ShardWorkers, which can be local processes or
+ * workers running on other machines.  The rows of the table are split into shards by the values of the
+ * highest columns, so every shard is a contiguous range of rows.  Shards are handed out to whichever
+ * worker is free, shards on a worker that fails are handed to the remaining workers, and tautology checks
+ * cancel every outstanding shard as soon as one worker finds a counterexample.
+ * @author Jallibad
+ *
+ */
+public class ShardCoordinator implements Closeable
+{
+	private static final Logger LOGGER = Logger.getLogger(ShardCoordinator.class.getName());
+
+	/**
+	 * The number of shards created per worker, more shards balance load better but cost more messages
+	 */
+	private static final int SHARDS_PER_WORKER = 4;
+
+	private final List<WorkerConnection> workers;
+	private final ExecutorService threads;
+
+	/**
+	 * Creates a coordinator using the given workers, which are closed along with the coordinator
+	 * @param workers the connections to the workers
+	 */
+	public ShardCoordinator(List<WorkerConnection> workers)
+	{
+		if (workers.isEmpty())
+			throw new IllegalArgumentException("At least one worker is needed");
+		this.workers = Collections.synchronizedList(new ArrayList<>(workers));
+		this.threads = Executors.newCachedThreadPool(r ->
+		{
+			Thread t = new Thread(r, "shard coordinator");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Creates a coordinator with the given number of worker processes on this machine
+	 * @param numWorkers the number of processes to start
+	 * @return the new coordinator
+	 * @throws IOException if the processes can't be started
+	 */
+	public static ShardCoordinator local(int numWorkers) throws IOException
+	{
+		List<WorkerConnection> workers = new ArrayList<>();
+		for (int i=0; i<numWorkers; ++i)
+			workers.add(WorkerConnection.spawnLocal());
+		return new ShardCoordinator(workers);
+	}
+
+	/**
+	 * Counts the rows of the truth table in which the expression is true
+	 * @param exp the expression to check
+	 * @return the number of satisfying assignments
+	 * @throws IOException if every worker fails
+	 */
+	public long countModels(Expression exp) throws IOException
+	{
+		return run(new CompiledExpression(exp), ShardProtocol.MODE_COUNT).count.get();
+	}
+
+	/**
+	 * Searches for an assignment that makes the expression false, stopping as soon as one is found
+	 * @param exp the expression to check
+	 * @return a falsifying assignment if there is one
+	 * @throws IOException if every worker fails
+	 */
+	public Optional<Map<Literal, Boolean>> findCounterexample(Expression exp) throws IOException
+	{
+		CompiledExpression compiled = new CompiledExpression(exp);
+		long row = run(compiled, ShardProtocol.MODE_TAUTOLOGY).counterexample.get();
+		return row < 0 ? Optional.empty() : Optional.of(compiled.assignment(row));
+	}
+
+	/**
+	 * Checks whether the expression is true in every row
+	 * @param exp the expression to check
+	 * @return true if the expression is a tautology
+	 * @throws IOException if every worker fails
+	 */
+	public boolean isTautology(Expression exp) throws IOException
+	{
+		return !findCounterexample(exp).isPresent();
+	}
+
+	/**
+	 * Computes the full result column of the truth table, packed in the same layout as CompiledExpression::evaluateBlock.
+	 * Element i of the result holds rows 64*i to 64*i+63.
+	 * @param exp the compiled expression to evaluate
+	 * @return the packed results
+	 * @throws IOException if every worker fails
+	 */
+	public long[] truthTable(CompiledExpression exp) throws IOException
+	{
+		if ((exp.numRows()+63)/64 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The truth table is too large to be held in memory, use TruthTableExporter instead");
+		return run(exp, ShardProtocol.MODE_TABLE).table;
+	}
+
+	/**
+	 * Runs a single job to completion, retrying shards from failed workers on the ones remaining
+	 */
+	private Job run(CompiledExpression exp, byte mode) throws IOException
+	{
+		Job job = new Job(exp, mode, workers.size()*SHARDS_PER_WORKER);
+		while (!job.cancelled.get() && job.remaining.get() > 0)
+		{
+			List<WorkerConnection> live = new ArrayList<>(workers);
+			if (live.isEmpty())
+				throw new IOException("Every worker failed with "+job.remaining.get()+" shards remaining");
+			List<Future<?>> running = new ArrayList<>();
+			for (WorkerConnection w : live)
+				running.add(threads.submit(() -> drive(w, job)));
+			for (Future<?> f : running)
+				try
+				{
+					f.get();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					job.cancel();
+					throw new IOException("Interrupted while waiting for workers", e);
+				}
+				catch (ExecutionException e)
+				{
+					throw new IOException(e.getCause());
+				}
+		}
+		return job;
+	}
+
+	/**
+	 * Feeds shards to a single worker until there are none left.  If the worker fails its current shard
+	 * is put back in the queue and the worker is dropped.
+	 */
+	private void drive(WorkerConnection worker, Job job)
+	{
+		ShardProtocol.Shard shard = null;
+		try
+		{
+			worker.sendFormula(job.formula);
+			while (!job.cancelled.get() && (shard = job.queue.poll()) != null)
+			{
+				job.busy.add(worker);
+				worker.sendTask(shard, job.mode);
+				byte reply = worker.in.readByte();
+				job.busy.remove(worker);
+				if (reply == ShardProtocol.CANCELLED)
+					return;
+				if (reply != ShardProtocol.RESULT)
+					throw new IOException("Unknown message type "+reply);
+				job.complete(shard, ShardProtocol.Result.read(worker.in));
+				shard = null;
+			}
+		}
+		catch (IOException e)
+		{
+			LOGGER.log(Level.WARNING, "Dropping "+worker+" after it failed", e);
+			job.busy.remove(worker);
+			workers.remove(worker);
+			worker.close();
+			if (shard != null)
+				job.queue.add(shard);
+		}
+	}
+
+	/**
+	 * Shuts down every worker
+	 */
+	@Override
+	public void close()
+	{
+		threads.shutdownNow();
+		synchronized (workers)
+		{
+			workers.forEach(WorkerConnection::close);
+			workers.clear();
+		}
+	}
+
+	/**
+	 * The shared state of a single enumeration
+	 */
+	private static class Job
+	{
+		final byte mode;
+		final byte[] formula;
+		final long[] table;
+		final Queue<ShardProtocol.Shard> queue = new ConcurrentLinkedQueue<>();
+		final Set<WorkerConnection> busy = ConcurrentHashMap.newKeySet();
+		final AtomicInteger remaining = new AtomicInteger();
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong counterexample = new AtomicLong(-1);
+		final AtomicBoolean cancelled = new AtomicBoolean();
+
+		Job(CompiledExpression exp, byte mode, int targetShards) throws IOException
+		{
+			this.mode = mode;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes))
+			{
+				exp.write(out);
+			}
+			formula = bytes.toByteArray();
+			table = new long[mode == ShardProtocol.MODE_TABLE ? (int) ((exp.numRows()+63)/64) : 0];
+
+			// Fix the highest prefixBits columns in each shard, keeping every shard a whole number of blocks
+			int numVariables = exp.getColumns().size();
+			int prefixBits = 0;
+			while ((1 << prefixBits) < targetShards && numVariables-prefixBits > 6)
+				prefixBits++;
+			long shardRows = exp.numRows() >>> prefixBits;
+			for (long i=0; i<1L<<prefixBits; ++i)
+				queue.add(new ShardProtocol.Shard(i*shardRows, shardRows));
+			remaining.set(queue.size());
+		}
+
+		void complete(ShardProtocol.Shard shard, ShardProtocol.Result result)
+		{
+			count.addAndGet(result.count);
+			if (mode == ShardProtocol.MODE_TABLE)
+				System.arraycopy(result.bits, 0, table, (int) (shard.firstRow/64), result.bits.length);
+			remaining.decrementAndGet();
+			if (result.counterexample >= 0)
+			{
+				counterexample.accumulateAndGet(result.counterexample, (a, b) -> a < 0 ? b : Math.min(a, b));
+				cancel();
+			}
+		}
+
+		/**
+		 * Stops every worker that's still running a shard of this job
+		 */
+		void cancel()
+		{
+			cancelled.set(true);
+			for (WorkerConnection w : busy)
+				try
+				{
+					w.send(ShardProtocol.CANCEL);
+				}
+				catch (IOException e)
+				{
+					// The worker's own thread will notice the failure
+				}
+		}
+	}
+}
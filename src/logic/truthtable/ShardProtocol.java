@@ -0,0 +1,116 @@
+package logic.truthtable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The messages exchanged between a ShardCoordinator and its ShardWorkers.  Every message starts with a
+ * single type byte.  The coordinator sends the formula once per job, followed by any number of tasks,
+ * and the worker answers each task with exactly one RESULT or CANCELLED message.
+ * @author Jallibad
+ *
+ */
+final class ShardProtocol
+{
+	/**
+	 * Private constructor to prevent instantiation
+	 */
+	private ShardProtocol()
+	{
+
+	}
+
+	// Coordinator to worker
+	static final byte FORMULA = 1;
+	static final byte TASK = 2;
+	static final byte CANCEL = 3;
+	static final byte SHUTDOWN = 4;
+
+	// Worker to coordinator
+	static final byte RESULT = 1;
+	static final byte CANCELLED = 2;
+
+	/**
+	 * Returns only the number of rows that are true
+	 */
+	static final byte MODE_COUNT = 0;
+
+	/**
+	 * Stops at the first row that is false
+	 */
+	static final byte MODE_TAUTOLOGY = 1;
+
+	/**
+	 * Returns the packed values of every row
+	 */
+	static final byte MODE_TABLE = 2;
+
+	/**
+	 * A contiguous range of rows, all of which share the same values for the highest columns
+	 */
+	static final class Shard
+	{
+		final long firstRow;
+		final long numRows;
+
+		Shard(long firstRow, long numRows)
+		{
+			this.firstRow = firstRow;
+			this.numRows = numRows;
+		}
+
+		void write(DataOutputStream out, byte mode) throws IOException
+		{
+			out.writeByte(TASK);
+			out.writeByte(mode);
+			out.writeLong(firstRow);
+			out.writeLong(numRows);
+			out.flush();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "rows "+firstRow+" to "+(firstRow+numRows-1);
+		}
+	}
+
+	/**
+	 * The answer to a single task.  Only TABLE results carry the packed rows.
+	 */
+	static final class Result
+	{
+		final long count;
+		final long counterexample;
+		final long[] bits;
+
+		Result(long count, long counterexample, long[] bits)
+		{
+			this.count = count;
+			this.counterexample = counterexample;
+			this.bits = bits;
+		}
+
+		void write(DataOutputStream out) throws IOException
+		{
+			out.writeByte(RESULT);
+			out.writeLong(count);
+			out.writeLong(counterexample);
+			out.writeInt(bits.length);
+			for (long l : bits)
+				out.writeLong(l);
+			out.flush();
+		}
+
+		static Result read(DataInputStream in) throws IOException
+		{
+			long count = in.readLong();
+			long counterexample = in.readLong();
+			long[] bits = new long[in.readInt()];
+			for (int i=0; i<bits.length; ++i)
+				bits[i] = in.readLong();
+			return new Result(count, counterexample, bits);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package logic.truthtable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The worker half of sharded truth table enumeration.  A worker evaluates ranges of rows sent to it
+ * by a ShardCoordinator and sends back the packed results.
+ *
+ * Run with no arguments the worker talks to its coordinator over stdin and stdout, which is how
+ * WorkerConnection::spawnLocal starts it.  Run with "--listen port" it accepts coordinator connections
+ * over TCP instead, so workers can be started ahead of time on other machines.
+ * @author Jallibad
+ *
+ */
+public final class ShardWorker
+{
+	private static final Logger LOGGER = Logger.getLogger(ShardWorker.class.getName());
+
+	/**
+	 * The number of blocks evaluated between checks for a cancellation message
+	 */
+	private static final int CANCEL_CHECK_INTERVAL = 1 << 12;
+
+	/**
+	 * Private constructor to prevent instantiation
+	 */
+	private ShardWorker()
+	{
+
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 2 && args[0].equals("--listen"))
+		{
+			listen(Integer.parseInt(args[1]));
+			return;
+		}
+		// Stdout carries the protocol, so anything else that gets printed is sent to stderr instead
+		PrintStream protocol = System.out;
+		System.setOut(System.err);
+		serve(System.in, protocol);
+	}
+
+	/**
+	 * Accepts coordinator connections forever, serving each one on its own thread
+	 * @param port the TCP port to listen on
+	 * @throws IOException if the port can't be opened
+	 */
+	public static void listen(int port) throws IOException
+	{
+		try (ServerSocket server = new ServerSocket(port))
+		{
+			while (true)
+			{
+				Socket socket = server.accept();
+				Thread t = new Thread(() ->
+				{
+					try (Socket s = socket)
+					{
+						serve(s.getInputStream(), s.getOutputStream());
+					}
+					catch (IOException e)
+					{
+						LOGGER.log(Level.WARNING, "Lost connection to coordinator", e);
+					}
+				});
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+	}
+
+	/**
+	 * Answers tasks from a single coordinator until it shuts the worker down or closes the stream
+	 * @param input the stream of messages from the coordinator
+	 * @param output the stream of messages to the coordinator
+	 * @throws IOException if either stream fails
+	 */
+	public static void serve(InputStream input, OutputStream output) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+		CompiledExpression exp = null;
+		while (true)
+		{
+			byte type;
+			try
+			{
+				type = in.readByte();
+			}
+			catch (EOFException e)
+			{
+				return;
+			}
+			switch (type)
+			{
+				case ShardProtocol.FORMULA:
+					exp = CompiledExpression.read(in);
+					break;
+				case ShardProtocol.TASK:
+					byte mode = in.readByte();
+					ShardProtocol.Shard shard = new ShardProtocol.Shard(in.readLong(), in.readLong());
+					if (exp == null)
+						throw new IOException("Received a task before any formula");
+					ShardProtocol.Result result = evaluate(exp, shard, mode, in);
+					if (result == null)
+					{
+						out.writeByte(ShardProtocol.CANCELLED);
+						out.flush();
+					}
+					else
+						result.write(out);
+					break;
+				case ShardProtocol.CANCEL:
+					// The task being cancelled already finished, the coordinator will ignore its result
+					break;
+				case ShardProtocol.SHUTDOWN:
+					return;
+				default:
+					throw new IOException("Unknown message type "+type);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a single shard, periodically checking the input for a cancellation
+	 * @return the result, or null if the task was cancelled
+	 */
+	static ShardProtocol.Result evaluate(CompiledExpression exp, ShardProtocol.Shard shard, byte mode, DataInputStream in) throws IOException
+	{
+		long[] scratch = exp.newScratch();
+		long[] bits = new long[mode == ShardProtocol.MODE_TABLE ? (int) ((shard.numRows+63)/64) : 0];
+		long count = 0;
+		long end = shard.firstRow+shard.numRows;
+		int blocks = 0;
+		for (long block=shard.firstRow; block<end; block+=CompiledExpression.BLOCK_SIZE)
+		{
+			if (++blocks % CANCEL_CHECK_INTERVAL == 0 && in.available() > 0 && in.readByte() == ShardProtocol.CANCEL)
+				return null;
+			long valid = end-block >= CompiledExpression.BLOCK_SIZE ? -1L : (1L << (end-block))-1;
+			long values = exp.evaluateBlock(block, scratch) & valid;
+			count += Long.bitCount(values);
+			if (mode == ShardProtocol.MODE_TABLE)
+				bits[(int) ((block-shard.firstRow)/64)] = values;
+			else if (mode == ShardProtocol.MODE_TAUTOLOGY && values != valid)
+				return new ShardProtocol.Result(count, block+Long.numberOfTrailingZeros(~values & valid), bits);
+		}
+		return new ShardProtocol.Result(count, -1, bits);
+	}
+}
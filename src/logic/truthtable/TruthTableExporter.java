@@ -0,0 +1,225 @@
+package logic.truthtable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import logic.Expression;
+
+/**
+ * Streams the full truth table of an Expression to a file.  Rows are computed 64 at a time with a
+ * CompiledExpression and written in chunks through a single direct buffer, so memory use doesn't
+ * depend on the size of the table.  Because every format has a fixed row width an interrupted export
+ * can be resumed from the last complete row.
+ * @author Jallibad
+ *
+ */
+public class TruthTableExporter
+{
+	/**
+	 * The default size of the direct buffer used for writing
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private final CompiledExpression exp;
+	private final TruthTableFormat format;
+	private final int bufferSize;
+	private final byte[] header;
+	private final int rowWidth;
+
+	/**
+	 * Creates an exporter for the given expression using the default buffer size
+	 * @param exp the expression whose truth table will be exported
+	 * @param format the file format to write
+	 */
+	public TruthTableExporter(Expression exp, TruthTableFormat format)
+	{
+		this(new CompiledExpression(exp), format, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates an exporter for an already compiled expression
+	 * @param exp the compiled expression whose truth table will be exported
+	 * @param format the file format to write
+	 * @param bufferSize the size in bytes of the direct buffer, has to hold at least one row
+	 */
+	public TruthTableExporter(CompiledExpression exp, TruthTableFormat format, int bufferSize)
+	{
+		this.exp = exp;
+		this.format = format;
+		this.header = format.header(exp.getColumns());
+		this.rowWidth = format.rowWidth(exp.getColumns().size());
+		if (bufferSize < Math.max(rowWidth, Long.BYTES))
+			throw new IllegalArgumentException("The buffer must be large enough to hold a single row");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Writes the entire truth table, replacing the file if it already exists
+	 * @param file the file to write to
+	 * @throws IOException if the file can't be written
+	 */
+	public void export(Path file) throws IOException
+	{
+		export(file, 0);
+	}
+
+	/**
+	 * Continues an export that was interrupted, starting after the last complete row in the file
+	 * @param file the partially written file
+	 * @return the row the export resumed from
+	 * @throws IOException if the file can't be read or written, or it wasn't written with the same expression and format
+	 */
+	public long resume(Path file) throws IOException
+	{
+		long startRow = file.toFile().exists() ? rowsWritten(file) : 0;
+		export(file, startRow);
+		return startRow;
+	}
+
+	/**
+	 * Writes the truth table starting from the given row.  Anything in the file after that row is replaced,
+	 * and everything before it is assumed to have already been written by an earlier export.
+	 * For BINARY files the start row is rounded down to a multiple of 8 so writing starts on a byte boundary.
+	 * @param file the file to write to
+	 * @param startRow the first row to write
+	 * @throws IOException if the file can't be written, or the rows before startRow haven't been written yet
+	 */
+	public void export(Path file, long startRow) throws IOException
+	{
+		if (startRow < 0 || startRow > exp.numRows())
+			throw new IllegalArgumentException(String.format
+			(
+				"Row %d is outside of the truth table, which has %d rows",
+				startRow,
+				exp.numRows()
+			));
+		if (format == TruthTableFormat.BINARY)
+			startRow &= ~7L;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+			seek(channel, startRow, buffer);
+			if (format == TruthTableFormat.BINARY)
+				writeBits(channel, buffer, startRow);
+			else
+				writeRows(channel, buffer, startRow);
+			flush(channel, buffer);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Counts the complete rows that have already been written to a file, a trailing partial row isn't counted
+	 * @param file the file to check
+	 * @return the number of complete rows
+	 * @throws IOException if the file can't be read
+	 */
+	public long rowsWritten(Path file) throws IOException
+	{
+		return Math.min(rowsWritten(file.toFile().length()), exp.numRows());
+	}
+
+	/**
+	 * Positions the channel at the given row, checking that everything before it has been written
+	 */
+	private void seek(FileChannel channel, long startRow, ByteBuffer buffer) throws IOException
+	{
+		if (startRow == 0)
+		{
+			channel.truncate(0);
+			buffer.put(header);
+			return;
+		}
+		if (rowsWritten(channel.size()) < startRow)
+			throw new IOException(String.format("Can't resume from row %d, only %d rows have been written", startRow, rowsWritten(channel.size())));
+		checkHeader(channel);
+		long position = format == TruthTableFormat.BINARY ? startRow/8 : header.length+startRow*rowWidth;
+		channel.truncate(position);
+		channel.position(position);
+	}
+
+	/**
+	 * Counts the complete rows in a file of the given size
+	 */
+	private long rowsWritten(long size)
+	{
+		if (format == TruthTableFormat.BINARY)
+			return size*8;
+		return size < header.length ? 0 : (size-header.length)/rowWidth;
+	}
+
+	/**
+	 * Makes sure a file being resumed has the same columns and format
+	 */
+	private void checkHeader(FileChannel channel) throws IOException
+	{
+		ByteBuffer existing = ByteBuffer.allocate(header.length);
+		while (existing.hasRemaining() && channel.read(existing, existing.position()) >= 0);
+		if (!Arrays.equals(existing.array(), header))
+			throw new IOException("The file was written with different columns or in a different format");
+	}
+
+	private void writeBits(FileChannel channel, ByteBuffer buffer, long startRow) throws IOException
+	{
+		long[] scratch = exp.newScratch();
+		long numRows = exp.numRows();
+		for (long block=startRow & -CompiledExpression.BLOCK_SIZE; block<numRows; block+=CompiledExpression.BLOCK_SIZE)
+		{
+			long bits = exp.evaluateBlock(block, scratch) & exp.validBits(block);
+			int skip = (int) Math.max(startRow-block, 0);
+			int count = (int) Math.min(CompiledExpression.BLOCK_SIZE, numRows-block)-skip;
+			if (buffer.remaining() < Long.BYTES)
+				flush(channel, buffer);
+			TruthTableFormat.putBits(buffer, bits >>> skip, count);
+		}
+	}
+
+	private void writeRows(FileChannel channel, ByteBuffer buffer, long startRow) throws IOException
+	{
+		int numVariables = exp.getColumns().size();
+		long[] scratch = exp.newScratch();
+		long numRows = exp.numRows();
+
+		// The variable cells of consecutive rows change like a binary counter, so only the bits
+		// that flip between rows are rewritten rather than the entire row.
+		byte[] row = new byte[rowWidth];
+		format.initRow(row);
+		for (int i=0; i<numVariables; ++i)
+			format.setCell(row, i, (startRow >>> i & 1) == 0);
+
+		long bits = 0;
+		for (long r=startRow; r<numRows; ++r)
+		{
+			if (r == startRow || (r & (CompiledExpression.BLOCK_SIZE-1)) == 0)
+				bits = exp.evaluateBlock(r & -CompiledExpression.BLOCK_SIZE, scratch);
+			if (r != startRow)
+				for (int i=0; i<numVariables; ++i)
+				{
+					boolean bit = (r >>> i & 1) != 0;
+					format.setCell(row, i, !bit);
+					if (bit)
+						break;
+				}
+			format.setCell(row, numVariables, (bits >>> (r & (CompiledExpression.BLOCK_SIZE-1)) & 1) != 0);
+			if (buffer.remaining() < rowWidth)
+				flush(channel, buffer);
+			buffer.put(row);
+		}
+	}
+
+	/**
+	 * Writes out everything in the buffer and clears it for reuse
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
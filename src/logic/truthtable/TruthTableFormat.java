@@ -0,0 +1,131 @@
+package logic.truthtable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import logic.Literal;
+
+/**
+ * An enum representing the file formats supported by TruthTableExporter.  The text formats use fixed width rows,
+ * so the byte offset of any row can be computed directly, which is what allows an export to be resumed.
+ * @author Jallibad
+ *
+ */
+public enum TruthTableFormat
+{
+	/**
+	 * <p>
+	 * A packed bitmap of the result column, with no header
+	 * </p>
+	 *
+	 * Row r is stored in bit r%8 of byte r/8, so the file is 2^n/8 bytes long.
+	 */
+	BINARY,
+
+	/**
+	 * <p>
+	 * Comma separated values, with a header row of variable names
+	 * </p>
+	 *
+	 * Each row holds a 1 or 0 for every variable followed by the value of the expression.
+	 */
+	CSV,
+
+	/**
+	 * <p>
+	 * The same layout as TruthAssignment::toString
+	 * </p>
+	 *
+	 * A header of variable names, followed by a row of 'T' and 'F' values for each assignment.
+	 */
+	TEXT;
+
+	/**
+	 * The bytes written before the first row
+	 * @param columns the variables of the truth table
+	 * @return the encoded header, empty for BINARY
+	 */
+	byte[] header(List<Literal> columns)
+	{
+		StringBuilder ans = new StringBuilder();
+		switch (this)
+		{
+			case BINARY:
+				break;
+			case CSV:
+				for (Literal l : columns)
+					ans.append(l.variableName+",");
+				ans.append("value\n");
+				break;
+			case TEXT:
+				for (Literal l : columns)
+					ans.append(l.variableName+"|");
+				ans.append("\n");
+				break;
+			default:
+				throw new UnsupportedOperationException("A truth table format has been used without an implementation");
+		}
+		return ans.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The number of bytes in a single row, which is the same for every row
+	 * @param numVariables the number of variables in the truth table
+	 * @return the row width, 0 for BINARY since rows are packed as bits
+	 */
+	int rowWidth(int numVariables)
+	{
+		switch (this)
+		{
+			case BINARY:
+				return 0;
+			case CSV:
+				// "1," for each cell, with the last comma replaced by a newline
+				return 2*(numVariables+1);
+			case TEXT:
+				// "T|" for each cell followed by a newline
+				return 2*(numVariables+1)+1;
+			default:
+				throw new UnsupportedOperationException("A truth table format has been used without an implementation");
+		}
+	}
+
+	/**
+	 * Fills in a row template with the separators, the cells themselves are written by setCell
+	 * @param template the array holding one row, rowWidth bytes long
+	 */
+	void initRow(byte[] template)
+	{
+		int cells = (template.length-(this == TEXT ? 1 : 0))/2;
+		for (int i=0; i<cells; ++i)
+			template[2*i+1] = (byte) (this == TEXT ? '|' : ',');
+		template[template.length-1] = '\n';
+	}
+
+	/**
+	 * Sets a single cell of a row template
+	 * @param template the array holding one row
+	 * @param cell the index of the cell, the result is the cell after the last variable
+	 * @param value the value to write
+	 */
+	void setCell(byte[] template, int cell, boolean value)
+	{
+		if (this == TEXT)
+			template[2*cell] = (byte) (value ? 'T' : 'F');
+		else
+			template[2*cell] = (byte) (value ? '1' : '0');
+	}
+
+	/**
+	 * Writes the results of a block of rows to a buffer in the packed BINARY layout
+	 * @param buffer the buffer to write to
+	 * @param bits the packed results, starting with the first row to write
+	 * @param count the number of rows to write, a multiple of 8 unless it's the end of the table
+	 */
+	static void putBits(ByteBuffer buffer, long bits, int count)
+	{
+		for (int i=0; i<count; i+=8)
+			buffer.put((byte) (bits >>> i));
+	}
+}
@@ -0,0 +1,335 @@
+package logic.truthtable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.OperatorTrait;
+
+/**
+ * Finds groups of variables that can be freely permuted without changing an expression, and uses them
+ * to shrink truth table enumeration.  If every variable in a group is interchangeable the value of the
+ * expression only depends on how many of them are true, so a group of k variables only needs k+1 rows
+ * rather than 2^k.  Rows are grouped into orbits, and only one representative row of each orbit is evaluated.
+ *
+ * Symmetries are detected structurally.  Two variables are interchangeable if swapping them gives the same
+ * expression up to the order and grouping of COMMUTATIVE and ASSOCIATIVE operators.  This can miss
+ * symmetries that only hold semantically, but every symmetry found is genuine.
+ * @author Jallibad
+ *
+ */
+public class VariableSymmetry
+{
+	private final CompiledExpression exp;
+	private final List<List<Literal>> groups;
+	private final List<Literal> freeVariables;
+
+	/**
+	 * For each group, the row bits of its columns
+	 */
+	private final long[] groupMasks;
+
+	/**
+	 * The column index of each variable in each group, and of each free variable
+	 */
+	private final int[][] groupColumns;
+	private final int[] freeColumns;
+
+	private VariableSymmetry(Expression exp, List<List<Literal>> groups, List<Literal> freeVariables)
+	{
+		this.exp = new CompiledExpression(exp);
+		this.groups = groups;
+		this.freeVariables = freeVariables;
+		List<Literal> columns = this.exp.getColumns();
+		groupMasks = new long[groups.size()];
+		groupColumns = new int[groups.size()][];
+		for (int g=0; g<groups.size(); ++g)
+		{
+			groupColumns[g] = groups.get(g).stream().mapToInt(columns::indexOf).toArray();
+			for (int column : groupColumns[g])
+				groupMasks[g] |= 1L << column;
+		}
+		freeColumns = freeVariables.stream().mapToInt(columns::indexOf).toArray();
+	}
+
+	/**
+	 * Finds the groups of interchangeable variables in an expression.  Variables are first bucketed by a
+	 * signature of the contexts they occur in, and only variables with equal signatures are compared.
+	 * @param exp the expression to analyze
+	 * @return the symmetry groups of the expression
+	 */
+	public static VariableSymmetry analyze(Expression exp)
+	{
+		Map<Literal, List<String>> contexts = new HashMap<>();
+		collectContexts(exp, "", contexts);
+		Map<String, List<Literal>> buckets = new TreeMap<>();
+		for (Literal l : CompiledExpression.sortedColumns(exp))
+		{
+			List<String> signature = contexts.get(l);
+			Collections.sort(signature);
+			buckets.computeIfAbsent(signature.toString(), k -> new ArrayList<>()).add(l);
+		}
+
+		String canonical = canonical(exp, Collections.emptyMap());
+		List<List<Literal>> groups = new ArrayList<>();
+		List<Literal> freeVariables = new ArrayList<>();
+		for (List<Literal> bucket : buckets.values())
+		{
+			// Anything interchangeable with the first variable is interchangeable with every other variable in
+			// its group, so each group only needs to be compared against its first member.
+			List<Literal> remaining = new ArrayList<>(bucket);
+			while (!remaining.isEmpty())
+			{
+				Literal first = remaining.remove(0);
+				List<Literal> group = new ArrayList<>();
+				group.add(first);
+				for (int i=0; i<remaining.size(); ++i)
+				{
+					Map<Literal, Literal> swap = new HashMap<>();
+					swap.put(first, remaining.get(i));
+					swap.put(remaining.get(i), first);
+					if (canonical(exp, swap).equals(canonical))
+						group.add(remaining.remove(i--));
+				}
+				if (group.size() == 1)
+					freeVariables.add(first);
+				else
+					groups.add(Collections.unmodifiableList(group));
+			}
+		}
+		return new VariableSymmetry(exp, Collections.unmodifiableList(groups), Collections.unmodifiableList(freeVariables));
+	}
+
+	/**
+	 * Records the path of operators and argument positions leading to each occurrence of each variable.
+	 * Argument positions are left out under commutative operators, where they don't matter.
+	 */
+	private static void collectContexts(Expression e, String path, Map<Literal, List<String>> contexts)
+	{
+		if (e instanceof Literal)
+		{
+			contexts.computeIfAbsent((Literal) e, k -> new ArrayList<>()).add(path);
+			return;
+		}
+		if (!(e instanceof Function))
+			return;
+		Function f = (Function) e;
+		for (int i=0; i<f.operator.numArguments; ++i)
+		{
+			String position = f.operator.hasTrait(OperatorTrait.COMMUTATIVE) ? "" : Integer.toString(i);
+			collectContexts(f.getTerm(i), path+f.operator.name()+position+"/", contexts);
+		}
+	}
+
+	/**
+	 * Writes an expression in a canonical form, where chains of an associative operator are flattened and the
+	 * arguments of commutative operators are sorted.  Two expressions have the same canonical form exactly when
+	 * they are equal up to commutativity and associativity.
+	 * @param e the expression to write
+	 * @param rename variables to rename while writing, any variable not in the Map keeps its name
+	 * @return the canonical form
+	 */
+	static String canonical(Expression e, Map<Literal, Literal> rename)
+	{
+		if (e instanceof Literal)
+			return "v"+rename.getOrDefault(e, (Literal) e).variableName;
+		if (e instanceof Constant)
+			return e.toString();
+		Function f = (Function) e;
+		List<String> terms = new ArrayList<>();
+		collectTerms(f, f, rename, terms);
+		if (f.operator.hasTrait(OperatorTrait.COMMUTATIVE))
+			Collections.sort(terms);
+		return "("+f.operator.name()+" "+String.join(" ", terms)+")";
+	}
+
+	private static void collectTerms(Function root, Expression e, Map<Literal, Literal> rename, List<String> terms)
+	{
+		if (e != root && (e.getOperator() != root.operator || !root.operator.hasTrait(OperatorTrait.ASSOCIATIVE)))
+		{
+			terms.add(canonical(e, rename));
+			return;
+		}
+		for (int i=0; i<root.operator.numArguments; ++i)
+			collectTerms(root, ((Function) e).getTerm(i), rename, terms);
+	}
+
+	/**
+	 * Getter method for the groups of interchangeable variables, each with at least two variables
+	 * @return an unmodifiable List of the groups
+	 */
+	public List<List<Literal>> getGroups()
+	{
+		return groups;
+	}
+
+	/**
+	 * Getter method for the variables that aren't interchangeable with any other variable
+	 * @return an unmodifiable List of the variables
+	 */
+	public List<Literal> getFreeVariables()
+	{
+		return freeVariables;
+	}
+
+	/**
+	 * The number of orbits, which is the number of rows that are actually evaluated
+	 * @return the product of (size+1) over every group, times 2^(number of free variables)
+	 */
+	public long numOrbits()
+	{
+		long ans = 1L << freeVariables.size();
+		for (List<Literal> group : groups)
+			ans *= group.size()+1;
+		return ans;
+	}
+
+	/**
+	 * Counts the satisfying rows of the full truth table, evaluating one row per orbit
+	 * @return the number of models
+	 */
+	public long countModels()
+	{
+		long[] scratch = exp.newScratch();
+		long ans = 0;
+		for (long orbit=0; orbit<numOrbits(); ++orbit)
+			if (exp.evaluate(representative(orbit), scratch))
+				ans += orbitSize(orbit);
+		return ans;
+	}
+
+	/**
+	 * Searches for an assignment that makes the expression false, evaluating one row per orbit
+	 * @return a falsifying assignment if there is one
+	 */
+	public Optional<Map<Literal, Boolean>> findCounterexample()
+	{
+		long[] scratch = exp.newScratch();
+		for (long orbit=0; orbit<numOrbits(); ++orbit)
+		{
+			long row = representative(orbit);
+			if (!exp.evaluate(row, scratch))
+				return Optional.of(exp.assignment(row));
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Checks whether the expression is true in every row, evaluating one row per orbit
+	 * @return true if the expression is a tautology
+	 */
+	public boolean isTautology()
+	{
+		return !findCounterexample().isPresent();
+	}
+
+	/**
+	 * Computes the full truth table, in the layout of CompiledExpression::evaluateBlock over
+	 * CompiledExpression::sortedColumns.  Each row is looked up from the value of its orbit.
+	 * @return the packed results
+	 */
+	public long[] truthTable()
+	{
+		if ((exp.numRows()+63)/64 > Integer.MAX_VALUE || numOrbits() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The truth table is too large to be held in memory");
+		long[] scratch = exp.newScratch();
+		boolean[] orbitValues = new boolean[(int) numOrbits()];
+		for (int orbit=0; orbit<orbitValues.length; ++orbit)
+			orbitValues[orbit] = exp.evaluate(representative(orbit), scratch);
+
+		long[] ans = new long[(int) ((exp.numRows()+63)/64)];
+		for (long row=0; row<exp.numRows(); ++row)
+			if (orbitValues[(int) orbitOf(row)])
+				ans[(int) (row >>> 6)] |= 1L << (row & 63);
+		return ans;
+	}
+
+	/**
+	 * Evaluates the expression in a single row by looking up the representative of the row's orbit
+	 * @param settings a value for every variable of the expression
+	 * @return the value of the expression
+	 */
+	public boolean evaluate(Map<Literal, Boolean> settings)
+	{
+		long row = 0;
+		List<Literal> columns = exp.getColumns();
+		for (int i=0; i<columns.size(); ++i)
+			if (!settings.get(columns.get(i)))
+				row |= 1L << i;
+		return exp.evaluate(representative(orbitOf(row)));
+	}
+
+	/**
+	 * Numbers orbits in mixed radix, with one digit per group holding the number of true variables
+	 * in that group, followed by one bit per free variable.
+	 */
+	private long orbitOf(long row)
+	{
+		long ans = 0;
+		for (int g=groups.size()-1; g>=0; --g)
+			ans = ans*(groupColumns[g].length+1) + groupColumns[g].length-Long.bitCount(row & groupMasks[g]);
+		for (int i=freeColumns.length-1; i>=0; --i)
+			ans = ans*2 + (row >>> freeColumns[i] & 1);
+		return ans;
+	}
+
+	/**
+	 * The row of an orbit in which the first k variables of a group with k true variables are true.
+	 * Free variables are the lowest bits of the orbit number, with a set bit meaning false like the row number.
+	 */
+	private long representative(long orbit)
+	{
+		long row = 0;
+		for (int column : freeColumns)
+		{
+			row |= (orbit & 1) << column;
+			orbit >>>= 1;
+		}
+		for (int[] group : groupColumns)
+		{
+			long numTrue = orbit % (group.length+1);
+			orbit /= group.length+1;
+			for (int i=(int) numTrue; i<group.length; ++i)
+				row |= 1L << group[i];
+		}
+		return row;
+	}
+
+	/**
+	 * The number of rows in an orbit, the product of (size choose true variables) over every group
+	 */
+	private long orbitSize(long orbit)
+	{
+		orbit >>>= freeVariables.size();
+		long ans = 1;
+		for (List<Literal> group : groups)
+		{
+			int numTrue = (int) (orbit % (group.size()+1));
+			orbit /= group.size()+1;
+			ans *= binomial(group.size(), numTrue);
+		}
+		return ans;
+	}
+
+	private static long binomial(int n, int k)
+	{
+		long ans = 1;
+		for (int i=1; i<=k; ++i)
+			ans = ans*(n-k+i)/i;
+		return ans;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "groups: "+groups+", free: "+freeVariables;
+	}
+}
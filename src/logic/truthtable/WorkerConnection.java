@@ -0,0 +1,136 @@
+package logic.truthtable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A connection from a ShardCoordinator to a single ShardWorker, either a local child process
+ * talking over pipes or a remote worker talking over a socket.
+ * @author Jallibad
+ *
+ */
+public class WorkerConnection implements Closeable
+{
+	final DataInputStream in;
+	final DataOutputStream out;
+	private final Closeable resource;
+	private final String description;
+
+	private WorkerConnection(DataInputStream in, DataOutputStream out, Closeable resource, String description)
+	{
+		this.in = in;
+		this.out = out;
+		this.resource = resource;
+		this.description = description;
+	}
+
+	/**
+	 * Starts a new worker process on this machine using the same JVM and classpath as the current process
+	 * @return a connection to the new worker
+	 * @throws IOException if the process can't be started
+	 */
+	public static WorkerConnection spawnLocal() throws IOException
+	{
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName())
+			.redirectError(ProcessBuilder.Redirect.INHERIT)
+			.start();
+		return new WorkerConnection
+		(
+			new DataInputStream(new BufferedInputStream(p.getInputStream())),
+			new DataOutputStream(new BufferedOutputStream(p.getOutputStream())),
+			p::destroy,
+			"local worker"
+		);
+	}
+
+	/**
+	 * Connects to a worker that was started with "--listen port"
+	 * @param host the host the worker is running on
+	 * @param port the port the worker is listening on
+	 * @return a connection to the worker
+	 * @throws IOException if the worker can't be reached
+	 */
+	public static WorkerConnection connect(String host, int port) throws IOException
+	{
+		Socket socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		return new WorkerConnection
+		(
+			new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+			new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())),
+			socket,
+			host+":"+port
+		);
+	}
+
+	/**
+	 * Sends a single message byte, the output is shared with the thread sending tasks
+	 * @param message the message type
+	 * @throws IOException if the worker can't be reached
+	 */
+	synchronized void send(byte message) throws IOException
+	{
+		out.writeByte(message);
+		out.flush();
+	}
+
+	/**
+	 * Sends the formula for the following tasks
+	 * @param formula the formula, already encoded with CompiledExpression::write
+	 * @throws IOException if the worker can't be reached
+	 */
+	synchronized void sendFormula(byte[] formula) throws IOException
+	{
+		out.writeByte(ShardProtocol.FORMULA);
+		out.write(formula);
+		out.flush();
+	}
+
+	/**
+	 * Sends a single task
+	 * @param shard the rows to evaluate
+	 * @param mode what to compute for those rows
+	 * @throws IOException if the worker can't be reached
+	 */
+	synchronized void sendTask(ShardProtocol.Shard shard, byte mode) throws IOException
+	{
+		shard.write(out, mode);
+	}
+
+	/**
+	 * Tells the worker to exit and releases the connection
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			send(ShardProtocol.SHUTDOWN);
+		}
+		catch (IOException e)
+		{
+			// The worker is already gone
+		}
+		try
+		{
+			resource.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing else can be done
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+}
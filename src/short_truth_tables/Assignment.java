@@ -49,9 +49,50 @@ public class Assignment
 			return exp.getOperator().displayText;
 		return exp.prettyPrint();
 	}
+	
+	/**
+	 * Getter method for the expression this node assigns a value to
+	 * @return the expression
+	 */
+	public Expression getExpression()
+	{
+		return exp;
+	}
+	
+	/**
+	 * Getter method for the nodes of each term, in the same order as the terms of the expression
+	 * @return the List of child nodes, a copy is made to avoid rep exposure
+	 */
+	public List<Assignment> getSubExpressions()
+	{
+		return new ArrayList<>(subExpressions);
+	}
+	
+	/**
+	 * Getter method for the truth value assigned to this node
+	 * @return the value, or empty if no value has been assigned
+	 */
+	public Optional<Boolean> getSetting()
+	{
+		return setting;
+	}
+	
+	/**
+	 * Assigns a truth value to this node
+	 * @param setting the value, or empty to clear the node
+	 */
+	public void setSetting(Optional<Boolean> setting)
+	{
+		this.setting = setting;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return getParticiple()+setting.map(b -> b ? "=T" : "=F").orElse("");
+	}
 
 	private final Expression exp;
 	private final List<Assignment> subExpressions;
-	@SuppressWarnings("unused")
 	private Optional<Boolean> setting;
 }
\ No newline at end of file
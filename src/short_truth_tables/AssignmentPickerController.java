@@ -15,15 +15,54 @@ public class AssignmentPickerController
 	@FXML
 	public Button assignFalse;
 	
+	private PropagationEngine engine;
+	private Assignment node;
+	
+	/**
+	 * Connects this picker to a node of a short truth table.  The picker is refreshed whenever the
+	 * node gains or loses a value, whether it was picked here or forced by another node, and whenever
+	 * its operator's truth table becomes or stops being violated.
+	 * @param engine the engine filling in the table
+	 * @param node the node this picker assigns
+	 */
+	public void setAssignment(PropagationEngine engine, Assignment node)
+	{
+		this.engine = engine;
+		this.node = node;
+		engine.onChange(node, this::refresh);
+		refresh();
+	}
+	
 	@FXML
 	public void assignTrue(ActionEvent event)
 	{
-		System.out.println("Assigning true");
+		assign(true);
 	}
 	
 	@FXML
 	public void assignFalse(ActionEvent event)
 	{
-		System.out.println("Assigning false");
+		assign(false);
+	}
+	
+	private void assign(boolean value)
+	{
+		if (engine != null && !engine.isContradiction())
+			engine.assign(node, value);
+	}
+	
+	/**
+	 * Shows the node's value, marks it if it's where the table contradicts itself, and only allows
+	 * picking a value while it has none and the table has no contradiction to undo first
+	 */
+	void refresh()
+	{
+		expression.setText(node.toString());
+		expression.getStyleClass().remove("contradiction");
+		if (engine.getContradiction().filter(a -> a == node).isPresent())
+			expression.getStyleClass().add("contradiction");
+		boolean disabled = node.getSetting().isPresent() || engine.isContradiction();
+		assignTrue.setDisable(disabled);
+		assignFalse.setDisable(disabled);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package short_truth_tables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import logic.Constant;
+import logic.Expression;
+import logic.Function;
+import logic.Literal;
+import logic.Operator;
+
+/**
+ * The fixed structure of a short truth table, flattened into arrays for fast propagation.
+ * Every value that can be assigned is a slot.  Each Function node of the Assignment trees gets its own slot,
+ * while every occurrence of a variable shares the slot of that variable, so assigning one occurrence assigns them all.
+ * Each Function node is also a constraint tying its slot to the slots of its terms through the operator's truth table.
+ * @author Jallibad
+ *
+ */
+class ConstraintNetwork
+{
+	/**
+	 * The roots of the Assignment trees
+	 */
+	final List<Assignment> roots;
+
+	/**
+	 * Every Assignment node, and the slot holding its value
+	 */
+	final List<Assignment> nodes = new ArrayList<>();
+	final int[] slotOfNode;
+	private final Map<Assignment, Integer> slots = new IdentityHashMap<>();
+
+	/**
+	 * The variable each variable slot holds, in order of their slots
+	 */
+	final List<Literal> variables = new ArrayList<>();
+	private final Map<Literal, Integer> variableSlots = new HashMap<>();
+
+	/**
+	 * The slots that hold a constant, along with their value
+	 */
+	final Map<Integer, Boolean> constants = new HashMap<>();
+
+	/**
+	 * For each constraint, its operator, the slots of its terms, and the slot of its result
+	 */
+	final Operator[] operators;
+	final int[][] arguments;
+	final int[] results;
+
+	/**
+	 * For each slot, the constraints that mention it
+	 */
+	final int[][] watchers;
+
+	final int numSlots;
+
+	/**
+	 * Builds the network for the given Assignment trees
+	 * @param roots the root of each tree
+	 */
+	ConstraintNetwork(List<Assignment> roots)
+	{
+		this.roots = roots;
+		Map<Boolean, Integer> constantSlots = new HashMap<>();
+		List<Function> functions = new ArrayList<>();
+		List<Integer> functionSlots = new ArrayList<>();
+		List<Assignment> functionNodes = new ArrayList<>();
+		int[] next = {0};
+
+		// Number every slot, in depth first order
+		List<Assignment> stack = new ArrayList<>(roots);
+		while (!stack.isEmpty())
+		{
+			Assignment a = stack.remove(stack.size()-1);
+			Expression e = a.getExpression();
+			int slot;
+			if (e instanceof Literal)
+				slot = variableSlots.computeIfAbsent((Literal) e, l ->
+				{
+					variables.add(l);
+					return next[0]++;
+				});
+			else if (e instanceof Constant)
+				slot = constantSlots.computeIfAbsent(((Constant) e).value, b ->
+				{
+					constants.put(next[0], b);
+					return next[0]++;
+				});
+			else
+			{
+				slot = next[0]++;
+				functions.add((Function) e);
+				functionSlots.add(slot);
+				functionNodes.add(a);
+				stack.addAll(a.getSubExpressions());
+			}
+			slots.put(a, slot);
+			nodes.add(a);
+		}
+		numSlots = next[0];
+		slotOfNode = nodes.stream().mapToInt(slots::get).toArray();
+
+		operators = new Operator[functions.size()];
+		arguments = new int[functions.size()][];
+		results = new int[functions.size()];
+		List<List<Integer>> watching = new ArrayList<>();
+		for (int i=0; i<numSlots; ++i)
+			watching.add(new ArrayList<>());
+		// The last constraint each slot was added to the watchers of, so no constraint watches a slot twice
+		int[] lastWatched = new int[numSlots];
+		Arrays.fill(lastWatched, -1);
+		for (int c=0; c<functions.size(); ++c)
+		{
+			operators[c] = functions.get(c).operator;
+			arguments[c] = functionNodes.get(c).getSubExpressions().stream().mapToInt(slots::get).toArray();
+			results[c] = functionSlots.get(c);
+			lastWatched[results[c]] = c;
+			watching.get(results[c]).add(c);
+			for (int arg : arguments[c])
+				if (lastWatched[arg] != c)
+				{
+					lastWatched[arg] = c;
+					watching.get(arg).add(c);
+				}
+		}
+		watchers = new int[numSlots][];
+		for (int i=0; i<numSlots; ++i)
+			watchers[i] = watching.get(i).stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * The slot holding the value of a root
+	 * @param i the index of the root
+	 * @return the slot
+	 */
+	int rootSlot(int i)
+	{
+		return slots.get(roots.get(i));
+	}
+
+	/**
+	 * The slot holding a variable's value
+	 * @param l the variable
+	 * @return the slot, or -1 if the variable doesn't occur
+	 */
+	int variableSlot(Literal l)
+	{
+		return variableSlots.getOrDefault(l, -1);
+	}
+
+	/**
+	 * The slot holding the value of an Assignment node
+	 * @param a the node, which must be part of this network
+	 * @return the slot
+	 */
+	int slotOf(Assignment a)
+	{
+		Integer ans = slots.get(a);
+		if (ans == null)
+			throw new IllegalArgumentException(a+" is not part of this short truth table");
+		return ans;
+	}
+}
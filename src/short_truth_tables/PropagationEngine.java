@@ -0,0 +1,234 @@
+package short_truth_tables;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Fills in a short truth table by hand, one assignment at a time.  Each assignment only checks the
+ * operators that mention the assigned node, and from there only the operators of nodes that were forced,
+ * so the work done is proportional to what actually changed rather than to the size of the formula.
+ * Every assignment can be undone, again in time proportional to what it changed.
+ * @author Jallibad
+ *
+ */
+public class PropagationEngine
+{
+	private final ConstraintNetwork network;
+	private final PropagationState state;
+
+	/**
+	 * For each slot, every node sharing it
+	 */
+	private final Assignment[][] nodesOfSlot;
+
+	/**
+	 * For each constraint, the node of its Function
+	 */
+	private final Assignment[] nodeOfConstraint;
+
+	private final Map<Assignment, List<Runnable>> listeners = new IdentityHashMap<>();
+
+	/**
+	 * The assignments made so far, most recent first
+	 */
+	private final Deque<Decision> decisions = new ArrayDeque<>();
+
+	/**
+	 * Creates an engine for filling in the given Assignment trees, which start out with no values
+	 * @param roots the root of each tree
+	 */
+	public PropagationEngine(List<Assignment> roots)
+	{
+		network = new ConstraintNetwork(Collections.unmodifiableList(new ArrayList<>(roots)));
+		List<List<Assignment>> sharing = new ArrayList<>();
+		for (int i=0; i<network.numSlots; ++i)
+			sharing.add(new ArrayList<>());
+		for (int i=0; i<network.nodes.size(); ++i)
+			sharing.get(network.slotOfNode[i]).add(network.nodes.get(i));
+		nodesOfSlot = sharing.stream().map(l -> l.toArray(new Assignment[0])).toArray(Assignment[][]::new);
+		nodeOfConstraint = Arrays.stream(network.results).mapToObj(slot -> nodesOfSlot[slot][0]).toArray(Assignment[]::new);
+
+		state = new PropagationState(network);
+		state.propagate();
+		for (int i=0; i<network.nodes.size(); ++i)
+			network.nodes.get(i).setSetting(state.setting(network.slotOfNode[i]));
+	}
+
+	/**
+	 * Creates an engine for filling in the given Assignment trees, which start out with no values
+	 * @param roots the root of each tree
+	 */
+	public PropagationEngine(Assignment... roots)
+	{
+		this(Arrays.asList(roots));
+	}
+
+	/**
+	 * Registers a listener that is run whenever a node gains or loses a value, or its operator's truth table
+	 * becomes or stops being violated
+	 * @param node the node to watch
+	 * @param listener the listener to run
+	 */
+	public void onChange(Assignment node, Runnable listener)
+	{
+		network.slotOf(node);
+		listeners.computeIfAbsent(node, k -> new ArrayList<>()).add(listener);
+	}
+
+	/**
+	 * Assigns a value to a node and fills in every value it forces
+	 * @param node the node to assign
+	 * @param value the value to give it
+	 * @return the nodes that were given a value, and the contradiction if there was one
+	 * @throws IllegalStateException if the table already contains a contradiction that hasn't been undone
+	 */
+	public Change assign(Assignment node, boolean value)
+	{
+		if (isContradiction())
+			throw new IllegalStateException("The contradiction must be undone before assigning anything else");
+		int slot = network.slotOf(node);
+		int mark = state.mark();
+		Optional<Assignment> contradiction = Optional.empty();
+		if (!state.assign(slot, value))
+			contradiction = Optional.of(node);
+		else if (!state.propagate())
+			contradiction = Optional.of(nodeOfConstraint[state.conflict()]);
+		Decision d = new Decision(mark, contradiction);
+		decisions.push(d);
+		List<Assignment> assigned = update(state.assignedSince(mark));
+		contradiction.ifPresent(this::fireChange);
+		return new Change(assigned, contradiction);
+	}
+
+	/**
+	 * Undoes the most recent assignment, along with every value it forced
+	 * @return the nodes that lost their value
+	 * @throws IllegalStateException if nothing has been assigned
+	 */
+	public List<Assignment> undo()
+	{
+		if (decisions.isEmpty())
+			throw new IllegalStateException("There is nothing to undo");
+		Decision d = decisions.pop();
+		int[] undone = state.assignedSince(d.mark);
+		state.undo(d.mark);
+		List<Assignment> ans = update(undone);
+		d.contradiction.ifPresent(this::fireChange);
+		return ans;
+	}
+
+	/**
+	 * Whether any assignment can be undone
+	 * @return true if an assignment has been made
+	 */
+	public boolean canUndo()
+	{
+		return !decisions.isEmpty();
+	}
+
+	/**
+	 * Whether the values filled in so far contradict each other
+	 * @return true if the most recent assignment led to a contradiction
+	 */
+	public boolean isContradiction()
+	{
+		return getContradiction().isPresent();
+	}
+
+	/**
+	 * Gets the node whose operator's truth table was violated by the most recent assignment
+	 * @return the node, or empty if there is no contradiction
+	 */
+	public Optional<Assignment> getContradiction()
+	{
+		if (decisions.isEmpty())
+			return Optional.empty();
+		return decisions.peek().contradiction;
+	}
+
+	/**
+	 * Copies the value of each changed slot to every node sharing it, and notifies their listeners
+	 * @return the changed nodes
+	 */
+	private List<Assignment> update(int[] slots)
+	{
+		List<Assignment> ans = new ArrayList<>();
+		for (int slot : slots)
+			for (Assignment a : nodesOfSlot[slot])
+			{
+				a.setSetting(state.setting(slot));
+				ans.add(a);
+			}
+		ans.forEach(this::fireChange);
+		return ans;
+	}
+
+	private void fireChange(Assignment node)
+	{
+		listeners.getOrDefault(node, Collections.emptyList()).forEach(Runnable::run);
+	}
+
+	/**
+	 * A single call to assign, with the point on the trail it can be undone to
+	 */
+	private static class Decision
+	{
+		private final int mark;
+		private final Optional<Assignment> contradiction;
+
+		private Decision(int mark, Optional<Assignment> contradiction)
+		{
+			this.mark = mark;
+			this.contradiction = contradiction;
+		}
+	}
+
+	/**
+	 * The effect of a single assignment
+	 * @author Jallibad
+	 *
+	 */
+	public static class Change
+	{
+		private final List<Assignment> assigned;
+		private final Optional<Assignment> contradiction;
+
+		private Change(List<Assignment> assigned, Optional<Assignment> contradiction)
+		{
+			this.assigned = Collections.unmodifiableList(assigned);
+			this.contradiction = contradiction;
+		}
+
+		/**
+		 * Getter method for the nodes given a value, including the assigned node and every node it forced
+		 * @return an unmodifiable List of the nodes
+		 */
+		public List<Assignment> getAssigned()
+		{
+			return assigned;
+		}
+
+		/**
+		 * Gets the node whose operator's truth table was violated, or the assigned node itself if it already
+		 * had the opposite value
+		 * @return the node, or empty if there was no contradiction
+		 */
+		public Optional<Assignment> getContradiction()
+		{
+			return contradiction;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "assigned "+assigned+contradiction.map(a -> ", contradiction at "+a).orElse("");
+		}
+	}
+}
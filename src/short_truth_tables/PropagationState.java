@@ -0,0 +1,242 @@
+package short_truth_tables;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The mutable half of a short truth table, the value of every slot of a ConstraintNetwork.
+ * Every assignment is pushed onto a trail, so any number of assignments can be undone by
+ * popping the trail back to an earlier mark, in time proportional to the number undone.
+ * @author Jallibad
+ *
+ */
+class PropagationState
+{
+	static final byte UNKNOWN = -1;
+
+	final ConstraintNetwork network;
+
+	/**
+	 * The value of each slot, either 0, 1 or UNKNOWN
+	 */
+	private final byte[] values;
+
+	/**
+	 * The slots in the order they were assigned
+	 */
+	private final int[] trail;
+	private int trailSize;
+
+	/**
+	 * The constraints waiting to be checked, and whether each one is already waiting
+	 */
+	private final int[] queue;
+	private int queueHead;
+	private int queueSize;
+	private final boolean[] queued;
+
+	/**
+	 * The constraint that failed during the last call to propagate
+	 */
+	private int conflict = -1;
+
+	/**
+	 * Creates a state with no slots assigned other than the constants
+	 * @param network the network to propagate over
+	 */
+	PropagationState(ConstraintNetwork network)
+	{
+		this.network = network;
+		values = new byte[network.numSlots];
+		Arrays.fill(values, UNKNOWN);
+		trail = new int[network.numSlots];
+		queue = new int[network.operators.length];
+		queued = new boolean[network.operators.length];
+		network.constants.forEach((slot, value) -> assign(slot, value));
+	}
+
+	/**
+	 * Copy constructor, the copy shares the network but nothing else
+	 */
+	private PropagationState(PropagationState other)
+	{
+		network = other.network;
+		values = other.values.clone();
+		trail = other.trail.clone();
+		trailSize = other.trailSize;
+		queue = new int[other.queue.length];
+		queued = new boolean[other.queued.length];
+	}
+
+	/**
+	 * Copies the current values, assumes there is nothing waiting to be propagated
+	 * @return an independent copy of the state
+	 */
+	PropagationState copy()
+	{
+		return new PropagationState(this);
+	}
+
+	/**
+	 * Gets the value of a slot
+	 * @param slot the slot to check
+	 * @return 0, 1 or UNKNOWN
+	 */
+	byte value(int slot)
+	{
+		return values[slot];
+	}
+
+	/**
+	 * Gets the value of a slot
+	 * @param slot the slot to check
+	 * @return the value, or empty if it isn't assigned
+	 */
+	Optional<Boolean> setting(int slot)
+	{
+		return values[slot] == UNKNOWN ? Optional.empty() : Optional.of(values[slot] == 1);
+	}
+
+	/**
+	 * Assigns a slot and queues up every constraint that mentions it.  Does nothing if the slot already has that value.
+	 * @param slot the slot to assign
+	 * @param value the value to give it
+	 * @return false if the slot already has the opposite value, true otherwise
+	 */
+	boolean assign(int slot, boolean value)
+	{
+		byte b = (byte) (value ? 1 : 0);
+		if (values[slot] != UNKNOWN)
+			return values[slot] == b;
+		values[slot] = b;
+		trail[trailSize++] = slot;
+		for (int c : network.watchers[slot])
+			enqueue(c);
+		return true;
+	}
+
+	private void enqueue(int c)
+	{
+		if (queued[c])
+			return;
+		queued[c] = true;
+		queue[(queueHead+queueSize++) % queue.length] = c;
+	}
+
+	/**
+	 * Assigns every slot that is forced by the queued constraints, until nothing more is forced.
+	 * A slot is forced when every row of its operator's truth table that agrees with the known
+	 * values also agrees on the value of that slot.
+	 * @return true if no constraint was violated, false if there is a contradiction
+	 */
+	boolean propagate()
+	{
+		conflict = -1;
+		boolean ok = true;
+		while (queueSize > 0)
+		{
+			int c = queue[queueHead];
+			queueHead = (queueHead+1) % queue.length;
+			queueSize--;
+			queued[c] = false;
+			if (ok && !propagate(c))
+			{
+				conflict = c;
+				ok = false;
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Checks a single constraint, assigning anything it forces
+	 */
+	private boolean propagate(int c)
+	{
+		boolean[][] truthTable = network.operators[c].truthTable;
+		int[] args = network.arguments[c];
+		int result = network.results[c];
+		// Bit i of each mask records whether a consistent row has position i true or false
+		int seenTrue = 0;
+		int seenFalse = 0;
+		boolean consistent = false;
+		for (boolean[] row : truthTable)
+		{
+			if (!agrees(row, args, result))
+				continue;
+			consistent = true;
+			for (int i=0; i<row.length; ++i)
+				if (row[i])
+					seenTrue |= 1 << i;
+				else
+					seenFalse |= 1 << i;
+		}
+		if (!consistent)
+			return false;
+		for (int i=0; i<=args.length; ++i)
+		{
+			int slot = i < args.length ? args[i] : result;
+			boolean canBeTrue = (seenTrue >>> i & 1) != 0;
+			boolean canBeFalse = (seenFalse >>> i & 1) != 0;
+			if (canBeTrue != canBeFalse && !assign(slot, canBeTrue))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean agrees(boolean[] row, int[] args, int result)
+	{
+		for (int i=0; i<args.length; ++i)
+			if (values[args[i]] != UNKNOWN && (values[args[i]] == 1) != row[i])
+				return false;
+		return values[result] == UNKNOWN || (values[result] == 1) == row[row.length-1];
+	}
+
+	/**
+	 * The constraint that failed during the last call to propagate
+	 * @return the index of the constraint, or -1 if there was no contradiction
+	 */
+	int conflict()
+	{
+		return conflict;
+	}
+
+	/**
+	 * A mark that can be passed to undo to return to the current state
+	 * @return the current length of the trail
+	 */
+	int mark()
+	{
+		return trailSize;
+	}
+
+	/**
+	 * Unassigns every slot assigned since the mark was taken
+	 * @param mark a value returned by mark
+	 */
+	void undo(int mark)
+	{
+		while (trailSize > mark)
+			values[trail[--trailSize]] = UNKNOWN;
+		clearQueue();
+	}
+
+	/**
+	 * The slots assigned since the mark was taken, oldest first
+	 * @param mark a value returned by mark
+	 * @return the slots
+	 */
+	int[] assignedSince(int mark)
+	{
+		return Arrays.copyOfRange(trail, mark, trailSize);
+	}
+
+	private void clearQueue()
+	{
+		for (; queueSize > 0; --queueSize)
+		{
+			queued[queue[queueHead]] = false;
+			queueHead = (queueHead+1) % queue.length;
+		}
+	}
+}
@@ -1,6 +1,89 @@
 package short_truth_tables;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.control.Button;
+import javafx.scene.layout.HBox;
+import logic.Expression;
+
 public class ShortTruthTableController
 {
-
+	@FXML HBox pickers;
+	
+	@FXML
+	public Button undo;
+	
+	private PropagationEngine engine;
+	private final List<AssignmentPickerController> controllers = new ArrayList<>();
+	private boolean contradiction;
+	
+	/**
+	 * Fills the table with a picker for every node of an expression, all assigning through one
+	 * PropagationEngine so each pick fills in every value it forces
+	 * @param exp the expression to fill in a short truth table for
+	 * @throws IOException if a picker can't be loaded
+	 */
+	public void setExpression(Expression exp) throws IOException
+	{
+		Assignment root = new Assignment(exp);
+		engine = new PropagationEngine(root);
+		pickers.getChildren().clear();
+		controllers.clear();
+		List<Assignment> nodes = new ArrayList<>();
+		addInDisplayOrder(root, nodes);
+		for (Assignment node : nodes)
+		{
+			FXMLLoader loader = new FXMLLoader(getClass().getResource("AssignmentPicker.fxml"));
+			Parent picker = loader.load();
+			AssignmentPickerController controller = loader.getController();
+			controller.setAssignment(engine, node);
+			engine.onChange(node, this::refresh);
+			controllers.add(controller);
+			pickers.getChildren().add(picker);
+		}
+		contradiction = false;
+		refresh();
+	}
+	
+	/**
+	 * Adds every node of a tree in the order they're displayed, each operator where its symbol is written
+	 */
+	private static void addInDisplayOrder(Assignment node, List<Assignment> ans)
+	{
+		for (Assignment a : node.assignments())
+		{
+			if (a == node)
+				ans.add(a);
+			else
+				addInDisplayOrder(a, ans);
+		}
+	}
+	
+	@FXML
+	public void undo(ActionEvent event)
+	{
+		if (engine != null && engine.canUndo())
+			engine.undo();
+		refresh();
+	}
+	
+	/**
+	 * Only allows undoing once something has been picked.  Pickers only hear about their own node, so
+	 * they're all refreshed when a contradiction appears or is undone, to stop or allow picking.
+	 */
+	private void refresh()
+	{
+		undo.setDisable(engine == null || !engine.canUndo());
+		if (engine != null && engine.isContradiction() != contradiction)
+		{
+			contradiction = engine.isContradiction();
+			controllers.forEach(AssignmentPickerController::refresh);
+		}
+	}
 }
@@ -0,0 +1,352 @@
+package short_truth_tables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import logic.Expression;
+import logic.Literal;
+
+/**
+ * Carries out the short truth table method automatically.  The premises are assumed true and the conclusion
+ * false, and every value forced by an operator's truth table is filled in, both down from a Function to its
+ * terms and up from the terms to the Function.  Only when nothing more is forced does the solver guess the
+ * value of a variable, and a guess that leads to a contradiction is undone by popping the trail.
+ * If every guess closes in a contradiction the argument is valid, otherwise the filled in row is a counterexample.
+ * @author Jallibad
+ *
+ */
+public class ShortTruthTableSolver
+{
+	private final ConstraintNetwork network;
+
+	/**
+	 * The value each root is assumed to have
+	 */
+	private final boolean[] targets;
+
+	/**
+	 * Creates a short truth table for an argument
+	 * @param premises the premises, each assumed to be true
+	 * @param conclusion the conclusion, assumed to be false
+	 */
+	public ShortTruthTableSolver(List<Expression> premises, Expression conclusion)
+	{
+		List<Assignment> roots = new ArrayList<>();
+		boolean[] targets = new boolean[premises.size()+1];
+		for (int i=0; i<premises.size(); ++i)
+		{
+			roots.add(new Assignment(premises.get(i)));
+			targets[i] = true;
+		}
+		roots.add(new Assignment(conclusion));
+		network = new ConstraintNetwork(Collections.unmodifiableList(roots));
+		this.targets = targets;
+	}
+
+	/**
+	 * Creates a short truth table for a single formula
+	 * @param exp the formula
+	 * @param target the value the formula is assumed to have, false to check for a tautology
+	 * and true to check for satisfiability
+	 */
+	public ShortTruthTableSolver(Expression exp, boolean target)
+	{
+		network = new ConstraintNetwork(Collections.singletonList(new Assignment(exp)));
+		targets = new boolean[] {target};
+	}
+
+	/**
+	 * Getter method for the Assignment trees, one for each premise followed by the conclusion.
+	 * After solving, every node that has a value in the final row has its setting filled in.
+	 * @return an unmodifiable List of the roots
+	 */
+	public List<Assignment> getAssignments()
+	{
+		return network.roots;
+	}
+
+	/**
+	 * Fills in the short truth table
+	 * @return the consistent row if there is one, otherwise a closed contradiction
+	 */
+	public Result solve()
+	{
+		Result ans = new Result();
+		PropagationState state = start(ans);
+		if (state != null && search(state, orderVariables(), 0, ans, new AtomicBoolean()))
+			finish(state, ans);
+		else
+			finish(null, ans);
+		return ans;
+	}
+
+	/**
+	 * Fills in the short truth table on the common ForkJoinPool
+	 * @return the consistent row if there is one, otherwise a closed contradiction
+	 * @see #solveParallel(ForkJoinPool)
+	 */
+	public Result solveParallel()
+	{
+		return solveParallel(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Fills in the short truth table, exploring both values of each guess in parallel.  Each branch is a
+	 * fork/join task with its own copy of the values, so idle threads steal whole subtrees of guesses.
+	 * Once any branch finds a consistent row every other branch stops at its next guess.
+	 * @param pool the pool to run the branches in
+	 * @return the consistent row if there is one, otherwise a closed contradiction
+	 */
+	public Result solveParallel(ForkJoinPool pool)
+	{
+		Result ans = new Result();
+		PropagationState state = start(ans);
+		if (state == null)
+		{
+			finish(null, ans);
+			return ans;
+		}
+		ParallelSearch search = new ParallelSearch(orderVariables());
+		finish(pool.invoke(search.new Branch(state, 0)), ans);
+		ans.decisions += search.decisions.sum();
+		ans.propagations += search.propagations.sum();
+		return ans;
+	}
+
+	/**
+	 * Assigns the target value of every root and propagates
+	 * @return the state, or null if it's already contradictory
+	 */
+	private PropagationState start(Result ans)
+	{
+		PropagationState state = new PropagationState(network);
+		boolean ok = true;
+		for (int i=0; i<network.roots.size() && ok; ++i)
+			ok = state.assign(network.rootSlot(i), targets[i]);
+		ok = ok && state.propagate();
+		ans.propagations = state.mark();
+		return ok ? state : null;
+	}
+
+	/**
+	 * Records the consistent row, and writes the value of every node back to the Assignment trees
+	 * @param state the consistent state, or null if the table closed
+	 */
+	private void finish(PropagationState state, Result ans)
+	{
+		if (state == null)
+		{
+			network.nodes.forEach(a -> a.setSetting(Optional.empty()));
+			return;
+		}
+		Map<Literal, Boolean> row = new HashMap<>();
+		for (int i=0; i<network.variables.size(); ++i)
+			row.put(network.variables.get(i), state.value(network.variableSlot(network.variables.get(i))) == 1);
+		ans.row = Optional.of(row);
+		for (int i=0; i<network.nodes.size(); ++i)
+			network.nodes.get(i).setSetting(state.setting(network.slotOfNode[i]));
+	}
+
+	/**
+	 * Guesses the next unassigned variable, trying true and then false
+	 * @param cancelled checked before every guess, the search gives up once it's set
+	 * @return true if a consistent row was found, leaving it in the state
+	 */
+	private boolean search(PropagationState state, int[] order, int next, Result ans, AtomicBoolean cancelled)
+	{
+		next = nextUnassigned(state, order, next);
+		if (next == order.length)
+			return true;
+		int mark = state.mark();
+		for (boolean guess : new boolean[] {true, false})
+		{
+			if (cancelled.get())
+				return false;
+			ans.decisions++;
+			state.assign(order[next], guess);
+			boolean ok = state.propagate();
+			ans.propagations += state.mark()-mark-1;
+			if (ok && search(state, order, next+1, ans, cancelled))
+				return true;
+			state.undo(mark);
+		}
+		return false;
+	}
+
+	private static int nextUnassigned(PropagationState state, int[] order, int next)
+	{
+		while (next < order.length && state.value(order[next]) != PropagationState.UNKNOWN)
+			next++;
+		return next;
+	}
+
+	/**
+	 * The variable slots, most constrained first, since guessing them forces the most values
+	 */
+	private int[] orderVariables()
+	{
+		List<Integer> order = new ArrayList<>();
+		for (Literal l : network.variables)
+			order.add(network.variableSlot(l));
+		order.sort((a, b) -> network.watchers[b].length-network.watchers[a].length);
+		return order.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * The shared state of one parallel search, the order to guess variables in, whether a consistent row
+	 * has been found yet, and the counts of guesses and forced values across every branch
+	 */
+	private class ParallelSearch
+	{
+		/**
+		 * Below this many unassigned variables a branch is searched sequentially,
+		 * since forking would cost more than the search itself
+		 */
+		private static final int SEQUENTIAL_THRESHOLD = 8;
+
+		private final int[] order;
+		private final AtomicBoolean found = new AtomicBoolean();
+		private final LongAdder decisions = new LongAdder();
+		private final LongAdder propagations = new LongAdder();
+
+		private ParallelSearch(int[] order)
+		{
+			this.order = order;
+		}
+
+		/**
+		 * A single branch of the search, which owns its state outright
+		 */
+		private class Branch extends RecursiveTask<PropagationState>
+		{
+			private static final long serialVersionUID = -4830137424187253519L;
+
+			private final PropagationState state;
+			private final int next;
+
+			private Branch(PropagationState state, int next)
+			{
+				this.state = state;
+				this.next = next;
+			}
+
+			/**
+			 * @return the consistent state, or null if this branch closed or was cancelled
+			 */
+			@Override
+			protected PropagationState compute()
+			{
+				if (found.get())
+					return null;
+				int i = nextUnassigned(state, order, next);
+				if (i == order.length)
+				{
+					found.set(true);
+					return state;
+				}
+				if (order.length-i <= SEQUENTIAL_THRESHOLD)
+				{
+					Result counts = new Result();
+					boolean ok = search(state, order, i, counts, found);
+					decisions.add(counts.decisions);
+					propagations.add(counts.propagations);
+					if (ok)
+						found.set(true);
+					return ok ? state : null;
+				}
+				Branch whenTrue = guess(state.copy(), i, true);
+				Branch whenFalse = guess(state, i, false);
+				if (whenTrue == null)
+					return whenFalse == null ? null : whenFalse.compute();
+				if (whenFalse == null)
+					return whenTrue.compute();
+				whenFalse.fork();
+				PropagationState ans = whenTrue.compute();
+				if (ans != null)
+					return ans;
+				return whenFalse.join();
+			}
+
+			/**
+			 * Guesses the value of a variable and propagates
+			 * @return the branch that continues from the guess, or null if it's contradictory
+			 */
+			private Branch guess(PropagationState s, int i, boolean value)
+			{
+				decisions.increment();
+				int mark = s.mark();
+				s.assign(order[i], value);
+				boolean ok = s.propagate();
+				propagations.add(s.mark()-mark-1);
+				return ok ? new Branch(s, i+1) : null;
+			}
+		}
+	}
+
+	/**
+	 * The outcome of filling in a short truth table
+	 * @author Jallibad
+	 *
+	 */
+	public static class Result
+	{
+		private Optional<Map<Literal, Boolean>> row = Optional.empty();
+		private long decisions;
+		private long propagations;
+
+		private Result()
+		{
+		}
+
+		/**
+		 * Whether every branch closed, meaning the argument is valid
+		 * @return true if no consistent row exists
+		 */
+		public boolean isContradiction()
+		{
+			return !row.isPresent();
+		}
+
+		/**
+		 * Getter method for the consistent row, which for an argument is a counterexample
+		 * @return the value of every variable, or empty if the table closed
+		 */
+		public Optional<Map<Literal, Boolean>> getRow()
+		{
+			return row;
+		}
+
+		/**
+		 * The number of times a variable's value had to be guessed
+		 * @return the number of guesses
+		 */
+		public long getDecisions()
+		{
+			return decisions;
+		}
+
+		/**
+		 * The number of values filled in because they were forced
+		 * @return the number of forced values
+		 */
+		public long getPropagations()
+		{
+			return propagations;
+		}
+
+		@Override
+		public String toString()
+		{
+			return (isContradiction() ? "contradiction" : "consistent row "+row.get())
+					+" ("+decisions+" guesses, "+propagations+" forced values)";
+		}
+	}
+}
@@ -31,8 +31,12 @@ public class Test extends Application
 		Assignment a = new Assignment(exp);
 		for (Assignment b : a.assignments())
 			System.out.println(b.getParticiple());
-		Parent p = FXMLLoader.load(getClass().getResource("/AssignmentPicker.fxml"));
+		FXMLLoader loader = new FXMLLoader(getClass().getResource("ShortTruthTable.fxml"));
+		Parent p = loader.load();
+		ShortTruthTableController controller = loader.getController();
+		controller.setExpression(exp);
 		Scene s = new Scene(p);
+		s.getStylesheets().add(getClass().getResource("application.css").toExternalForm());
 		
 		primaryStage.setScene(s);
 		primaryStage.show();